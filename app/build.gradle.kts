@@ -14,6 +14,12 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // Pinned SHA-256 of the downloadable depth models (see gradle.properties)
+        buildConfigField("String", "DEPTH_INDOOR_SHA256",
+            "\"${providers.gradleProperty("depthModelSha256.indoor").getOrElse("")}\"")
+        buildConfigField("String", "DEPTH_OUTDOOR_SHA256",
+            "\"${providers.gradleProperty("depthModelSha256.outdoor").getOrElse("")}\"")
     }
 
     buildTypes {
@@ -31,6 +37,15 @@ android {
     }
     buildFeatures {
         viewBinding = true
+        buildConfig = true
+    }
+    androidResources {
+        // Models are memory-mapped straight out of the APK (see ModelSource)
+        noCompress += listOf("onnx", "ort")
+    }
+    testOptions {
+        // Pipeline policies log through android.util.Log; let JVM tests run them
+        unitTests.isReturnDefaultValues = true
     }
 }
 
@@ -0,0 +1,340 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import vn.edu.usth.objectdetectmobile.utils.TTSWarning;
+
+import static org.junit.Assert.*;
+
+/**
+ * On-device latency benchmarks for the inference pipeline. Results are logged under the
+ * "PipelineBenchmark" tag:
+ * adb shell am instrument -w -e class vn.edu.usth.objectdetectmobile.PipelineBenchmark \
+ *     vn.edu.usth.objectdetectmobile.test/androidx.test.runner.AndroidJUnitRunner
+ */
+@RunWith(AndroidJUnit4.class)
+public class PipelineBenchmark {
+    private static final String TAG = "PipelineBenchmark";
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 20;
+    // Typical rotated analysis frame
+    private static final int FRAME_W = 360, FRAME_H = 480;
+
+    private static int[] syntheticFrame(int w, int h) {
+        Random rnd = new Random(42);
+        int[] argb = new int[w * h];
+        for (int i = 0; i < argb.length; i++) argb[i] = 0xFF000000 | rnd.nextInt(0x1000000);
+        return argb;
+    }
+
+    @Test
+    public void detectorLatencyByInputSize() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        try (ObjectDetector detector = new ObjectDetector(ctx)) {
+            for (int size : detector.getSupportedInputSizes()) {
+                assertEquals(size, (int) detector.setInputSize(size).get());
+                for (int i = 0; i < WARMUP_RUNS; i++) detector.detect(frame, FRAME_W, FRAME_H);
+                long start = System.nanoTime();
+                for (int i = 0; i < TIMED_RUNS; i++) detector.detect(frame, FRAME_W, FRAME_H);
+                double avgMs = (System.nanoTime() - start) / 1e6 / TIMED_RUNS;
+                Log.i(TAG, String.format(Locale.US, "detector %dx%d: %.2f ms/frame", size, size, avgMs));
+            }
+        }
+    }
+
+    @Test
+    public void decodeTimeAllClassesVsHazardSubset() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        String[] labels = LabelHelper.loadLabels(ctx, "labels.txt");
+        List<Integer> hazards = new ArrayList<>();
+        for (int i = 0; i < labels.length; i++) {
+            if (TTSWarning.isDangerousLabel(labels[i])) hazards.add(i);
+        }
+        assertFalse(hazards.isEmpty());
+
+        try (ObjectDetector detector = new ObjectDetector(ctx)) {
+            double allMs = averageDecodeMs(detector, frame);
+            detector.setActiveClasses(hazards);
+            double subsetMs = averageDecodeMs(detector, frame);
+            Log.i(TAG, String.format(Locale.US,
+                    "decode all %d classes: %.2f ms, %d hazard classes: %.2f ms (saved %.2f ms)",
+                    labels.length, allMs, hazards.size(), subsetMs, allMs - subsetMs));
+        }
+    }
+
+    /**
+     * Model load time with an empty optimized-model cache ("first launch") and with it filled
+     * ("warm launch"). Both runs are in one process, so the APK pages are already cached on the
+     * second one, as they usually are on a real relaunch too.
+     */
+    @Test
+    public void modelLoadTimeFirstAndWarmLaunch() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        OptimizedModelCache.configure(new File(ctx.getCacheDir(), "ort"));
+        OptimizedModelCache.clear();
+        logLoadTimes(ctx, "first launch");
+        logLoadTimes(ctx, "warm launch");
+    }
+
+    /** Latency of the first camera frame with and without a warm-up inference after loading. */
+    @Test
+    public void firstFrameLatencyWithAndWithoutWarmUp() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        for (boolean warm : new boolean[]{false, true}) {
+            try (ObjectDetector detector = new ObjectDetector(ctx)) {
+                if (warm) detector.warmUp();
+                long start = System.nanoTime();
+                detector.detect(frame, FRAME_W, FRAME_H);
+                Log.i(TAG, String.format(Locale.US, "first frame %s warm-up: %.1f ms",
+                        warm ? "after" : "without", (System.nanoTime() - start) / 1e6));
+            }
+        }
+    }
+
+    /**
+     * Native heap after a few depth runs at changing sizes (as the latency controller does),
+     * with the depth memory config and with the arena kept and memory patterns on.
+     */
+    @Test
+    public void depthNativeMemoryWithArenaShrinkage() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        if (!DepthEstimator.isModelAvailable(ctx, MainActivity.EnvMode.INDOOR)) return;
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        OrtMemory.Config depthDefault = OrtMemory.config(OrtThreading.Role.DEPTH);
+        OrtMemory.Config[] configs = {depthDefault, new OrtMemory.Config(true, true, false)};
+        try {
+            for (OrtMemory.Config config : configs) {
+                OrtMemory.configure(OrtThreading.Role.DEPTH, config);
+                long before = OrtMemory.nativeHeapBytes();
+                long peak = before;
+                try (DepthEstimator depth = new DepthEstimator(ctx)) {
+                    for (int size : new int[]{518, 392, 280, 518, 392}) {
+                        depth.setInputSize(size);
+                        depth.estimate(frame, FRAME_W, FRAME_H);
+                        peak = Math.max(peak, OrtMemory.nativeHeapBytes());
+                    }
+                    Log.i(TAG, String.format(Locale.US,
+                            "depth [%s]: native peak +%.1f MB, idle after runs +%.1f MB",
+                            config, (peak - before) / 1e6, (OrtMemory.nativeHeapBytes() - before) / 1e6));
+                }
+            }
+        } finally {
+            OrtMemory.configure(OrtThreading.Role.DEPTH, depthDefault);
+        }
+    }
+
+    /**
+     * Image kernels (rotate, blur) and the detector / depth preprocessing they feed, from one
+     * row band up to the core count (at most RowBands.MAX_THREADS).
+     */
+    @Test
+    public void imageKernelsByRowBandThreads() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        FrameArena arena = new FrameArena();
+        int maxThreads = Math.min(RowBands.MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        boolean hasDepth = DepthEstimator.isModelAvailable(ctx, MainActivity.EnvMode.INDOOR);
+        try (ObjectDetector detector = new ObjectDetector(ctx);
+             DepthEstimator depth = hasDepth ? new DepthEstimator(ctx) : null) {
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                RowBands bands = new RowBands(threads, RowBands.DEFAULT_MIN_PARALLEL_PIXELS);
+                try {
+                    double rotateMs = averageMs(() ->
+                            arena.release(Yuv.rotate(frame, FRAME_W, FRAME_H, 90, arena, bands)));
+                    double blurMs = averageMs(() ->
+                            arena.release(ImageUtils.boxBlur(frame, FRAME_W, FRAME_H, 2, arena, bands)));
+                    detector.setRowBands(bands);
+                    double detectMs = averageMs(() -> detector.detect(frame, FRAME_W, FRAME_H, arena));
+                    double depthMs = Double.NaN;
+                    if (depth != null) {
+                        depth.setRowBands(bands);
+                        depthMs = averageMs(() ->
+                                arena.release(depth.estimate(frame, FRAME_W, FRAME_H, arena).depth));
+                    }
+                    Log.i(TAG, String.format(Locale.US,
+                            "%d row band(s): rotate %.2f ms, blur %.2f ms, detect %.2f ms, depth %.2f ms",
+                            threads, rotateMs, blurMs, detectMs, depthMs));
+                } finally {
+                    bands.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Detector (blurred) and depth inputs built in separate passes versus one shared pass over
+     * the frame, as the analyzer does when depth is due.
+     */
+    @Test
+    public void sharedPreprocessingPass() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        if (!DepthEstimator.isModelAvailable(ctx, MainActivity.EnvMode.INDOOR)) return;
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        FrameArena arena = new FrameArena();
+        RowBands bands = RowBands.serial();
+        try (ObjectDetector detector = new ObjectDetector(ctx);
+             DepthEstimator depth = new DepthEstimator(ctx)) {
+            FramePreprocessor.Target[] targets = {
+                    detector.inputTarget(FRAME_W, FRAME_H, 1),
+                    depth.inputTarget(FRAME_W, FRAME_H)
+            };
+            double separateMs = averageMs(() -> {
+                FramePreprocessor.run(frame, FRAME_W, FRAME_H, targets[0], arena, bands).release(arena);
+                FramePreprocessor.run(frame, FRAME_W, FRAME_H, targets[1], arena, bands).release(arena);
+            });
+            double sharedMs = averageMs(() -> FramePreprocessor.releaseAll(
+                    FramePreprocessor.run(frame, FRAME_W, FRAME_H, targets, arena, bands), arena));
+            Log.i(TAG, String.format(Locale.US,
+                    "preprocess detector+depth: separate %.2f ms, shared pass %.2f ms", separateMs, sharedMs));
+        }
+    }
+
+    /**
+     * Detector input as float NCHW versus uint8 NHWC (the _u8 export normalizes in-graph):
+     * preprocessing time, the input tensor's size and the scratch memory the arena keeps for
+     * it, and the whole detect call. Layouts whose export is not shipped are skipped.
+     */
+    @Test
+    public void detectorInputLayouts() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        DetectorModelRegistry.Tier tier = DetectorModelRegistry.defaultTier(ctx);
+        RowBands bands = RowBands.serial();
+        for (FramePreprocessor.Layout layout : FramePreprocessor.Layout.values()) {
+            try (ObjectDetector detector = new ObjectDetector(ctx, tier, layout)) {
+                if (detector.getInputLayout() != layout) {
+                    Log.i(TAG, tier + ": no " + layout + " export, skipped");
+                    continue;
+                }
+                FrameArena arena = new FrameArena();
+                FramePreprocessor.Target target = detector.inputTarget(FRAME_W, FRAME_H, 1);
+                double prepMs = averageMs(() ->
+                        FramePreprocessor.run(frame, FRAME_W, FRAME_H, target, arena, bands).release(arena));
+                long scratchBytes = arena.retainedBytes();
+                double detectMs = averageMs(() -> detector.detect(frame, FRAME_W, FRAME_H, arena));
+                Log.i(TAG, String.format(Locale.US,
+                        "%s %s %dx%d: preprocess %.2f ms, tensor %.2f MB, scratch %.2f MB, detect %.2f ms",
+                        tier, layout, target.modelW, target.modelH, prepMs,
+                        target.tensorBytes() / 1e6, scratchBytes / 1e6, detectMs));
+            }
+        }
+    }
+
+    /**
+     * Detector input from camera planes: the Java path (convert, rotate, preprocess) against the
+     * in-graph one (YuvGraph). Skipped when the graph is not in the assets.
+     */
+    @Test
+    public void yuvPreprocessingJavaVsGraph() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        if (!YuvGraph.isAvailable(ctx, YuvGraph.Kind.DETECTOR)) return;
+        // Unrotated sensor frame, as the camera delivers it
+        int w = FRAME_H, h = FRAME_W;
+        Random rnd = new Random(42);
+        java.nio.ByteBuffer[] bufs = new java.nio.ByteBuffer[3];
+        for (int i = 0; i < 3; i++) {
+            byte[] bytes = new byte[i == 0 ? w * h : w / 2 * h / 2];
+            rnd.nextBytes(bytes);
+            bufs[i] = java.nio.ByteBuffer.allocateDirect(bytes.length);
+            bufs[i].put(bytes).rewind();
+        }
+        Yuv.Planes planes = new Yuv.Planes(w, h, bufs[0], bufs[1], bufs[2]);
+        FrameArena arena = new FrameArena();
+        RowBands bands = RowBands.serial();
+        try (ObjectDetector detector = new ObjectDetector(ctx);
+             YuvGraph graph = new YuvGraph(ctx, YuvGraph.Kind.DETECTOR)) {
+            int rot = graph.rotation();
+            boolean swap = rot == 90 || rot == 270;
+            int rw = swap ? h : w, rh = swap ? w : h;
+            FramePreprocessor.Target target = detector.inputTarget(rw, rh, 0);
+            double javaMs = averageMs(() -> {
+                int[] argb = Yuv.toArgb(planes, arena, bands);
+                int[] rotated = Yuv.rotate(argb, w, h, rot, arena, bands);
+                FramePreprocessor.run(rotated, rw, rh, target, arena, bands).release(arena);
+                if (rotated != argb) arena.release(rotated);
+                arena.release(argb);
+            });
+            double graphMs = averageMs(() -> graph.run(planes, target, arena).release(arena));
+            Log.i(TAG, String.format(Locale.US,
+                    "YUV -> detector input %dx%d: Java %.2f ms, in-graph %.2f ms",
+                    target.modelW, target.modelH, javaMs, graphMs));
+        }
+    }
+
+    /**
+     * Java decoding (threshold, argmax, NMS over every anchor) against the _nms export that
+     * returns final boxes: whole detect call and the decoding left on the Java side. Skipped
+     * when the tier ships no _nms export.
+     */
+    @Test
+    public void javaDecodeVsInGraphNms() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        DetectorModelRegistry.Tier tier = DetectorModelRegistry.defaultTier(ctx);
+        for (boolean inGraph : new boolean[]{false, true}) {
+            try (ObjectDetector detector = new ObjectDetector(ctx, tier, FramePreprocessor.Layout.CHW_FLOAT, inGraph)) {
+                if (detector.hasInGraphNms() != inGraph) {
+                    Log.i(TAG, tier + ": no _nms export, skipped");
+                    continue;
+                }
+                double detectMs = averageMs(() -> detector.detect(frame, FRAME_W, FRAME_H));
+                double decodeMs = averageDecodeMs(detector, frame);
+                Log.i(TAG, String.format(Locale.US, "%s %s: detect %.2f ms, Java decode %.2f ms",
+                        tier, inGraph ? "NMS in graph" : "NMS in Java", detectMs, decodeMs));
+            }
+        }
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private static double averageMs(Step step) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) step.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_RUNS; i++) step.run();
+        return (System.nanoTime() - start) / 1e6 / TIMED_RUNS;
+    }
+
+    private static void logLoadTimes(Context ctx, String label) throws Exception {
+        long start = System.nanoTime();
+        try (ObjectDetector detector = new ObjectDetector(ctx)) {
+            Log.i(TAG, String.format(Locale.US, "%s: detector %s loaded in %.0f ms",
+                    label, detector.getTier(), (System.nanoTime() - start) / 1e6));
+        }
+        if (!DepthEstimator.isModelAvailable(ctx, MainActivity.EnvMode.INDOOR)) return;
+        int[] frame = syntheticFrame(FRAME_W, FRAME_H);
+        start = System.nanoTime();
+        try (DepthEstimator depth = new DepthEstimator(ctx)) {
+            depth.estimate(frame, FRAME_W, FRAME_H);
+            Log.i(TAG, String.format(Locale.US, "%s: depth load + first estimate in %.0f ms",
+                    label, (System.nanoTime() - start) / 1e6));
+        }
+    }
+
+    private static double averageDecodeMs(ObjectDetector detector, int[] frame) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) detector.detect(frame, FRAME_W, FRAME_H);
+        long total = 0L;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            detector.detect(frame, FRAME_W, FRAME_H);
+            total += detector.getLastDecodeNanos();
+        }
+        return total / 1e6 / TIMED_RUNS;
+    }
+}
@@ -0,0 +1,102 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The in-graph preprocessing (tools/build_yuv_preprocess.py) against the Java path it stands in
+ * for: Yuv.toArgb, Yuv.rotate and FramePreprocessor must give the same tensor, value for value.
+ * Skipped when the graphs are not in the assets.
+ */
+@RunWith(AndroidJUnit4.class)
+public class YuvGraphParityTest {
+    // Even, not square, and not a multiple of the model sizes, so every path pads and clamps
+    private static final int W = 320, H = 242;
+
+    private static Yuv.Planes planes() {
+        Random rnd = new Random(5);
+        ByteBuffer y = ByteBuffer.allocateDirect(W * H).order(ByteOrder.nativeOrder());
+        ByteBuffer u = ByteBuffer.allocateDirect(W / 2 * H / 2).order(ByteOrder.nativeOrder());
+        ByteBuffer v = ByteBuffer.allocateDirect(W / 2 * H / 2).order(ByteOrder.nativeOrder());
+        for (ByteBuffer b : new ByteBuffer[]{y, u, v}) {
+            byte[] bytes = new byte[b.capacity()];
+            rnd.nextBytes(bytes);
+            b.put(bytes).rewind();
+        }
+        return new Yuv.Planes(W, H, y, u, v);
+    }
+
+    private static float[] contents(FramePreprocessor.Input in) {
+        float[] out = new float[in.chw.remaining()];
+        in.chw.duplicate().get(out);
+        return out;
+    }
+
+    private static void assertParity(YuvGraph graph, FramePreprocessor.Target target, int[] rotated,
+                                     int rw, int rh, Yuv.Planes planes, FrameArena arena) throws Exception {
+        FramePreprocessor.Input java = FramePreprocessor.run(rotated, rw, rh, target, arena, RowBands.serial());
+        FramePreprocessor.Input onnx = graph.run(planes, target, arena);
+        assertArrayEquals(contents(java), contents(onnx), 0f);
+        java.release(arena);
+        onnx.release(arena);
+    }
+
+    @Test
+    public void detectorInputMatchesJavaPath() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        assumeTrue(YuvGraph.isAvailable(ctx, YuvGraph.Kind.DETECTOR));
+        FrameArena arena = new FrameArena();
+        Yuv.Planes planes = planes();
+        try (YuvGraph graph = new YuvGraph(ctx, YuvGraph.Kind.DETECTOR)) {
+            int rot = graph.rotation();
+            boolean swap = rot == 90 || rot == 270;
+            int rw = swap ? H : W, rh = swap ? W : H;
+            int[] rotated = Yuv.rotate(Yuv.toArgb(planes, arena, RowBands.serial()), W, H, rot);
+            for (int size : new int[]{320, 416, 640}) {
+                float r = Math.min(size / (float) rw, size / (float) rh);
+                int nw = (int) (rw * r), nh = (int) (rh * r);
+                for (int blur : new int[]{0, 1}) {
+                    FramePreprocessor.Target t = new FramePreprocessor.Target(size, size, nw, nh,
+                            (size - nw) / 2, (size - nh) / 2, r, r, FramePreprocessor.Normalization.UNIT, blur);
+                    if (!graph.supports(t, rot)) continue;
+                    assertParity(graph, t, rotated, rw, rh, planes, arena);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void depthInputMatchesJavaPath() throws Exception {
+        Context ctx = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        assumeTrue(YuvGraph.isAvailable(ctx, YuvGraph.Kind.DEPTH));
+        FrameArena arena = new FrameArena();
+        Yuv.Planes planes = planes();
+        try (YuvGraph graph = new YuvGraph(ctx, YuvGraph.Kind.DEPTH)) {
+            int rot = graph.rotation();
+            boolean swap = rot == 90 || rot == 270;
+            int rw = swap ? H : W, rh = swap ? W : H;
+            int[] rotated = Yuv.rotate(Yuv.toArgb(planes, arena, RowBands.serial()), W, H, rot);
+            // Content scaled per axis to multiples of 14: fed as a rectangle, and padded to a square
+            int cw = rw > rh ? 392 : 294, ch = rw > rh ? 294 : 392;
+            for (int model : new int[]{0, 392}) {
+                int mw = model == 0 ? cw : model, mh = model == 0 ? ch : model;
+                FramePreprocessor.Target t = new FramePreprocessor.Target(mw, mh, cw, ch,
+                        (mw - cw) / 2, (mh - ch) / 2, cw / (float) rw, ch / (float) rh,
+                        FramePreprocessor.Normalization.IMAGENET, 0);
+                assertParity(graph, t, rotated, rw, rh, planes, arena);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+import vn.edu.usth.objectdetectmobile.utils.TTSWarning;
+
+/**
+ * Duty-cycles realtime analysis. While no dangerous class (see {@link TTSWarning}) is within
+ * warning distance the analyzer only processes a few frames per second; as soon as one shows up,
+ * or a far one is closing in, every frame CameraX delivers is processed again.
+ * Frames that are skipped are dropped before YUV conversion, so they cost almost nothing.
+ */
+public class AdaptiveFrameRateController {
+    private static final String TAG = "AdaptiveFps";
+
+    public enum Mode {
+        IDLE,   // nothing dangerous nearby -> low analysis rate
+        ACTIVE  // hazard in range or approaching -> full rate
+    }
+
+    public interface Listener {
+        /** Called on the analyzer thread whenever the cadence mode changes. */
+        void onModeChanged(Mode mode, float effectiveFps);
+    }
+
+    // ----- Tuning -----
+    private static final float IDLE_FPS = 3f;
+    private static final long HAZARD_HOLD_MS = 2000;     // stay at full rate this long after the last hazard
+    private static final float APPROACH_DELTA_M = 0.5f;  // closing distance between two frames that counts as approaching
+    private static final long FPS_WINDOW_MS = 1000;
+
+    private Mode mode = Mode.ACTIVE; // start at full rate until the first frame says otherwise
+    private long lastProcessedMs = Long.MIN_VALUE / 2;
+    private long lastHazardMs = 0L;
+    private float lastNearestHazardM = Float.NaN;
+    private float maxFps = Float.POSITIVE_INFINITY;
+
+    private long fpsWindowStartMs = -1L;
+    private int fpsWindowFrames = 0;
+    private volatile float effectiveFps = 0f;
+
+    private Listener listener;
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Caps the full-rate cadence, e.g. from an external power or thermal policy.
+     * Pass {@link Float#POSITIVE_INFINITY} to remove the cap.
+     */
+    public synchronized void setMaxFps(float fps) {
+        maxFps = fps > 0f ? fps : Float.POSITIVE_INFINITY;
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    public float getEffectiveFps() {
+        return effectiveFps;
+    }
+
+    /**
+     * Decide whether the frame arriving at {@code nowMs} should be analysed.
+     * A frame that is accepted is counted towards the effective FPS.
+     */
+    public synchronized boolean shouldProcess(long nowMs) {
+        if (nowMs - lastProcessedMs < currentIntervalMs()) return false;
+        lastProcessedMs = nowMs;
+
+        if (fpsWindowStartMs < 0) fpsWindowStartMs = nowMs;
+        fpsWindowFrames++;
+        long elapsed = nowMs - fpsWindowStartMs;
+        if (elapsed >= FPS_WINDOW_MS) {
+            effectiveFps = fpsWindowFrames * 1000f / elapsed;
+            fpsWindowStartMs = nowMs;
+            fpsWindowFrames = 0;
+            Log.d(TAG, String.format(Locale.US, "mode=%s effectiveFps=%.1f", mode, effectiveFps));
+        }
+        return true;
+    }
+
+    /**
+     * Feed back the result of an analysed frame.
+     *
+     * @param hazardSeen          a dangerous class was detected in the frame
+     * @param nearestHazardMeters distance of the closest dangerous object, NaN if unknown
+     *                            (e.g. depth disabled) — unknown distance counts as in range
+     */
+    public synchronized void onFrameResult(boolean hazardSeen, float nearestHazardMeters, long nowMs) {
+        boolean inRange = hazardSeen
+                && (Float.isNaN(nearestHazardMeters)
+                || TTSWarning.isWithinWarningDistance(nearestHazardMeters));
+        boolean approaching = hazardSeen
+                && !Float.isNaN(nearestHazardMeters)
+                && !Float.isNaN(lastNearestHazardM)
+                && lastNearestHazardM - nearestHazardMeters >= APPROACH_DELTA_M;
+        lastNearestHazardM = hazardSeen ? nearestHazardMeters : Float.NaN;
+
+        if (inRange || approaching) {
+            lastHazardMs = nowMs;
+            if (mode != Mode.ACTIVE) {
+                transition(Mode.ACTIVE, inRange
+                        ? String.format(Locale.US, "hazard in range (%.1fm)", nearestHazardMeters)
+                        : String.format(Locale.US, "hazard approaching (%.1fm)", nearestHazardMeters));
+            }
+        } else if (mode == Mode.ACTIVE && nowMs - lastHazardMs >= HAZARD_HOLD_MS) {
+            transition(Mode.IDLE, "no hazard for " + (nowMs - lastHazardMs) + "ms");
+        }
+    }
+
+    /** Back to full rate, e.g. when realtime mode is re-enabled. */
+    public synchronized void reset() {
+        lastProcessedMs = Long.MIN_VALUE / 2;
+        lastNearestHazardM = Float.NaN;
+        fpsWindowStartMs = -1L;
+        fpsWindowFrames = 0;
+        if (mode != Mode.ACTIVE) transition(Mode.ACTIVE, "reset");
+    }
+
+    private long currentIntervalMs() {
+        float fps = (mode == Mode.IDLE) ? Math.min(IDLE_FPS, maxFps) : maxFps;
+        if (Float.isInfinite(fps)) return 0L;
+        return (long) (1000f / fps);
+    }
+
+    private void transition(Mode next, String reason) {
+        Log.i(TAG, String.format(Locale.US, "%s -> %s (%s), effectiveFps=%.1f",
+                mode, next, reason, effectiveFps));
+        mode = next;
+        if (listener != null) listener.onModeChanged(next, effectiveFps);
+    }
+}
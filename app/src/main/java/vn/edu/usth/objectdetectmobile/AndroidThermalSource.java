@@ -0,0 +1,65 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+/**
+ * {@link ThermalGovernor.ThermalSource} backed by PowerManager.
+ * Thermal status needs API 29, headroom API 30; older devices report NONE / NaN,
+ * which keeps the governor at NORMAL.
+ */
+public class AndroidThermalSource implements ThermalGovernor.ThermalSource {
+    private static final String TAG = "AndroidThermalSource";
+    private static final int HEADROOM_FORECAST_SECONDS = 10;
+
+    private final PowerManager powerManager;
+    private Object statusListener; // PowerManager.OnThermalStatusChangedListener on API 29+
+
+    public AndroidThermalSource(@NonNull Context ctx) {
+        powerManager = (PowerManager) ctx.getSystemService(Context.POWER_SERVICE);
+    }
+
+    @Override
+    public float getHeadroom() {
+        if (powerManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.R) return Float.NaN;
+        try {
+            return powerManager.getThermalHeadroom(HEADROOM_FORECAST_SECONDS);
+        } catch (Throwable t) {
+            Log.w(TAG, "getThermalHeadroom failed", t);
+            return Float.NaN;
+        }
+    }
+
+    @Override
+    public int getStatus() {
+        if (powerManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return ThermalGovernor.STATUS_NONE;
+        }
+        return powerManager.getCurrentThermalStatus();
+    }
+
+    /** Push status changes to the governor instead of waiting for its next poll. */
+    public void register(@NonNull Context ctx, @NonNull ThermalGovernor governor) {
+        if (powerManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return;
+        PowerManager.OnThermalStatusChangedListener l =
+                status -> governor.onStatusChanged(SystemClock.elapsedRealtime());
+        powerManager.addThermalStatusListener(ContextCompat.getMainExecutor(ctx), l);
+        statusListener = l;
+    }
+
+    public void unregister() {
+        if (powerManager == null || statusListener == null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return;
+        }
+        powerManager.removeThermalStatusListener(
+                (PowerManager.OnThermalStatusChangedListener) statusListener);
+        statusListener = null;
+    }
+}
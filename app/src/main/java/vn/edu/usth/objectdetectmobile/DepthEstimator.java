@@ -4,28 +4,34 @@ import android.content.Context;
 import android.os.Environment;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.Log;
 
 import java.io.File;
 import java.io.InputStream;
 import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
 import vn.edu.usth.objectdetectmobile.MainActivity.EnvMode;
 
+import ai.onnxruntime.OnnxJavaType;
 import ai.onnxruntime.OnnxTensor;
 import ai.onnxruntime.OnnxValue;
 import ai.onnxruntime.OrtEnvironment;
 import ai.onnxruntime.OrtException;
 import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
 
 /**
  * Lightweight wrapper around the Depth Anything ONNX model.
- * Creates a fresh ORT session for each inference so the detector can continue running even
- * if depth runs out of memory. This keeps the two pipelines decoupled.
+ * The ORT session is opened on the first estimate (or warmUp) and kept, so an estimator can be
+ * built and warmed up off the main thread and swapped in ready to run. It is reference counted:
+ * close() only releases the session once the estimates still running on it have finished.
  */
 public class DepthEstimator implements AutoCloseable {
     private static final String TAG = "DepthEstimator";
@@ -40,6 +46,9 @@ public class DepthEstimator implements AutoCloseable {
         public final int width, height;
         public final float min, max;
 
+        // Holders of depth (the creator, then a cache and the frames reading it); see release
+        private int refs = 1;
+
         public DepthMap(float[] depth, int width, int height, float min, float max) {
             this.depth = depth;
             this.width = width;
@@ -47,6 +56,21 @@ public class DepthEstimator implements AutoCloseable {
             this.min = min;
             this.max = max;
         }
+
+        /** One more holder; false once the array has gone back to its arena. */
+        public synchronized boolean acquire() {
+            if (refs <= 0) return false;
+            refs++;
+            return true;
+        }
+
+        /** Drop a holder; the last one hands the array back to {@code arena}. */
+        public void release(FrameArena arena) {
+            synchronized (this) {
+                if (--refs != 0) return;
+            }
+            arena.release(depth);
+        }
     }
 
     private static final float NEAR_CM = 20f;  // clamp for extreme near noise
@@ -86,31 +110,84 @@ public class DepthEstimator implements AutoCloseable {
 
 
     private final OrtEnvironment env;
-    private final OrtSession.SessionOptions sessionOptions;
-    private final String modelPath;
-
-    private final int inputSize = 518;
+    private final ModelSource model;
+    private volatile List<ExecutionProviders.Provider> providerPreference = ExecutionProviders.DEFAULT_PREFERENCE;
+    private volatile String provider = ExecutionProviders.Provider.CPU.name();
+    // Guarded by this; session is null until first use and after the last release
+    private OrtSession session;
+    // What opened it (provider, XNNPACK threads); closed through ExecutionProviders.closeSession
+    private ExecutionProviders.Selection<OrtSession> selection;
+    // Shrinks the CPU arena after each run (see OrtMemory); null when not configured
+    private OrtSession.RunOptions runOptions;
+    private String inputName;
+    private String outputName;
+    private long[] outputDims;
+    private int staticSize;
+    // fp16 exports (the *_fp16 downloads) take and return halves: fed and read as such, no casts
+    private boolean halfInput, halfOutput;
+    // Run into a preallocated output buffer; cleared if the session refuses pinned outputs
+    private volatile boolean pinOutput = true;
+    private int refs = 1; // the owner's reference, dropped by close()
+    private boolean closed = false;
+
+    public static final int DEFAULT_INPUT_SIZE = 518;
+    private static final int MIN_INPUT_SIZE = 196;
+    private volatile int inputSize = DEFAULT_INPUT_SIZE;
+    // Feed a multiple-of-14 rectangle matching the frame (e.g. 392x518) instead of padding to a square
+    private volatile boolean aspectPreserving = true;
+    // Preprocessing done here and the depth upsampling split their rows across these threads
+    private volatile RowBands rowBands = RowBands.serial();
     private final int multiple = 14;
-    private final float[] mean = {0.485f, 0.456f, 0.406f};
-    private final float[] std = {0.229f, 0.224f, 0.225f};
 
     public DepthEstimator(@NonNull Context ctx) throws OrtException {
         this(ctx, EnvMode.INDOOR);
     }
 
     public DepthEstimator(@NonNull Context ctx, EnvMode mode) throws OrtException {
-        env = OrtEnvironment.getEnvironment();
-        modelPath = resolveModelPath(ctx, mode);
-        sessionOptions = new OrtSession.SessionOptions();
+        env = OrtThreading.environment();
+        OptimizedModelCache.configure(new File(ctx.getCacheDir(), "ort"));
+        model = resolveModel(ctx, mode);
+    }
+
+    /** Provider order for the depth session; only applies before it is opened (first estimate or warmUp). */
+    public void setProviderPreference(@NonNull List<ExecutionProviders.Provider> preference) {
+        providerPreference = Collections.unmodifiableList(new ArrayList<>(preference));
+    }
+
+    /** Execution provider the last depth session ran on, for metrics. */
+    public String getProvider() {
+        return provider;
+    }
+
+    /**
+     * Longest side of the network input. Depth Anything exports use dynamic H/W, so any multiple
+     * of the ViT patch size (14) works; smaller inputs trade depth detail for latency.
+     */
+    public void setInputSize(int size) {
+        int rounded = roundToMultiple(size, multiple);
+        inputSize = clampToRange(rounded, MIN_INPUT_SIZE, DEFAULT_INPUT_SIZE);
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /** Only takes effect with dynamic-shape exports; static ones are always padded to their square. */
+    public void setAspectPreserving(boolean enabled) {
+        aspectPreserving = enabled;
+    }
+
+    /** Threads for the pre- and postprocessing kernels; serial by default. */
+    public void setRowBands(@NonNull RowBands bands) {
+        rowBands = bands;
     }
 
     public static boolean isModelAvailable(@NonNull Context ctx, EnvMode mode) {
         // Prefer downloaded fp16 model, fallback to bundled asset.
+        ModelStore store = ObjectDetector.Util.store(ctx);
         for (String name : getCandidateNames(mode)) {
-            File f = getDownloadFile(ctx, name);
-            if (f != null && f.exists() && f.length() > 0) {
-                return true;
-            }
+            // A legacy download counts once importLegacyDownload has verified it into the store
+            if (store.contains(name)) return true;
         }
         for (String name : getCandidateNames(mode)) {
             if (assetExists(ctx, name)) {
@@ -120,21 +197,58 @@ public class DepthEstimator implements AutoCloseable {
         return false;
     }
 
-    private static String resolveModelPath(Context ctx, EnvMode mode) {
+    private static ModelSource resolveModel(Context ctx, EnvMode mode) {
+        ModelStore store = ObjectDetector.Util.store(ctx);
         for (String name : getCandidateNames(mode)) {
-            File f = getDownloadFile(ctx, name);
-            if (f != null && f.exists() && f.length() > 0) {
-                return f.getAbsolutePath();
+            try {
+                File stored = store.get(name, null);
+                if (stored != null) return ModelSource.ofStored(stored, name, store.sha256(name));
+            } catch (java.io.IOException e) {
+                Log.w(TAG, "Cannot load downloaded " + name + ", trying next candidate", e);
             }
         }
         for (String name : getCandidateNames(mode)) {
             if (assetExists(ctx, name)) {
-                return ObjectDetector.Util.cacheAsset(ctx, name);
+                return ObjectDetector.Util.mapAsset(ctx, name);
             }
         }
         throw new IllegalStateException("Depth model not found for mode: " + mode);
     }
 
+    /** Store name (and URL file name) of the downloadable fp16 model for {@code mode}. */
+    public static String downloadName(EnvMode mode) {
+        return mode == EnvMode.OUTDOOR ? OUTDOOR_MODEL_DOWNLOAD : INDOOR_MODEL_DOWNLOAD;
+    }
+
+    /**
+     * Move the model older versions fetched through DownloadManager into the store, if it matches
+     * the pinned or published hash (see {@link ModelDownloader#importVerified}); one that does
+     * not is deleted. Hashes the file and may fetch the sidecar: call off the main thread.
+     */
+    static void importLegacyDownload(Context ctx, EnvMode mode) {
+        String name = downloadName(mode);
+        File f = getDownloadFile(ctx, name);
+        if (f == null || !f.exists()) return;
+        ModelStore store = ObjectDetector.Util.store(ctx);
+        try {
+            if (store.contains(name)) {
+                f.delete(); // superseded by a verified download
+                return;
+            }
+            new ModelDownloader(store).importVerified(name, DepthModelDownloads.url(mode),
+                    DepthModelDownloads.pinnedSha256(mode), f);
+            Log.i(TAG, "Imported legacy download " + name);
+        } catch (java.io.IOException e) {
+            Log.w(TAG, "Legacy download " + name + " not imported", e);
+        }
+    }
+
+    /** Delete a model left in Downloads by the old DownloadManager flow; true if one existed. */
+    static boolean deleteLegacyDownload(Context ctx, EnvMode mode) {
+        File f = getDownloadFile(ctx, downloadName(mode));
+        return f != null && f.exists() && f.delete();
+    }
+
     private static String[] getCandidateNames(EnvMode mode) {
         if (mode == EnvMode.OUTDOOR) {
             return new String[]{OUTDOOR_MODEL_DOWNLOAD, OUTDOOR_MODEL_ASSET};
@@ -166,30 +280,119 @@ public class DepthEstimator implements AutoCloseable {
         return enriched;
     }
 
+    /** One estimate on a blank frame so the first real frame does not pay the first-run costs. */
+    public void warmUp() throws OrtException {
+        int size = inputSize;
+        long start = System.nanoTime();
+        estimate(new int[size * size], size, size);
+        Log.i(TAG, String.format(Locale.US, "Warm-up at %d: %.0f ms (%s)",
+                size, (System.nanoTime() - start) / 1e6, OrtMemory.describeNative()));
+    }
+
     public DepthMap estimate(int[] argb, int srcW, int srcH) throws OrtException {
-        Prep prep = preprocess(argb, srcW, srcH);
-        long[] shape = new long[]{1, 3, prep.modelSize, prep.modelSize};
-        OnnxTensor input = OnnxTensor.createTensor(env, FloatBuffer.wrap(prep.chw), shape);
-
-        float[] rawDepth;
-        int rawH, rawW;
-        try (OrtSession session = env.createSession(modelPath, sessionOptions);
-             OnnxTensor tensor = input) {
-            String inputName = session.getInputInfo().keySet().iterator().next();
-            try (OrtSession.Result out = session.run(Collections.singletonMap(inputName, tensor))) {
-                OnnxValue ov = out.get(0);
-                OnnxTensor depthTensor = (OnnxTensor) ov;
-                long[] outShape = depthTensor.getInfo().getShape(); // expect [1,H,W]
-                rawH = (int) outShape[1];
-                rawW = (int) outShape[2];
-                FloatBuffer buf = depthTensor.getFloatBuffer();
-                rawDepth = new float[buf.remaining()];
-                buf.get(rawDepth);
+        return estimate(argb, srcW, srcH, FrameArena.unpooled());
+    }
+
+    /**
+     * Scratch buffers come from and go back to {@code arena}. The returned map's depth array is
+     * taken from it too: {@link DepthMap#release} it there once nothing reads the map any more
+     * (or just drop it).
+     */
+    public DepthMap estimate(int[] argb, int srcW, int srcH, FrameArena arena) throws OrtException {
+        return estimate(argb, srcW, srcH, arena, null);
+    }
+
+    /**
+     * With the input already built by a shared {@link FramePreprocessor} pass; it is rebuilt from
+     * {@code argb} if it no longer matches {@link #inputTarget}. {@code prepared} stays the
+     * caller's to release.
+     */
+    public DepthMap estimate(int[] argb, int srcW, int srcH, FrameArena arena,
+                             @Nullable FramePreprocessor.Input prepared) throws OrtException {
+        return estimate(() -> argb, srcW, srcH, arena, prepared);
+    }
+
+    /** As above, with the pixels only converted if {@code prepared} has to be rebuilt. */
+    public DepthMap estimate(FramePreprocessor.Frame frame, int srcW, int srcH, FrameArena arena,
+                             @Nullable FramePreprocessor.Input prepared) throws OrtException {
+        float[] rawDepth = null;
+        int rawH = 0, rawW = 0;
+        FramePreprocessor.Target target;
+        FramePreprocessor.Input prep = null;
+        RowBands bands = rowBands;
+        if (!acquire()) throw new IllegalStateException("DepthEstimator is closed");
+        try {
+            OrtSession session = session();
+            OrtSession.RunOptions ro = runOptions;
+            target = inputTarget(srcW, srcH, staticSize);
+            prep = prepared != null && prepared.target.equals(target)
+                    ? prepared
+                    : FramePreprocessor.run(frame.argb(), srcW, srcH, target, arena, bands);
+            long[] shape = new long[]{1, 3, target.modelH, target.modelW};
+            long[] pinnedShape = pinOutput ? pinnedOutputShape(target) : null;
+            int pinnedLen = pinnedShape != null ? (int) (pinnedShape[1] * pinnedShape[2]) : 0;
+            FloatBuffer outBuf = pinnedShape != null && !halfOutput ? arena.directFloats(pinnedLen) : null;
+            ShortBuffer outHalf = pinnedShape != null && halfOutput ? arena.directShorts(pinnedLen) : null;
+            try (OnnxTensor tensor = prep.chwHalf != null
+                    ? OnnxTensor.createTensor(env, prep.chwHalf, shape, OnnxJavaType.FLOAT16)
+                    : OnnxTensor.createTensor(env, prep.chw, shape)) {
+                if (pinnedShape != null) {
+                    try (OnnxTensor output = outHalf != null
+                                 ? OnnxTensor.createTensor(env, outHalf, pinnedShape, OnnxJavaType.FLOAT16)
+                                 : OnnxTensor.createTensor(env, outBuf, pinnedShape);
+                         OrtSession.Result ignored = ro != null
+                                 ? session.run(Collections.singletonMap(inputName, tensor),
+                                         Collections.singletonMap(outputName, output), ro)
+                                 : session.run(Collections.singletonMap(inputName, tensor),
+                                         Collections.singletonMap(outputName, output))) {
+                        rawH = (int) pinnedShape[1];
+                        rawW = (int) pinnedShape[2];
+                        rawDepth = arena.floats(pinnedLen);
+                        if (outHalf != null) {
+                            outHalf.rewind();
+                            HalfFloat.toFloats(outHalf, rawDepth, pinnedLen);
+                        } else {
+                            outBuf.rewind();
+                            outBuf.get(rawDepth);
+                        }
+                    } catch (OrtException e) {
+                        pinOutput = false;
+                        Log.w(TAG, "Pinned output rejected by " + model.name + ", copying outputs from now on", e);
+                    }
+                }
+                if (rawDepth == null) {
+                    try (OrtSession.Result out = ro != null
+                            ? session.run(Collections.singletonMap(inputName, tensor), ro)
+                            : session.run(Collections.singletonMap(inputName, tensor))) {
+                        OnnxValue ov = out.get(0);
+                        OnnxTensor depthTensor = (OnnxTensor) ov;
+                        long[] outShape = depthTensor.getInfo().getShape(); // expect [1,H,W]
+                        rawH = (int) outShape[1];
+                        rawW = (int) outShape[2];
+                        if (depthTensor.getInfo().type == OnnxJavaType.FLOAT16) {
+                            ShortBuffer buf = depthTensor.getShortBuffer();
+                            rawDepth = arena.floats(buf.remaining());
+                            HalfFloat.toFloats(buf, rawDepth, rawDepth.length);
+                        } else {
+                            FloatBuffer buf = depthTensor.getFloatBuffer();
+                            rawDepth = arena.floats(buf.remaining());
+                            buf.get(rawDepth);
+                        }
+                    }
+                }
+            } finally {
+                arena.release(outBuf);
+                arena.release(outHalf);
             }
+        } finally {
+            release();
+            if (prep != null && prep != prepared) prep.release(arena);
         }
 
-        float[] cropped = crop(rawDepth, rawW, rawH, prep.padX, prep.padY, prep.contentW, prep.contentH);
-        float[] depthFull = resizeBilinear(cropped, prep.contentW, prep.contentH, srcW, srcH);
+        float[] cropped = crop(rawDepth, rawW, rawH, target.padX, target.padY, target.contentW, target.contentH, arena);
+        float[] depthFull = resizeBilinear(cropped, target.contentW, target.contentH, srcW, srcH, arena, bands);
+        if (cropped != rawDepth) arena.release(cropped);
+        arena.release(rawDepth);
         float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
         for (float v : depthFull) {
             if (v < min) min = v;
@@ -198,6 +401,88 @@ public class DepthEstimator implements AutoCloseable {
         return new DepthMap(depthFull, srcW, srcH, min, max);
     }
 
+    private synchronized OrtSession session() throws OrtException {
+        if (session == null) {
+            ExecutionProviders.Selection<OrtSession> selection = ExecutionProviders.openSession(
+                    env, model, OrtThreading.Role.DEPTH, providerPreference);
+            try {
+                inputName = selection.session.getInputInfo().keySet().iterator().next();
+                outputName = selection.session.getOutputInfo().keySet().iterator().next();
+                TensorInfo out = (TensorInfo) selection.session.getOutputInfo().get(outputName).getInfo();
+                outputDims = out.getShape();
+                halfOutput = out.type == OnnxJavaType.FLOAT16;
+                halfInput = ((TensorInfo) selection.session.getInputInfo().get(inputName).getInfo()).type
+                        == OnnxJavaType.FLOAT16;
+                staticSize = staticInputSize(selection.session, inputName);
+                runOptions = OrtMemory.runOptions(OrtThreading.Role.DEPTH);
+            } catch (OrtException | RuntimeException e) {
+                ExecutionProviders.closeSession(selection);
+                throw e;
+            }
+            provider = selection.describe();
+            this.selection = selection;
+            session = selection.session;
+        }
+        return session;
+    }
+
+    /** Rough native footprint of the open session (model weights), 0 when none is open. */
+    public synchronized long footprintBytes() {
+        return session != null ? model.size() : 0L;
+    }
+
+    /**
+     * Close the session if no estimate is running; the next estimate reopens it.
+     * Returns the bytes freed (estimate), 0 if nothing was closed.
+     */
+    public long trimSession() {
+        ExecutionProviders.Selection<OrtSession> toClose;
+        OrtSession.RunOptions roToClose;
+        synchronized (this) {
+            if (closed || refs != 1 || session == null) return 0L;
+            toClose = selection;
+            roToClose = runOptions;
+            session = null;
+            selection = null;
+            runOptions = null;
+        }
+        if (roToClose != null) roToClose.close();
+        try {
+            ExecutionProviders.closeSession(toClose);
+        } catch (OrtException e) {
+            Log.w(TAG, "Closing " + model.name + " failed", e);
+        }
+        return model.size();
+    }
+
+    /** Hold the session open for an estimate; false once the estimator is closed. */
+    synchronized boolean acquire() {
+        if (refs <= 0) return false;
+        refs++;
+        return true;
+    }
+
+    void release() {
+        ExecutionProviders.Selection<OrtSession> toClose;
+        OrtSession.RunOptions roToClose;
+        synchronized (this) {
+            if (--refs > 0) return;
+            toClose = selection;
+            roToClose = runOptions;
+            session = null;
+            selection = null;
+            runOptions = null;
+        }
+        if (roToClose != null) roToClose.close();
+        if (toClose == null) return;
+        try {
+            ExecutionProviders.closeSession(toClose);
+            Log.i(TAG, model.name + " session closed (" + OrtMemory.describeNative() + ")");
+        } catch (OrtException e) {
+            Log.w(TAG, "Closing " + model.name + " failed", e);
+        }
+    }
+
     private static float averageDepth(DepthMap map, ObjectDetector.Detection d) {
         if (map.width == 0 || map.height == 0) return Float.NaN;
         int x1 = clamp((int)Math.floor(d.x1), 0, map.width-1);
@@ -243,87 +528,85 @@ public class DepthEstimator implements AutoCloseable {
         return NEAR_CM + normalized * (FAR_CM - NEAR_CM);
     }
 
-    private static class Prep {
-        final float[] chw;
-        final int modelSize;
-        final int contentW, contentH;
-        final int padX, padY;
-        Prep(float[] chw, int modelSize, int contentW, int contentH, int padX, int padY) {
-            this.chw = chw;
-            this.modelSize = modelSize;
-            this.contentW = contentW;
-            this.contentH = contentH;
-            this.padX = padX;
-            this.padY = padY;
+    // Static-shape exports dictate a square size; 0 for dynamic H/W
+    private static int staticInputSize(OrtSession session, String inputName) throws OrtException {
+        long[] shape = ((TensorInfo) session.getInputInfo().get(inputName).getInfo()).getShape();
+        if (shape.length == 4 && shape[2] > 0 && shape[3] > 0) {
+            return (int) Math.max(shape[2], shape[3]);
+        }
+        return 0;
+    }
+
+    // [1,H,W] for this input so the output can be pinned; static dims win. Null unless rank 3.
+    @Nullable
+    private long[] pinnedOutputShape(FramePreprocessor.Target target) {
+        long[] dims = outputDims;
+        if (dims == null || dims.length != 3) return null;
+        return new long[]{1, dims[1] > 0 ? dims[1] : target.modelH, dims[2] > 0 ? dims[2] : target.modelW};
+    }
+
+    /**
+     * Input this estimator wants for a srcW x srcH frame at the current input size: scaled to
+     * multiples of 14 and ImageNet-normalized, as a rectangle or padded to a square (static
+     * exports always are), in halves for fp16 exports. Opens the session if needed, to learn
+     * whether the export is static and which input type it declares.
+     */
+    public FramePreprocessor.Target inputTarget(int srcW, int srcH) throws OrtException {
+        if (!acquire()) throw new IllegalStateException("DepthEstimator is closed");
+        try {
+            session();
+            return inputTarget(srcW, srcH, staticSize);
+        } finally {
+            release();
         }
     }
 
-    private Prep preprocess(int[] argb, int srcW, int srcH) {
-        int target = inputSize;
+    private FramePreprocessor.Target inputTarget(int srcW, int srcH, int staticSize) {
+        int target = staticSize > 0 ? staticSize : inputSize;
+        boolean rect = staticSize == 0 && aspectPreserving;
         int longest = Math.max(srcW, srcH);
         float scale = target / (float) longest;
 
         int scaledW = clampToRange(roundToMultiple(Math.round(srcW * scale), multiple), multiple, target);
         int scaledH = clampToRange(roundToMultiple(Math.round(srcH * scale), multiple), multiple, target);
-        int[] scaled = resizeNearest(argb, srcW, srcH, scaledW, scaledH);
-
-        int padX = Math.max(0, (target - scaledW) / 2);
-        int padY = Math.max(0, (target - scaledH) / 2);
-
-        int plane = target * target;
-        float[] chw = new float[3 * plane];
-        for (int y = 0; y < scaledH; y++) {
-            int srcRow = y * scaledW;
-            int dstRow = (y + padY) * target;
-            for (int x = 0; x < scaledW; x++) {
-                int p = scaled[srcRow + x];
-                float r = ((p >> 16) & 0xFF) / 255f;
-                float g = ((p >> 8) & 0xFF) / 255f;
-                float b = (p & 0xFF) / 255f;
-                int idx = dstRow + padX + x;
-                chw[idx] = (r - mean[0]) / std[0];
-                chw[plane + idx] = (g - mean[1]) / std[1];
-                chw[2 * plane + idx] = (b - mean[2]) / std[2];
-            }
-        }
 
-        return new Prep(chw, target, scaledW, scaledH, padX, padY);
+        // Square mode pads the content to target x target; rect mode feeds the content as-is
+        int modelW = rect ? scaledW : target;
+        int modelH = rect ? scaledH : target;
+        int padX = Math.max(0, (modelW - scaledW) / 2);
+        int padY = Math.max(0, (modelH - scaledH) / 2);
+        return new FramePreprocessor.Target(modelW, modelH, scaledW, scaledH, padX, padY,
+                scaledW / (float) srcW, scaledH / (float) srcH,
+                FramePreprocessor.Normalization.IMAGENET, 0,
+                halfInput ? FramePreprocessor.Layout.CHW_HALF : FramePreprocessor.Layout.CHW_FLOAT);
     }
 
-    private static int[] resizeNearest(int[] src, int srcW, int srcH, int dstW, int dstH) {
-        int[] dst = new int[dstW*dstH];
-        float sx = dstW / (float)srcW;
-        float sy = dstH / (float)srcH;
-        for (int y=0;y<dstH;y++){
-            int py = Math.min((int)(y / sy), srcH-1);
-            for (int x=0;x<dstW;x++){
-                int px = Math.min((int)(x / sx), srcW-1);
-                dst[y*dstW + x] = src[py*srcW + px];
-            }
+    private static float[] resizeBilinear(float[] src, int srcW, int srcH, int dstW, int dstH, FrameArena arena,
+                                          RowBands bands) {
+        float[] dst = arena.floats(dstW*dstH);
+        if (srcW==dstW && srcH==dstH) {
+            System.arraycopy(src, 0, dst, 0, dst.length);
+            return dst;
         }
-        return dst;
-    }
-
-    private static float[] resizeBilinear(float[] src, int srcW, int srcH, int dstW, int dstH) {
-        if (srcW==dstW && srcH==dstH) return src.clone();
-        float[] dst = new float[dstW*dstH];
         float xRatio = dstW>1 ? (srcW-1f)/(dstW-1f):0f;
         float yRatio = dstH>1 ? (srcH-1f)/(dstH-1f):0f;
-        for (int y=0;y<dstH;y++){
-            float sy = y * yRatio;
-            int y0 = (int)Math.floor(sy);
-            int y1 = Math.min(y0+1, srcH-1);
-            float ly = sy - y0;
-            for (int x=0;x<dstW;x++){
-                float sx = x * xRatio;
-                int x0 = (int)Math.floor(sx);
-                int x1 = Math.min(x0+1, srcW-1);
-                float lx = sx - x0;
-                float top = lerp(src[y0*srcW + x0], src[y0*srcW + x1], lx);
-                float bottom = lerp(src[y1*srcW + x0], src[y1*srcW + x1], lx);
-                dst[y*dstW + x] = lerp(top, bottom, ly);
+        bands.forRows(dstH, dstW * 4, (from, to) -> {
+            for (int y=from;y<to;y++){
+                float sy = y * yRatio;
+                int y0 = (int)Math.floor(sy);
+                int y1 = Math.min(y0+1, srcH-1);
+                float ly = sy - y0;
+                for (int x=0;x<dstW;x++){
+                    float sx = x * xRatio;
+                    int x0 = (int)Math.floor(sx);
+                    int x1 = Math.min(x0+1, srcW-1);
+                    float lx = sx - x0;
+                    float top = lerp(src[y0*srcW + x0], src[y0*srcW + x1], lx);
+                    float bottom = lerp(src[y1*srcW + x0], src[y1*srcW + x1], lx);
+                    dst[y*dstW + x] = lerp(top, bottom, ly);
+                }
             }
-        }
+        });
         return dst;
     }
 
@@ -339,11 +622,12 @@ public class DepthEstimator implements AutoCloseable {
         return Math.max(min, Math.min(max, value));
     }
 
-    private static float[] crop(float[] src, int srcW, int srcH, int offsetX, int offsetY, int outW, int outH) {
+    private static float[] crop(float[] src, int srcW, int srcH, int offsetX, int offsetY, int outW, int outH,
+                                FrameArena arena) {
         if (offsetX == 0 && offsetY == 0 && outW == srcW && outH == srcH) {
-            return src.clone();
+            return src; // rect input: nothing to crop
         }
-        float[] dst = new float[outW * outH];
+        float[] dst = arena.floats(outW * outH);
         for (int y = 0; y < outH; y++) {
             int srcBase = (y + offsetY) * srcW + offsetX;
             int dstBase = y * outW;
@@ -352,9 +636,14 @@ public class DepthEstimator implements AutoCloseable {
         return dst;
     }
 
+    /** Drop the owner's reference; the session closes when the last running estimate ends. */
     @Override
-    public void close() throws Exception {
-        sessionOptions.close();
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        release();
     }
 }
 
@@ -0,0 +1,107 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import vn.edu.usth.objectdetectmobile.MainActivity.EnvMode;
+
+/**
+ * fp16 depth model downloads, shared by MainActivity and Settings. Downloads run one at a time
+ * on a background thread through {@link ModelDownloader}; callbacks arrive on the main thread.
+ */
+public final class DepthModelDownloads {
+    private static final String TAG = "DepthModelDownloads";
+
+    private static final String BASE_URL =
+            "https://haidreamer.github.io/models_mobile_app_gp_for_visually_impaired/";
+    // Pinned SHA-256 per model, from gradle.properties (depthModelSha256.*); without one the
+    // .sha256 sidecar published next to the model is the reference, and without that no install
+    private static final String INDOOR_SHA256 = pinned(BuildConfig.DEPTH_INDOOR_SHA256);
+    private static final String OUTDOOR_SHA256 = pinned(BuildConfig.DEPTH_OUTDOOR_SHA256);
+
+    public interface Callback {
+        /** {@code percent} is -1 when the size is unknown. */
+        void onProgress(EnvMode mode, int percent);
+
+        /** {@code error} is null when the model was verified and installed. */
+        void onFinished(EnvMode mode, @Nullable Throwable error);
+    }
+
+    private static final ExecutorService exec = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "model-download");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Handler main = new Handler(Looper.getMainLooper());
+    private static final Set<EnvMode> inFlight = EnumSet.noneOf(EnvMode.class);
+
+    private DepthModelDownloads() {}
+
+    @Nullable
+    private static String pinned(String sha256) {
+        return sha256 == null || sha256.isEmpty() ? null : sha256;
+    }
+
+    /** Pinned SHA-256 of {@code mode}'s model, or null to go by the published sidecar. */
+    @Nullable
+    static String pinnedSha256(EnvMode mode) {
+        return mode == EnvMode.OUTDOOR ? OUTDOOR_SHA256 : INDOOR_SHA256;
+    }
+
+    public static String url(EnvMode mode) {
+        return BASE_URL + DepthEstimator.downloadName(mode);
+    }
+
+    /** Start (or resume) the download for {@code mode}; false if it is already running. */
+    public static boolean start(@NonNull Context ctx, @NonNull EnvMode mode, @NonNull Callback cb) {
+        synchronized (inFlight) {
+            if (!inFlight.add(mode)) return false;
+        }
+        Context app = ctx.getApplicationContext();
+        String name = DepthEstimator.downloadName(mode);
+        String sha = pinnedSha256(mode);
+        exec.execute(() -> {
+            Throwable error = null;
+            int[] lastPercent = {Integer.MIN_VALUE};
+            try {
+                new ModelDownloader(ObjectDetector.Util.store(app)).download(name, url(mode), sha,
+                        (n, done, total) -> {
+                            int percent = total > 0 ? (int) (done * 100 / total) : -1;
+                            if (percent == lastPercent[0]) return;
+                            lastPercent[0] = percent;
+                            main.post(() -> cb.onProgress(mode, percent));
+                        });
+                Log.i(TAG, name + " installed");
+            } catch (Throwable t) {
+                Log.w(TAG, name + " download failed", t);
+                error = t;
+            } finally {
+                synchronized (inFlight) {
+                    inFlight.remove(mode);
+                }
+            }
+            Throwable result = error;
+            main.post(() -> cb.onFinished(mode, result));
+        });
+        return true;
+    }
+
+    /** Remove the downloaded model for {@code mode}; true if there was one. */
+    public static boolean delete(@NonNull Context ctx, @NonNull EnvMode mode) {
+        String name = DepthEstimator.downloadName(mode);
+        ModelStore store = ObjectDetector.Util.store(ctx);
+        boolean existed = store.contains(name);
+        store.remove(name);
+        return DepthEstimator.deleteLegacyDownload(ctx, mode) || existed;
+    }
+}
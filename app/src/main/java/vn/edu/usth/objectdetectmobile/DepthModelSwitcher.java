@@ -0,0 +1,256 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import vn.edu.usth.objectdetectmobile.MainActivity.EnvMode;
+
+/**
+ * The depth estimator in use, and (memory permitting) a warmed-up one for the other EnvMode.
+ * Estimators are built and warmed up on a background thread and swapped in atomically.
+ * Frames hold a reference while they run, so a replaced estimator only closes its session
+ * after they finish. Switching never blocks the main thread or the detector.
+ */
+final class DepthModelSwitcher implements AutoCloseable {
+    private static final String TAG = "DepthModelSwitcher";
+
+    // ----- Tuning -----
+    // Keep a second estimator loaded only while this much RAM is still available
+    private static final long PRELOAD_MIN_AVAIL_BYTES = 1536L << 20;
+
+    interface Callback {
+        /**
+         * Main thread, after the swap. {@code available} is false when there is no model for
+         * {@code mode}; depth is then off until a later switch.
+         */
+        void onSwitched(EnvMode mode, boolean available, @Nullable Throwable error);
+    }
+
+    private final Context appCtx;
+    private final RowBands rowBands;
+    private final AtomicReference<DepthEstimator> active = new AtomicReference<>();
+    private volatile EnvMode activeMode = null;
+    // Loaded but idle estimators, by mode; guarded by itself
+    private final Map<EnvMode, DepthEstimator> warm = new EnumMap<>(EnvMode.class);
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "depth-loader");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Handler main = new Handler(Looper.getMainLooper());
+    // Publishing into active and close() hold this, so nothing is published after close()
+    private final Object publishLock = new Object();
+    private volatile boolean closed = false; // written under publishLock
+
+    DepthModelSwitcher(@NonNull Context ctx, @NonNull RowBands rowBands) {
+        appCtx = ctx.getApplicationContext();
+        this.rowBands = rowBands;
+    }
+
+    /**
+     * Make {@code mode}'s estimator the active one: the preloaded one if there is one, else a new
+     * one built and warmed up in the background. Frames keep using the current estimator
+     * meanwhile. The replaced estimator is kept warm if memory allows, else closed.
+     */
+    void switchTo(@NonNull EnvMode mode, @NonNull Callback cb) {
+        loader.execute(() -> {
+            long start = System.nanoTime();
+            DepthEstimator next = takeWarm(mode);
+            boolean preloaded = next != null;
+            boolean available = true;
+            Throwable error = null;
+            if (next == null) {
+                try {
+                    DepthEstimator.importLegacyDownload(appCtx, mode);
+                    available = DepthEstimator.isModelAvailable(appCtx, mode);
+                    if (available) next = build(mode);
+                } catch (Throwable t) {
+                    error = t;
+                }
+            }
+            // No model or a failed build leaves depth off: the old mode's depth would be wrong
+            EnvMode oldMode;
+            DepthEstimator old;
+            synchronized (publishLock) {
+                if (closed) {
+                    if (next != null) next.close();
+                    return;
+                }
+                oldMode = activeMode;
+                old = active.getAndSet(next);
+                activeMode = mode;
+            }
+            if (old != null) {
+                if (oldMode != mode) keepWarmOrClose(oldMode, old);
+                else old.close();
+            }
+            Log.i(TAG, String.format(Locale.US, "Depth %s -> %s in %.0f ms (%s)", oldMode, mode,
+                    (System.nanoTime() - start) / 1e6,
+                    preloaded ? "preloaded" : next != null ? "built" : "unavailable"));
+            boolean finalAvailable = available;
+            Throwable finalError = error;
+            main.post(() -> {
+                if (!closed) cb.onSwitched(mode, finalAvailable, finalError);
+            });
+        });
+    }
+
+    /** Build and warm up {@code mode}'s estimator in the background, if memory allows. */
+    void preload(@NonNull EnvMode mode) {
+        loader.execute(() -> {
+            if (closed || mode == activeMode) return;
+            synchronized (warm) {
+                if (warm.containsKey(mode)) return;
+            }
+            if (!memoryAllowsPreload()) {
+                Log.i(TAG, "Not preloading " + mode + ": low on memory");
+                return;
+            }
+            try {
+                DepthEstimator.importLegacyDownload(appCtx, mode);
+                if (!DepthEstimator.isModelAvailable(appCtx, mode)) return;
+                DepthEstimator est = build(mode);
+                if (closed) {
+                    est.close();
+                    return;
+                }
+                keepWarmOrClose(mode, est);
+            } catch (Throwable t) {
+                Log.w(TAG, "Preloading " + mode + " failed", t);
+            }
+        });
+    }
+
+    /** Close the idle estimator for {@code mode}, e.g. after its model file was replaced. */
+    void discardPreloaded(@NonNull EnvMode mode) {
+        loader.execute(() -> {
+            DepthEstimator est = takeWarm(mode);
+            if (est != null) est.close();
+        });
+    }
+
+    /**
+     * The active estimator with a reference held for one frame, or null when depth is off.
+     * Pair with {@link DepthEstimator#release()}.
+     */
+    @Nullable
+    DepthEstimator acquire() {
+        while (true) {
+            DepthEstimator d = active.get();
+            if (d == null) return null;
+            if (d.acquire()) return d;
+            // closed between get() and acquire(): the replacement is already published
+        }
+    }
+
+    /** The active estimator for metrics only (not held). */
+    @Nullable
+    DepthEstimator current() {
+        return active.get();
+    }
+
+    /** Estimated bytes held by preloaded (idle) estimators. */
+    long preloadedFootprintBytes() {
+        long total = 0L;
+        synchronized (warm) {
+            for (DepthEstimator est : warm.values()) total += est.footprintBytes();
+        }
+        return total;
+    }
+
+    /** Close the preloaded estimators; the next switch builds its target again. */
+    long releasePreloaded() {
+        List<DepthEstimator> idle;
+        synchronized (warm) {
+            idle = new ArrayList<>(warm.values());
+            warm.clear();
+        }
+        long freed = 0L;
+        for (DepthEstimator est : idle) {
+            freed += est.footprintBytes();
+            est.close();
+        }
+        return freed;
+    }
+
+    long activeFootprintBytes() {
+        DepthEstimator d = active.get();
+        return d != null ? d.footprintBytes() : 0L;
+    }
+
+    /** Close the active session between frames; it reopens on the next estimate. */
+    long trimActiveSession() {
+        DepthEstimator d = active.get();
+        return d != null ? d.trimSession() : 0L;
+    }
+
+    @Override
+    public void close() {
+        DepthEstimator d;
+        synchronized (publishLock) {
+            closed = true;
+            d = active.getAndSet(null);
+        }
+        loader.shutdown();
+        if (d != null) d.close();
+        synchronized (warm) {
+            for (DepthEstimator est : warm.values()) est.close();
+            warm.clear();
+        }
+    }
+
+    private DepthEstimator build(EnvMode mode) throws Exception {
+        DepthEstimator est = new DepthEstimator(appCtx, mode);
+        est.setRowBands(rowBands);
+        try {
+            est.warmUp();
+            return est;
+        } catch (Exception e) {
+            est.close();
+            throw e;
+        }
+    }
+
+    @Nullable
+    private DepthEstimator takeWarm(EnvMode mode) {
+        synchronized (warm) {
+            return warm.remove(mode);
+        }
+    }
+
+    private void keepWarmOrClose(EnvMode mode, DepthEstimator est) {
+        if (!memoryAllowsPreload()) {
+            est.close();
+            return;
+        }
+        DepthEstimator replaced;
+        synchronized (warm) {
+            // close() empties warm after setting closed: checked under the same lock, none is left behind
+            replaced = closed ? est : warm.put(mode, est);
+        }
+        if (replaced != null) replaced.close();
+    }
+
+    private boolean memoryAllowsPreload() {
+        ActivityManager am = (ActivityManager) appCtx.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null || am.isLowRamDevice()) return false;
+        ActivityManager.MemoryInfo mi = new ActivityManager.MemoryInfo();
+        am.getMemoryInfo(mi);
+        return !mi.lowMemory && mi.availMem >= PRELOAD_MIN_AVAIL_BYTES;
+    }
+}
@@ -0,0 +1,107 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Detector model tiers shipped (or not) in assets. Each tier is a YOLOv8 export with its own
+ * preferred input size; fixed-shape exports for other sizes are named {@code <base>_<size>.onnx}.
+ * Exports taking uint8 NHWC input add {@code _u8} to the base name (see tools/export_detector.py),
+ * exports with NMS in the graph then add {@code _nms} (tools/append_nms.py).
+ */
+public final class DetectorModelRegistry {
+
+    private DetectorModelRegistry() {}
+
+    public enum Tier {
+        NANO("yolov8n_compatible", 320, 80),
+        SMALL("yolov8s_compatible", 416, 80),
+        MEDIUM("yolov8m_compatible", 640, 80);
+
+        public final String assetBase;
+        public final int inputSize;   // largest input size used with this tier
+        public final int classCount;  // COCO classes in labels.txt
+
+        Tier(String assetBase, int inputSize, int classCount) {
+            this.assetBase = assetBase;
+            this.inputSize = inputSize;
+            this.classCount = classCount;
+        }
+
+        public String asset() {
+            return asset(FramePreprocessor.Layout.CHW_FLOAT);
+        }
+
+        public String asset(FramePreprocessor.Layout layout) {
+            return asset(layout, false);
+        }
+
+        public String asset(FramePreprocessor.Layout layout, boolean inGraphNms) {
+            return base(layout, inGraphNms) + ".onnx";
+        }
+
+        public String sizedAsset(int size) {
+            return sizedAsset(FramePreprocessor.Layout.CHW_FLOAT, false, size);
+        }
+
+        public String sizedAsset(FramePreprocessor.Layout layout, boolean inGraphNms, int size) {
+            return String.format(Locale.US, "%s_%d.onnx", base(layout, inGraphNms), size);
+        }
+
+        private String base(FramePreprocessor.Layout layout, boolean inGraphNms) {
+            String base = layout == FramePreprocessor.Layout.HWC_UINT8 ? assetBase + "_u8" : assetBase;
+            return inGraphNms ? base + "_nms" : base;
+        }
+    }
+
+    // Devices below these RAM sizes get the lighter tiers
+    private static final long NANO_BELOW_BYTES = 4L << 30;
+    private static final long SMALL_BELOW_BYTES = 6L << 30;
+
+    /** Tiers whose base model is present in assets, lightest first. */
+    public static List<Tier> available(@NonNull Context ctx) {
+        List<Tier> tiers = new ArrayList<>();
+        for (Tier t : Tier.values()) {
+            if (ObjectDetector.Util.assetExists(ctx, t.asset())) tiers.add(t);
+        }
+        return tiers;
+    }
+
+    /** The tier the app has always used, or the heaviest one available. */
+    public static Tier defaultTier(@NonNull Context ctx) {
+        List<Tier> tiers = available(ctx);
+        if (tiers.isEmpty() || tiers.contains(Tier.MEDIUM)) return Tier.MEDIUM;
+        return tiers.get(tiers.size() - 1);
+    }
+
+    /** Pick a tier from device RAM; falls back to the closest available tier. */
+    public static Tier recommendedTier(@NonNull Context ctx) {
+        Tier wanted = Tier.MEDIUM;
+        ActivityManager am = (ActivityManager) ctx.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am != null) {
+            ActivityManager.MemoryInfo mi = new ActivityManager.MemoryInfo();
+            am.getMemoryInfo(mi);
+            if (am.isLowRamDevice() || mi.totalMem < NANO_BELOW_BYTES) wanted = Tier.NANO;
+            else if (mi.totalMem < SMALL_BELOW_BYTES) wanted = Tier.SMALL;
+        }
+        return closestAvailable(ctx, wanted);
+    }
+
+    static Tier closestAvailable(@NonNull Context ctx, Tier wanted) {
+        List<Tier> tiers = available(ctx);
+        if (tiers.isEmpty() || tiers.contains(wanted)) return wanted;
+        Tier best = tiers.get(0);
+        for (Tier t : tiers) {
+            if (Math.abs(t.ordinal() - wanted.ordinal()) < Math.abs(best.ordinal() - wanted.ordinal())) {
+                best = t;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,236 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtProvider;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * Execution-provider selection for ORT sessions. Providers are tried in preference order; each
+ * one is first probed with CPU fallback disabled to learn whether it covers the whole graph.
+ * Any provider that cannot be set up falls through to the plain CPU EP.
+ */
+public final class ExecutionProviders {
+    private static final String TAG = "ExecutionProviders";
+
+    // ORT session config key: fail session creation if any node would be placed on the CPU EP
+    static final String DISABLE_CPU_FALLBACK = "session.disable_cpu_ep_fallback";
+    // How ORT words that failure (onnxruntime/core/session/inference_session.cc), lower case
+    static final String CPU_FALLBACK_REFUSED = "fallback to cpu ep has been explicitly disabled";
+    // ORT-format models only: reference the caller's buffer rather than copying it
+    private static final String USE_MODEL_BYTES_DIRECTLY = "session.use_ort_model_bytes_directly";
+    private static final String USE_MODEL_BYTES_FOR_INITIALIZERS = "session.use_ort_model_bytes_for_initializers";
+
+    private ExecutionProviders() {}
+
+    public enum Provider {
+        // A partially covered NNAPI graph bounces tensors between NNAPI and CPU: only worth it in full
+        NNAPI(OrtProvider.NNAPI, true),
+        // Ops XNNPACK lacks run on the CPU EP in the same memory, so partial coverage is fine
+        XNNPACK(OrtProvider.XNNPACK, false),
+        CPU(OrtProvider.CPU, false);
+
+        final OrtProvider ortProvider;
+        final boolean requiresFullCoverage;
+
+        Provider(OrtProvider ortProvider, boolean requiresFullCoverage) {
+            this.ortProvider = ortProvider;
+            this.requiresFullCoverage = requiresFullCoverage;
+        }
+    }
+
+    public enum Coverage { FULL, PARTIAL }
+
+    /** Default order: XNNPACK when the runtime has it, else CPU. NNAPI is opt-in per model. */
+    public static final List<Provider> DEFAULT_PREFERENCE =
+            Collections.unmodifiableList(Arrays.asList(Provider.XNNPACK, Provider.CPU));
+
+    /** Opens a session on one provider; strict = fail instead of placing nodes on the CPU EP. */
+    public interface Opener<S> {
+        S open(Provider provider, boolean strict) throws OrtException;
+    }
+
+    public static final class Selection<S> {
+        public final S session;
+        public final Provider provider;
+        public final Coverage coverage;
+        // Keeps the mapped model alive for as long as the session: ORT-format sessions read it in place
+        ModelSource source;
+        // XNNPACK threads of the session, null on other providers; see closeSession
+        @Nullable OrtThreading.XnnpackLease threads;
+
+        Selection(S session, Provider provider, Coverage coverage) {
+            this.session = session;
+            this.provider = provider;
+            this.coverage = coverage;
+        }
+
+        /** Short form for metrics, e.g. "XNNPACK(partial)". */
+        public String describe() {
+            return coverage == Coverage.FULL ? provider.name()
+                    : provider.name() + "(" + coverage.name().toLowerCase(Locale.US) + ")";
+        }
+    }
+
+    // "<model>|<provider>" -> probe result, so re-opening a model (other input size, reload) skips the probe.
+    // Only a strict open refused for missing kernels counts as PARTIAL; other failures are not kept.
+    private static final Map<String, Coverage> knownCoverage = new ConcurrentHashMap<>();
+
+    /** Providers compiled into the ORT runtime that is actually loaded. */
+    public static Set<Provider> available() {
+        Set<Provider> out = EnumSet.of(Provider.CPU);
+        try {
+            EnumSet<OrtProvider> ort = OrtEnvironment.getAvailableProviders();
+            for (Provider p : Provider.values()) {
+                if (ort.contains(p.ortProvider)) out.add(p);
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Could not query ORT providers, using CPU only", t);
+        }
+        return out;
+    }
+
+    /** Open {@code model} on the first usable provider of {@code preference}. */
+    public static Selection<OrtSession> openSession(@NonNull OrtEnvironment env, @NonNull ModelSource model,
+                                                    @NonNull OrtThreading.Role role,
+                                                    @NonNull List<Provider> preference) throws OrtException {
+        long start = System.nanoTime();
+        long nativeBefore = OrtMemory.nativeHeapBytes();
+        ModelSource src = OptimizedModelCache.resolve(env, model, role);
+        // Lease of the last session opened: select() returns that one, failed opens hand theirs back
+        OrtThreading.XnnpackLease[] lease = new OrtThreading.XnnpackLease[1];
+        Selection<OrtSession> s = select(model.name, preference, available(), (provider, strict) -> {
+            OrtThreading.XnnpackLease threads = provider == Provider.XNNPACK ? OrtThreading.leaseXnnpack(role) : null;
+            try (OrtSession.SessionOptions opts = options(provider, strict, role, src.isOrtFormat(), threads)) {
+                OrtSession session = env.createSession(src.bytes(), opts);
+                lease[0] = threads;
+                return session;
+            } catch (OrtException | RuntimeException e) {
+                if (threads != null) threads.close();
+                throw e;
+            }
+        });
+        s.source = src;
+        s.threads = lease[0];
+        Log.i(TAG, String.format(Locale.US, "%s: session ready in %.0f ms (%s, %.1f MB, %s, %s, native +%.1f MB)",
+                model.name, (System.nanoTime() - start) / 1e6, src.origin, src.size() / 1e6, s.describe(),
+                OrtMemory.config(role), (OrtMemory.nativeHeapBytes() - nativeBefore) / 1e6));
+        return s;
+    }
+
+    static OrtSession.SessionOptions options(Provider provider, boolean strict, OrtThreading.Role role,
+                                             boolean ortFormat, @Nullable OrtThreading.XnnpackLease threads)
+            throws OrtException {
+        OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
+        try {
+            OrtThreading.apply(role, opts, provider == Provider.XNNPACK);
+            OrtMemory.apply(role, opts);
+            if (ortFormat) {
+                // Run from the mapped bytes instead of copying graph and initializers to the heap
+                opts.addConfigEntry(USE_MODEL_BYTES_DIRECTLY, "1");
+                opts.addConfigEntry(USE_MODEL_BYTES_FOR_INITIALIZERS, "1");
+            }
+            switch (provider) {
+                case NNAPI:
+                    opts.addNnapi();
+                    break;
+                case XNNPACK:
+                    opts.addXnnpack(threads != null ? threads.providerOptions()
+                            : Collections.singletonMap("intra_op_num_threads", "1"));
+                    break;
+                default:
+                    break;
+            }
+            if (strict) opts.addConfigEntry(DISABLE_CPU_FALLBACK, "1");
+            return opts;
+        } catch (OrtException | RuntimeException e) {
+            opts.close();
+            throw e;
+        }
+    }
+
+    /** Close a session from {@link #openSession} and hand its XNNPACK threads back. */
+    public static void closeSession(@NonNull Selection<OrtSession> s) throws OrtException {
+        try {
+            s.session.close();
+        } finally {
+            if (s.threads != null) s.threads.close();
+        }
+    }
+
+    static <S> Selection<S> select(String modelName, List<Provider> preference, Set<Provider> available,
+                                   Opener<S> opener) throws OrtException {
+        for (Provider p : preference) {
+            if (p == Provider.CPU) break;
+            if (!available.contains(p)) {
+                Log.i(TAG, modelName + ": " + p + " not in this ORT build, skipping");
+                continue;
+            }
+            Selection<S> s = tryProvider(modelName, p, opener);
+            if (s != null) {
+                Log.i(TAG, modelName + ": using " + s.describe());
+                return s;
+            }
+        }
+        Log.i(TAG, modelName + ": using CPU");
+        return new Selection<>(opener.open(Provider.CPU, false), Provider.CPU, Coverage.FULL);
+    }
+
+    private static <S> Selection<S> tryProvider(String modelName, Provider p, Opener<S> opener) {
+        String key = modelName + "|" + p;
+        Coverage known = knownCoverage.get(key);
+        if (known == Coverage.PARTIAL && p.requiresFullCoverage) return null;
+
+        if (known == null) {
+            try {
+                S session = opener.open(p, true);
+                knownCoverage.put(key, Coverage.FULL);
+                return new Selection<>(session, p, Coverage.FULL);
+            } catch (OrtException | RuntimeException e) {
+                if (!isCoverageFailure(e)) {
+                    // Out of memory, a bad file, a provider that would not start: probe again next time
+                    Log.w(TAG, modelName + ": " + p + " probe failed, falling back", e);
+                    return null;
+                }
+                knownCoverage.put(key, Coverage.PARTIAL);
+                if (p.requiresFullCoverage) {
+                    Log.i(TAG, modelName + ": " + p + " does not cover every op, skipping");
+                    return null;
+                }
+            }
+        }
+        try {
+            boolean full = known == Coverage.FULL;
+            S session = opener.open(p, full);
+            return new Selection<>(session, p, full ? Coverage.FULL : Coverage.PARTIAL);
+        } catch (OrtException | RuntimeException e) {
+            Log.w(TAG, modelName + ": " + p + " setup failed, falling back", e);
+            return null;
+        }
+    }
+
+    // The strict open failed because some node would have landed on the CPU EP
+    static boolean isCoverageFailure(Throwable e) {
+        String message = e.getMessage();
+        return message != null && message.toLowerCase(Locale.US).contains(CPU_FALLBACK_REFUSED);
+    }
+
+    /** Forget probe results (tests, or after the runtime changed). */
+    static void clearCoverageCache() {
+        knownCoverage.clear();
+    }
+}
@@ -0,0 +1,234 @@
+package vn.edu.usth.objectdetectmobile;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Pool of per-frame primitive buffers keyed by exact length. Each stage of the analysis pipeline
+ * acquires its output here and the frame releases everything once it is done, so after the first
+ * few frames at a given resolution realtime analysis allocates (almost) nothing on the Java heap.
+ * <p>
+ * Acquire and release are thread-safe: buffers are taken on the analyzer thread, used on the
+ * inference executor and given back on the analyzer thread again. A released buffer must not be
+ * touched afterwards; its contents are undefined when it is handed out again.
+ */
+public final class FrameArena {
+
+    // ----- Tuning -----
+    // Spare buffers kept per (type, length); a frame holds at most three buffers of one size
+    private static final int MAX_PER_SIZE = 4;
+    // Spare bytes kept overall; least recently used sizes go first when a new size needs room
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 48L << 20;
+
+    private static final int INTS = 0, FLOATS = 1, BYTES = 2, DIRECT_FLOATS = 3, DIRECT_BYTES = 4,
+            SHORTS = 5, DIRECT_SHORTS = 6;
+    private static final int[] ELEMENT_BYTES = {4, 4, 1, 4, 1, 2, 2};
+
+    private static final FrameArena UNPOOLED = new FrameArena(0L);
+
+    private static final class Bucket {
+        final int type;
+        final int length;
+        final long bytes;
+        final ArrayDeque<Object> free = new ArrayDeque<>(MAX_PER_SIZE);
+        long lastUsed;
+
+        Bucket(int type, int length) {
+            this.type = type;
+            this.length = length;
+            this.bytes = (long) length * ELEMENT_BYTES[type];
+        }
+    }
+
+    private final long maxRetainedBytes;
+    // Guarded by this; few distinct sizes, so a list beats a map (no boxed keys per lookup)
+    private final List<Bucket> buckets = new ArrayList<>();
+    private long retainedBytes = 0L;
+    private long clock = 0L;
+    private long reused = 0L, allocated = 0L;
+
+    public FrameArena() {
+        this(DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    public FrameArena(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /** An arena that keeps nothing: acquire allocates, release drops. For one-off callers. */
+    public static FrameArena unpooled() {
+        return UNPOOLED;
+    }
+
+    public int[] ints(int length) {
+        Object o = take(INTS, length);
+        return o != null ? (int[]) o : new int[length];
+    }
+
+    public float[] floats(int length) {
+        Object o = take(FLOATS, length);
+        return o != null ? (float[]) o : new float[length];
+    }
+
+    public byte[] bytes(int length) {
+        Object o = take(BYTES, length);
+        return o != null ? (byte[]) o : new byte[length];
+    }
+
+    public short[] shorts(int length) {
+        Object o = take(SHORTS, length);
+        return o != null ? (short[]) o : new short[length];
+    }
+
+    /**
+     * Native-order direct buffer with position 0 and limit {@code length}. ORT wraps direct
+     * buffers as tensors without copying them.
+     */
+    public FloatBuffer directFloats(int length) {
+        Object o = take(DIRECT_FLOATS, length);
+        if (o != null) return (FloatBuffer) o;
+        return ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /** Native-order direct byte buffer with position 0 and limit {@code length}, as for {@link #directFloats}. */
+    public ByteBuffer directBytes(int length) {
+        Object o = take(DIRECT_BYTES, length);
+        if (o != null) return (ByteBuffer) o;
+        return ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+    }
+
+    /** Native-order direct buffer of {@code length} shorts (fp16 bits), as for {@link #directFloats}. */
+    public ShortBuffer directShorts(int length) {
+        Object o = take(DIRECT_SHORTS, length);
+        if (o != null) return (ShortBuffer) o;
+        return ByteBuffer.allocateDirect(length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+    }
+
+    public void release(@Nullable int[] a) {
+        if (a != null) put(INTS, a.length, a);
+    }
+
+    public void release(@Nullable float[] a) {
+        if (a != null) put(FLOATS, a.length, a);
+    }
+
+    public void release(@Nullable byte[] a) {
+        if (a != null) put(BYTES, a.length, a);
+    }
+
+    public void release(@Nullable short[] a) {
+        if (a != null) put(SHORTS, a.length, a);
+    }
+
+    public void release(@Nullable FloatBuffer b) {
+        if (b == null || !b.isDirect()) return;
+        b.clear();
+        put(DIRECT_FLOATS, b.capacity(), b);
+    }
+
+    public void release(@Nullable ByteBuffer b) {
+        if (b == null || !b.isDirect()) return;
+        b.clear();
+        put(DIRECT_BYTES, b.capacity(), b);
+    }
+
+    public void release(@Nullable ShortBuffer b) {
+        if (b == null || !b.isDirect()) return;
+        b.clear();
+        put(DIRECT_SHORTS, b.capacity(), b);
+    }
+
+    /** Bytes held by spare (released) buffers. */
+    public synchronized long retainedBytes() {
+        return retainedBytes;
+    }
+
+    /** Drop every spare buffer; returns the bytes let go. Buffers in use are not affected. */
+    public synchronized long clear() {
+        long freed = retainedBytes;
+        buckets.clear();
+        retainedBytes = 0L;
+        return freed;
+    }
+
+    /** Acquires served from the pool so far. */
+    public synchronized long reusedCount() {
+        return reused;
+    }
+
+    /** Acquires that had to allocate so far. */
+    public synchronized long allocatedCount() {
+        return allocated;
+    }
+
+    /** For logs, e.g. "arena 21.4 MB, 98% reused". */
+    public synchronized String describe() {
+        long total = reused + allocated;
+        return String.format(Locale.US, "arena %.1f MB, %.0f%% reused",
+                retainedBytes / 1e6, total == 0 ? 0.0 : 100.0 * reused / total);
+    }
+
+    @Nullable
+    private synchronized Object take(int type, int length) {
+        if (maxRetainedBytes <= 0) return null;
+        Bucket b = find(type, length);
+        Object o = b != null ? b.free.pollLast() : null;
+        if (o == null) {
+            allocated++;
+            return null;
+        }
+        b.lastUsed = ++clock;
+        retainedBytes -= b.bytes;
+        reused++;
+        return o;
+    }
+
+    private synchronized void put(int type, int length, @NonNull Object buffer) {
+        if (maxRetainedBytes <= 0) return;
+        Bucket b = find(type, length);
+        if (b == null) {
+            b = new Bucket(type, length);
+            buckets.add(b);
+        }
+        if (b.free.contains(buffer)) throw new IllegalStateException("Buffer released twice");
+        if (b.free.size() >= MAX_PER_SIZE) return;
+        b.lastUsed = ++clock;
+        if (!makeRoom(b.bytes, b)) return;
+        b.free.addLast(buffer);
+        retainedBytes += b.bytes;
+    }
+
+    // Evict spares of the least recently used other sizes until `bytes` fit
+    private boolean makeRoom(long bytes, Bucket keep) {
+        if (bytes > maxRetainedBytes) return false;
+        while (retainedBytes + bytes > maxRetainedBytes) {
+            Bucket victim = null;
+            for (int i = 0; i < buckets.size(); i++) {
+                Bucket c = buckets.get(i);
+                if (c != keep && !c.free.isEmpty() && (victim == null || c.lastUsed < victim.lastUsed)) victim = c;
+            }
+            if (victim == null) return false;
+            retainedBytes -= victim.bytes * victim.free.size();
+            buckets.remove(victim);
+        }
+        return true;
+    }
+
+    @Nullable
+    private Bucket find(int type, int length) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket b = buckets.get(i);
+            if (b.type == type && b.length == length) return b;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,318 @@
+package vn.edu.usth.objectdetectmobile;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Builds every model input of a frame in one pass over its rows. Each {@link Target} describes
+ * one tensor: its size, where the nearest-neighbour scaled frame sits in it (the rest is zero),
+ * the per-channel normalization and an optional box blur of the source. Each source row is read
+ * once, while it is in cache, and written to all the tensor rows that sample it, so the detector
+ * and depth inputs cost about one resample instead of two. Normalization goes through 256-entry
+ * lookup tables, with the same float arithmetic as the per-model loops it replaces. Models whose
+ * graph normalizes by itself take packed RGB bytes instead ({@link Layout#HWC_UINT8}): a quarter
+ * of the memory, and no per-pixel float work here at all. fp16 exports get planar halves
+ * ({@link Layout#CHW_HALF}) from tables rounded once, at the cost of the float path.
+ */
+public final class FramePreprocessor {
+
+    private FramePreprocessor() {}
+
+    /** Memory layout and element type of an input tensor. */
+    public enum Layout {
+        /** [1,3,H,W] floats, normalized here. */
+        CHW_FLOAT,
+        /** [1,3,H,W] IEEE half floats (raw bits), normalized here: fp16 exports without an input Cast. */
+        CHW_HALF,
+        /** [1,H,W,3] RGB bytes as captured; the graph casts, normalizes and transposes. */
+        HWC_UINT8
+    }
+
+    /** Per-channel (value / 255 - mean) / std, tabulated. */
+    public static final class Normalization {
+        /** Plain [0,1] scaling (YOLO). */
+        public static final Normalization UNIT = new Normalization(new float[]{0f, 0f, 0f}, new float[]{1f, 1f, 1f});
+        /** ImageNet mean/std (Depth Anything). */
+        public static final Normalization IMAGENET = new Normalization(
+                new float[]{0.485f, 0.456f, 0.406f}, new float[]{0.229f, 0.224f, 0.225f});
+
+        // [channel][value], channels in R, G, B order
+        final float[][] lut = new float[3][256];
+        // The same values as fp16 bits
+        final short[][] halfLut = new short[3][256];
+
+        public Normalization(float[] mean, float[] std) {
+            for (int c = 0; c < 3; c++) {
+                for (int v = 0; v < 256; v++) {
+                    lut[c][v] = (v / 255f - mean[c]) / std[c];
+                    halfLut[c][v] = HalfFloat.toHalf(lut[c][v]);
+                }
+            }
+        }
+    }
+
+    /** Geometry and normalization of one model input. */
+    public static final class Target {
+        public final int modelW, modelH;     // tensor H/W
+        public final int contentW, contentH; // scaled frame inside the tensor
+        public final int padX, padY;         // offset of the content; the border is zero
+        // Destination pixel d samples source pixel min((int)(d / scale), size - 1)
+        public final float scaleX, scaleY;
+        public final Normalization norm;     // unused for HWC_UINT8
+        public final int blurRadius;         // box blur of the source first; 0 = none
+        public final Layout layout;
+
+        public Target(int modelW, int modelH, int contentW, int contentH, int padX, int padY,
+                      float scaleX, float scaleY, @NonNull Normalization norm, int blurRadius) {
+            this(modelW, modelH, contentW, contentH, padX, padY, scaleX, scaleY, norm, blurRadius,
+                    Layout.CHW_FLOAT);
+        }
+
+        public Target(int modelW, int modelH, int contentW, int contentH, int padX, int padY,
+                      float scaleX, float scaleY, @NonNull Normalization norm, int blurRadius,
+                      @NonNull Layout layout) {
+            this.modelW = modelW;
+            this.modelH = modelH;
+            this.contentW = contentW;
+            this.contentH = contentH;
+            this.padX = padX;
+            this.padY = padY;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.norm = norm;
+            this.blurRadius = blurRadius;
+            this.layout = layout;
+        }
+
+        /** Bytes of the filled tensor. */
+        public int tensorBytes() {
+            int elements = 3 * modelW * modelH;
+            switch (layout) {
+                case HWC_UINT8: return elements;
+                case CHW_HALF: return 2 * elements;
+                default: return 4 * elements;
+            }
+        }
+
+        int sourceRow(int y, int srcH) {
+            return Math.min((int) (y / scaleY), srcH - 1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Target)) return false;
+            Target t = (Target) o;
+            return modelW == t.modelW && modelH == t.modelH && contentW == t.contentW && contentH == t.contentH
+                    && padX == t.padX && padY == t.padY && scaleX == t.scaleX && scaleY == t.scaleY
+                    && norm == t.norm && blurRadius == t.blurRadius && layout == t.layout;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = modelW;
+            h = 31 * h + modelH;
+            h = 31 * h + contentW;
+            h = 31 * h + contentH;
+            h = 31 * h + Float.floatToIntBits(scaleX);
+            h = 31 * h + Float.floatToIntBits(scaleY);
+            h = 31 * h + blurRadius;
+            return 31 * h + layout.hashCode();
+        }
+    }
+
+    /**
+     * A filled input in a direct buffer from the frame arena: planar RGB floats ({@code chw}),
+     * planar halves ({@code chwHalf}) or packed RGB bytes ({@code hwc}), as the target's layout says.
+     */
+    public static final class Input {
+        public final Target target;
+        @Nullable public final FloatBuffer chw;
+        @Nullable public final ShortBuffer chwHalf;
+        @Nullable public final ByteBuffer hwc;
+
+        Input(Target target, @Nullable FloatBuffer chw, @Nullable ByteBuffer hwc) {
+            this(target, chw, null, hwc);
+        }
+
+        Input(Target target, @Nullable FloatBuffer chw, @Nullable ShortBuffer chwHalf, @Nullable ByteBuffer hwc) {
+            this.target = target;
+            this.chw = chw;
+            this.chwHalf = chwHalf;
+            this.hwc = hwc;
+        }
+
+        public void release(FrameArena arena) {
+            arena.release(chw);
+            arena.release(chwHalf);
+            arena.release(hwc);
+        }
+    }
+
+    /**
+     * The ARGB pixels of a frame, produced on first use: a frame whose inputs were all built
+     * elsewhere (see {@link YuvGraph}) is never converted at all.
+     */
+    public interface Frame {
+        int[] argb();
+    }
+
+    public static Input run(int[] argb, int srcW, int srcH, @NonNull Target target,
+                            FrameArena arena, RowBands bands) {
+        return run(argb, srcW, srcH, new Target[]{target}, arena, bands)[0];
+    }
+
+    /**
+     * Fill one input per target in a single pass over {@code argb}. Null targets are skipped
+     * (their input is null). The caller releases the inputs to {@code arena}.
+     */
+    public static Input[] run(int[] argb, int srcW, int srcH, @NonNull Target[] targets,
+                              FrameArena arena, RowBands bands) {
+        int n = targets.length;
+        float[][] planes = new float[n][];
+        short[][] halves = new short[n][];
+        byte[][] packed = new byte[n][];
+        int[][] columns = new int[n][];
+        int maxBlur = 0;
+        long work = srcW;
+        for (int i = 0; i < n; i++) {
+            Target t = targets[i];
+            if (t == null) continue;
+            boolean padded = t.contentW < t.modelW || t.contentH < t.modelH;
+            if (t.layout == Layout.HWC_UINT8) {
+                packed[i] = arena.bytes(3 * t.modelW * t.modelH);
+                if (padded) Arrays.fill(packed[i], (byte) 0);
+            } else if (t.layout == Layout.CHW_HALF) {
+                halves[i] = arena.shorts(3 * t.modelW * t.modelH);
+                if (padded) Arrays.fill(halves[i], (short) 0);
+            } else {
+                planes[i] = arena.floats(3 * t.modelW * t.modelH);
+                if (padded) Arrays.fill(planes[i], 0f);
+            }
+            columns[i] = columnTable(t, srcW, arena);
+            maxBlur = Math.max(maxBlur, t.blurRadius);
+            work += (long) t.contentW * t.contentH / srcH;
+        }
+        boolean blur = maxBlur > 0;
+        bands.forRows(srcH, (int) Math.min(Integer.MAX_VALUE, work), (from, to) -> {
+            int[] blurred = blur ? arena.ints(srcW) : null;
+            // Per target: next tensor row, the first one sampling a source row >= the current one
+            int[] next = new int[n];
+            for (int i = 0; i < n; i++) if (targets[i] != null) next[i] = firstRowAtOrAfter(targets[i], from, srcH);
+            for (int s = from; s < to; s++) {
+                int blurredRadius = 0;
+                for (int i = 0; i < n; i++) {
+                    Target t = targets[i];
+                    if (t == null) continue;
+                    int y = next[i];
+                    if (y >= t.contentH || t.sourceRow(y, srcH) != s) continue;
+                    int[] row = argb;
+                    int rowOffset = s * srcW;
+                    if (t.blurRadius > 0) {
+                        if (blurredRadius != t.blurRadius) {
+                            ImageUtils.blurRow(argb, srcW, srcH, s, t.blurRadius, blurred, 0);
+                            blurredRadius = t.blurRadius;
+                        }
+                        row = blurred;
+                        rowOffset = 0;
+                    }
+                    for (; y < t.contentH && t.sourceRow(y, srcH) == s; y++) {
+                        if (packed[i] != null) writePackedRow(t, packed[i], columns[i], row, rowOffset, y);
+                        else if (halves[i] != null) writeHalfRow(t, halves[i], columns[i], row, rowOffset, y);
+                        else writeRow(t, planes[i], columns[i], row, rowOffset, y);
+                    }
+                    next[i] = y;
+                }
+            }
+            arena.release(blurred);
+        });
+
+        Input[] inputs = new Input[n];
+        for (int i = 0; i < n; i++) {
+            if (targets[i] == null) continue;
+            arena.release(columns[i]);
+            if (packed[i] != null) {
+                ByteBuffer buf = arena.directBytes(packed[i].length);
+                buf.put(packed[i]).rewind();
+                arena.release(packed[i]);
+                inputs[i] = new Input(targets[i], null, buf);
+            } else if (halves[i] != null) {
+                ShortBuffer buf = arena.directShorts(halves[i].length);
+                buf.put(halves[i]).rewind();
+                arena.release(halves[i]);
+                inputs[i] = new Input(targets[i], null, buf, null);
+            } else {
+                FloatBuffer buf = arena.directFloats(planes[i].length);
+                buf.put(planes[i]).rewind();
+                arena.release(planes[i]);
+                inputs[i] = new Input(targets[i], buf, null);
+            }
+        }
+        return inputs;
+    }
+
+    // Source column of each content column
+    private static int[] columnTable(Target t, int srcW, FrameArena arena) {
+        int[] cols = arena.ints(t.contentW);
+        for (int x = 0; x < t.contentW; x++) cols[x] = Math.min((int) (x / t.scaleX), srcW - 1);
+        return cols;
+    }
+
+    // First content row whose source row is >= s (contentH if none); source rows never decrease
+    private static int firstRowAtOrAfter(Target t, int s, int srcH) {
+        int lo = 0, hi = t.contentH;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (t.sourceRow(mid, srcH) < s) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static void writeRow(Target t, float[] out, int[] cols, int[] row, int rowOffset, int y) {
+        int plane = t.modelW * t.modelH;
+        int base = (y + t.padY) * t.modelW + t.padX;
+        float[] lr = t.norm.lut[0], lg = t.norm.lut[1], lb = t.norm.lut[2];
+        for (int x = 0; x < t.contentW; x++) {
+            int p = row[rowOffset + cols[x]];
+            int idx = base + x;
+            out[idx] = lr[(p >> 16) & 0xFF];
+            out[plane + idx] = lg[(p >> 8) & 0xFF];
+            out[2 * plane + idx] = lb[p & 0xFF];
+        }
+    }
+
+    private static void writeHalfRow(Target t, short[] out, int[] cols, int[] row, int rowOffset, int y) {
+        int plane = t.modelW * t.modelH;
+        int base = (y + t.padY) * t.modelW + t.padX;
+        short[] lr = t.norm.halfLut[0], lg = t.norm.halfLut[1], lb = t.norm.halfLut[2];
+        for (int x = 0; x < t.contentW; x++) {
+            int p = row[rowOffset + cols[x]];
+            int idx = base + x;
+            out[idx] = lr[(p >> 16) & 0xFF];
+            out[plane + idx] = lg[(p >> 8) & 0xFF];
+            out[2 * plane + idx] = lb[p & 0xFF];
+        }
+    }
+
+    private static void writePackedRow(Target t, byte[] out, int[] cols, int[] row, int rowOffset, int y) {
+        int o = 3 * ((y + t.padY) * t.modelW + t.padX);
+        for (int x = 0; x < t.contentW; x++) {
+            int p = row[rowOffset + cols[x]];
+            out[o++] = (byte) (p >> 16);
+            out[o++] = (byte) (p >> 8);
+            out[o++] = (byte) p;
+        }
+    }
+
+    /** Release every non-null input to {@code arena}. */
+    public static void releaseAll(@Nullable Input[] inputs, FrameArena arena) {
+        if (inputs == null) return;
+        for (Input in : inputs) if (in != null) in.release(arena);
+    }
+}
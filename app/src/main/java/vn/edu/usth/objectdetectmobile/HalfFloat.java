@@ -0,0 +1,60 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.nio.ShortBuffer;
+
+/**
+ * IEEE 754 half-precision conversions for fp16 model inputs and outputs, as raw {@code short}
+ * bits. Bit arithmetic only (android.util.Half needs API 26), rounding to nearest even like the
+ * Cast an fp16 export would otherwise run on its fp32 input.
+ */
+public final class HalfFloat {
+
+    private HalfFloat() {}
+
+    private static final int FLOAT_INF = 0x7F800000;
+    private static final int HALF_OVERFLOW = 0x47800000;  // 65536f: rounds to infinity
+    private static final int HALF_MIN_NORMAL = 0x38800000; // 2^-14
+    // 0.5f: adding it puts a subnormal half's bits in the low mantissa, rounded by the FPU
+    private static final float SUBNORMAL_MAGIC = 0.5f;
+    private static final int SUBNORMAL_MAGIC_BITS = 0x3F000000;
+    private static final float EXPONENT_SCALE = 0x1p112f;  // half bias 15 -> float bias 127
+
+    public static short toHalf(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7FFFFFFF;
+        int h;
+        if (abs >= HALF_OVERFLOW) {
+            h = abs > FLOAT_INF ? 0x7E00 : 0x7C00; // NaN stays NaN
+        } else if (abs < HALF_MIN_NORMAL) {
+            h = Float.floatToRawIntBits(Float.intBitsToFloat(abs) + SUBNORMAL_MAGIC) - SUBNORMAL_MAGIC_BITS;
+        } else {
+            int odd = (abs >>> 13) & 1;
+            // Rebias the exponent and round the 13 dropped bits, ties to even; a carry may reach infinity
+            h = (abs + ((15 - 127) << 23) + 0xFFF + odd) >>> 13;
+        }
+        return (short) (sign | h);
+    }
+
+    public static float toFloat(short half) {
+        int h = half & 0xFFFF;
+        int abs = h & 0x7FFF;
+        float f = abs >= 0x7C00
+                ? Float.intBitsToFloat(FLOAT_INF | (abs & 0x3FF) << 13)
+                // Normal and subnormal alike: the bits as a tiny float, scaled back exactly
+                : Float.intBitsToFloat(abs << 13) * EXPONENT_SCALE;
+        return (h & 0x8000) != 0 ? -f : f;
+    }
+
+    /** Convert {@code n} halves from {@code src}'s position on into {@code dst[0..n)}; the position is left alone. */
+    public static void toFloats(ShortBuffer src, float[] dst, int n) {
+        int p = src.position();
+        if (src.hasArray()) {
+            short[] a = src.array();
+            int o = src.arrayOffset() + p;
+            for (int i = 0; i < n; i++) dst[i] = toFloat(a[o + i]);
+        } else {
+            for (int i = 0; i < n; i++) dst[i] = toFloat(src.get(p + i));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Closed-loop controller that holds the capture -> UI latency near a target by walking a ladder
+ * of quality levels (detector input size, depth interval, depth input size, input blur).
+ * Per-stage latencies are smoothed with an EWMA; a level change needs the smoothed total to stay
+ * outside the hysteresis band for several frames and a cooldown since the previous change.
+ * Every decision is logged with the full stage breakdown so a device's steady state can be
+ * reproduced with {@link #pinLevel(int)}.
+ */
+public class LatencyController {
+    private static final String TAG = "LatencyController";
+
+    public enum Stage { CONVERT, PREPROCESS, DETECT, DEPTH }
+
+    /** One rung of the quality ladder. */
+    public static final class Knobs {
+        public final int detectorInputSize;
+        public final long depthIntervalMs;
+        public final int depthInputSize;
+        public final boolean blur;
+
+        Knobs(int detectorInputSize, long depthIntervalMs, int depthInputSize, boolean blur) {
+            this.detectorInputSize = detectorInputSize;
+            this.depthIntervalMs = depthIntervalMs;
+            this.depthInputSize = depthInputSize;
+            this.blur = blur;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "det=%d depthEvery=%dms depth=%d blur=%b",
+                    detectorInputSize, depthIntervalMs, depthInputSize, blur);
+        }
+    }
+
+    // Level 0 = full quality. Depth sizes are multiples of the ViT patch (14).
+    private static final Knobs[] LADDER = {
+            new Knobs(640, 1500, 518, true),
+            new Knobs(640, 2000, 518, false),
+            new Knobs(512, 2500, 448, false),
+            new Knobs(416, 3000, 392, false),
+            new Knobs(320, 4000, 308, false),
+    };
+
+    // ----- Tuning -----
+    public static final long DEFAULT_TARGET_MS = 180;
+    private static final float EWMA_ALPHA = 0.2f;
+    private static final float DEGRADE_RATIO = 1.15f;  // above target * this -> too slow
+    private static final float UPGRADE_RATIO = 0.75f;  // below target * this -> headroom
+    private static final int DEGRADE_FRAMES = 5;
+    private static final int UPGRADE_FRAMES = 30;
+    private static final long DEGRADE_COOLDOWN_MS = 2000;
+    private static final long UPGRADE_COOLDOWN_MS = 5000;
+
+    private final long targetMs;
+    private final float[] stageEwmaMs = new float[Stage.values().length];
+    private float totalEwmaMs = Float.NaN;
+    private int level = 0;
+    private int pinnedLevel = -1;
+    private int overCount = 0, underCount = 0;
+    private long lastChangeMs = 0L;
+    private volatile Knobs current = LADDER[0];
+
+    public LatencyController() {
+        this(DEFAULT_TARGET_MS);
+    }
+
+    public LatencyController(long targetMs) {
+        this.targetMs = targetMs;
+        for (int i = 0; i < stageEwmaMs.length; i++) stageEwmaMs[i] = Float.NaN;
+    }
+
+    /** Knobs the pipeline should use for the next frame. Lock-free. */
+    public Knobs current() {
+        return current;
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    public static int levelCount() {
+        return LADDER.length;
+    }
+
+    /**
+     * Force a level (e.g. one read from a previous run's log) and stop adapting.
+     * Pass -1 to resume closed-loop control.
+     */
+    public synchronized void pinLevel(int pinned) {
+        pinnedLevel = (pinned < 0) ? -1 : Math.min(pinned, LADDER.length - 1);
+        if (pinnedLevel >= 0 && pinnedLevel != level) {
+            changeLevel(pinnedLevel, "pinned", 0L);
+        }
+    }
+
+    /** Record how long one pipeline stage took for the current frame. */
+    public synchronized void recordStage(Stage stage, long durationNs) {
+        int i = stage.ordinal();
+        stageEwmaMs[i] = ewma(stageEwmaMs[i], durationNs / 1e6f);
+    }
+
+    /**
+     * Close the loop for one frame with its end-to-end capture -> UI latency.
+     * Called from the UI thread once the frame's results are shown.
+     */
+    public synchronized void onFrameComplete(long captureToUiNs, long nowMs) {
+        totalEwmaMs = ewma(totalEwmaMs, captureToUiNs / 1e6f);
+        if (pinnedLevel >= 0) return;
+
+        if (totalEwmaMs > targetMs * DEGRADE_RATIO) {
+            overCount++;
+            underCount = 0;
+        } else if (totalEwmaMs < targetMs * UPGRADE_RATIO) {
+            underCount++;
+            overCount = 0;
+        } else {
+            overCount = 0;
+            underCount = 0;
+        }
+
+        if (overCount >= DEGRADE_FRAMES
+                && level < LADDER.length - 1
+                && nowMs - lastChangeMs >= DEGRADE_COOLDOWN_MS) {
+            changeLevel(level + 1, String.format(Locale.US, "capToUi=%.1fms > %.1fms",
+                    totalEwmaMs, targetMs * DEGRADE_RATIO), nowMs);
+        } else if (underCount >= UPGRADE_FRAMES
+                && level > 0
+                && nowMs - lastChangeMs >= UPGRADE_COOLDOWN_MS) {
+            changeLevel(level - 1, String.format(Locale.US, "capToUi=%.1fms < %.1fms",
+                    totalEwmaMs, targetMs * UPGRADE_RATIO), nowMs);
+        }
+    }
+
+    private void changeLevel(int next, String reason, long nowMs) {
+        Log.i(TAG, String.format(Locale.US,
+                "level %d -> %d (%s) target=%dms stages[convert=%.1f preprocess=%.1f detect=%.1f depth=%.1f] knobs{%s}",
+                level, next, reason, targetMs,
+                stageEwmaMs[Stage.CONVERT.ordinal()],
+                stageEwmaMs[Stage.PREPROCESS.ordinal()],
+                stageEwmaMs[Stage.DETECT.ordinal()],
+                stageEwmaMs[Stage.DEPTH.ordinal()],
+                LADDER[next]));
+        level = next;
+        current = LADDER[next];
+        lastChangeMs = nowMs;
+        overCount = 0;
+        underCount = 0;
+    }
+
+    private static float ewma(float prev, float sample) {
+        return Float.isNaN(prev) ? sample : prev + EWMA_ALPHA * (sample - prev);
+    }
+}
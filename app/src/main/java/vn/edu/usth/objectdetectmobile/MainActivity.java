@@ -15,6 +15,7 @@ import android.widget.Toast;
 
 import androidx.activity.ComponentActivity;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.OptIn;
 import androidx.camera.camera2.interop.Camera2CameraInfo;
 import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
@@ -44,6 +45,7 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import ai.onnxruntime.OrtException;
 
@@ -51,13 +53,7 @@ import ai.onnxruntime.OrtException;
 import android.os.Bundle;
 
 import android.content.Intent;
-import android.net.Uri;
 import androidx.appcompat.app.AlertDialog;
-import android.app.DownloadManager;
-import android.os.Environment;
-import android.database.Cursor;
-import android.os.Build;
-import android.content.IntentFilter;
 import android.widget.ImageButton;
 import android.os.SystemClock;
 import android.content.Context;
@@ -75,24 +71,6 @@ public class MainActivity extends ComponentActivity {
         INDOOR,
         OUTDOOR
     }
-    // -----------------------------------------------------------------------------------------
-    //  Model download URLs (GitHub Pages)
-    // -----------------------------------------------------------------------------------------
-    // Base folder chứa 2 model indoor/outdoor
-    private static final String DEPTH_DOWNLOAD_INDOOR_URL =
-            "https://haidreamer.github.io/models_mobile_app_gp_for_visually_impaired/depth_anything_v2_metric_hypersim_vits_fp16.onnx";
-
-    private static final String DEPTH_DOWNLOAD_OUTDOOR_URL =
-            "https://haidreamer.github.io/models_mobile_app_gp_for_visually_impaired/depth_anything_v2_metric_vkitti_vits_fp16.onnx";
-
-    // Lưu thông tin tải depth model
-    private static final String PREF_DEPTH_MODEL_INDOOR_PATH  = "pref_depth_model_indoor_path";
-    private static final String PREF_DEPTH_MODEL_OUTDOOR_PATH = "pref_depth_model_outdoor_path";
-    private static final String PREF_LAST_DEPTH_DOWNLOAD_ID   = "pref_last_depth_download_id";
-    private static final String PREF_LAST_DEPTH_DOWNLOAD_MODE = "pref_last_depth_download_mode";
-    // Depth model prefs live in a separate file
-    private static final String DEPTH_MODEL_PREFS = "depth_models";
-    private SharedPreferences depthModelPrefs;
     private static final String PREF_ENV_MODE = "pref_env_mode";
     private EnvMode envMode = EnvMode.INDOOR;  // default = Indoor
     private SwitchMaterial environmentSwitch;
@@ -102,14 +80,25 @@ public class MainActivity extends ComponentActivity {
     private static final int REQ = 42;
     private static final String TAG = "MainActivity";
 
-    // Depth throttling / cache
-    private static final short DEPTH_INTERVAL_MS = 1500;
+    // Depth cache (the depth interval itself is a LatencyController knob)
     private static final short DEPTH_CACHE_MS = 3000;
 
     // Input blur
     private static final boolean ENABLE_INPUT_BLUR = true;
     private static final int BLUR_RADIUS = 1; // 1 => kernel 3x3
 
+    // Only decode the classes TTSWarning warns about (cars, people, ...)
+    private static final boolean HAZARD_CLASSES_ONLY = true;
+
+    // Detector input: packed uint8 RGB for tiers shipping a _u8 export, floats otherwise
+    private static final FramePreprocessor.Layout DETECTOR_INPUT_LAYOUT = FramePreprocessor.Layout.HWC_UINT8;
+    // Score filtering and NMS inside the detector graph for tiers shipping an _nms export
+    private static final boolean DETECTOR_IN_GRAPH_NMS = true;
+    // Build float inputs from the camera planes in ORT when the preprocessing graphs are shipped
+    private static final boolean YUV_GRAPH_PREPROCESSING = true;
+    // How long teardown waits for a running frame before closing the preprocessing graphs
+    private static final long GRAPH_CLOSE_WAIT_MS = 2000;
+
     // ---------------------------------------------------------------------------------------------
     //  UI views
     // ---------------------------------------------------------------------------------------------
@@ -131,8 +120,16 @@ public class MainActivity extends ComponentActivity {
     // ---------------------------------------------------------------------------------------------
     //  Core components
     // ---------------------------------------------------------------------------------------------
-    private ObjectDetector detector;
-    private volatile DepthEstimator depthEstimator;     //Marking the field volatile guarantees visibility of the latest reference across threads
+    private volatile ObjectDetector detector;           // null until loaded in the background
+    // Preprocessing graphs (null if not shipped or not loaded yet), used by the analyzer only
+    private volatile YuvGraph detectorGraph;
+    private volatile YuvGraph depthGraph;
+    // Guards taking a graph out of the fields above (teardown, or after a failure)
+    private final Object graphLock = new Object();
+    // Active depth estimator per EnvMode, swapped in the background without pausing frames
+    private DepthModelSwitcher depthModels;
+    // Releases depth cache/sessions (and other large buffers) on onTrimMemory
+    private final ResourceManager resources = new ResourceManager();
     private StereoDepthProcessor stereoProcessor;
     private ProcessCameraProvider cameraProvider;
     private Camera currentCamera;
@@ -141,6 +138,12 @@ public class MainActivity extends ComponentActivity {
     private ExecutorService exec;
     // Inference executor (YOLO + depth in parallel)
     private ExecutorService inferenceExec;
+    // Per-frame buffers (ARGB, blur, tensors, depth maps), reused across frames
+    private final FrameArena frameArena = new FrameArena();
+    // Worker threads for the per-row image kernels (conversion, blur, resizing)
+    private final RowBands rowBands = RowBands.shared();
+    // Loads and warms up the models while the camera preview is already running
+    private StartupCoordinator startup;
 
     // ---------------------------------------------------------------------------------------------
     //  Depth & stereo state
@@ -161,6 +164,14 @@ public class MainActivity extends ComponentActivity {
     private volatile boolean blurEnabled = ENABLE_INPUT_BLUR;
     private volatile boolean singleShotRequested = false;
     private volatile boolean singleShotRunning = false;
+    // Drops realtime analysis to a low rate while no hazard is around
+    private final AdaptiveFrameRateController frameRateController =
+            new AdaptiveFrameRateController();
+    // Trades detector/depth resolution, depth cadence and blur for capture->UI latency
+    private final LatencyController latencyController = new LatencyController();
+    // Sheds depth, resolution, then frame rate when the device gets hot
+    private AndroidThermalSource thermalSource;
+    private ThermalGovernor thermalGovernor;
 
     // ---------------------------------------------------------------------------------------------
     //  Calibration & prefs
@@ -193,32 +204,22 @@ public class MainActivity extends ComponentActivity {
 
         tts = TTSWarning.getInstance(this);
 
-        depthModelPrefs = getSharedPreferences(DEPTH_MODEL_PREFS, MODE_PRIVATE);
         // Single-thread CameraX analyzer
         exec = Executors.newSingleThreadExecutor();
         // Two-thread inference pool: YOLO + depth
         inferenceExec = Executors.newFixedThreadPool(2);
+        startup = new StartupCoordinator();
+        depthModels = new DepthModelSwitcher(this, rowBands);
+        registerMemoryConsumers();
+        registerComponentCallbacks(resources);
+
+        thermalSource = new AndroidThermalSource(this);
+        thermalGovernor = new ThermalGovernor(thermalSource);
+        thermalSource.register(this, thermalGovernor);
 
         initViews();
         initPreferencesAndCalibrationKey();
 
-        // Đăng ký broadcast receiver cho download complete
-        IntentFilter filter = new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE);
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                // Android 13+ (API 33+) yêu cầu flag RECEIVER_NOT_EXPORTED
-                registerReceiver(downloadReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
-            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                // Android 8+ (API 26+) cũng hỗ trợ flag
-                registerReceiver(downloadReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
-            } else {
-                // Android 7 trở xuống
-                registerReceiver(downloadReceiver, filter);
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Failed to register receiver", e);
-        }
-
         initControls();
 
         // camera permission
@@ -245,6 +246,9 @@ public class MainActivity extends ComponentActivity {
         super.onDestroy();
         if (exec != null) exec.shutdownNow();
         if (inferenceExec != null) inferenceExec.shutdownNow();
+        if (startup != null) startup.close();
+        unregisterComponentCallbacks(resources);
+        if (thermalSource != null) thermalSource.unregister();
         if (detector != null) {
             try {
                 detector.close();
@@ -252,16 +256,12 @@ public class MainActivity extends ComponentActivity {
                 Log.e(TAG, "Detector close failed", e);
             }
         }
-        if (depthEstimator != null) {
-            try {
-                depthEstimator.close();
-            } catch (Exception e) {
-                Log.e(TAG, "DepthEstimator close failed", e);
-            }
+        if (depthModels != null) depthModels.close();
+        synchronized (graphLock) {
+            closeGraphsWhenIdle(detectorGraph, depthGraph);
+            detectorGraph = null;
+            depthGraph = null;
         }
-        try {
-            unregisterReceiver(downloadReceiver);
-        } catch (Exception ignore) {}
         stereoProcessor = null;
         // Clear depth cache state
         depthState.lastDepthMap = null;
@@ -272,6 +272,66 @@ public class MainActivity extends ComponentActivity {
         }
     }
 
+    // Released in this order under memory pressure; each owner rebuilds lazily on next use
+    private void registerMemoryConsumers() {
+        resources.register("depth cache", ResourceManager.PRIORITY_DEPTH_CACHE,
+                new ResourceManager.Releasable() {
+                    @Override
+                    public long footprintBytes() {
+                        synchronized (depthState) {
+                            DepthEstimator.DepthMap map = depthState.lastDepthMap;
+                            return map != null ? map.depth.length * 4L : 0L;
+                        }
+                    }
+
+                    @Override
+                    public long release() {
+                        synchronized (depthState) {
+                            long bytes = footprintBytes();
+                            depthState.lastDepthMap = null;
+                            depthState.lastDepthCacheTime = 0L;
+                            return bytes;
+                        }
+                    }
+                });
+        resources.register("preloaded depth model", ResourceManager.PRIORITY_PRELOADED_DEPTH,
+                new ResourceManager.Releasable() {
+                    @Override
+                    public long footprintBytes() {
+                        return depthModels.preloadedFootprintBytes();
+                    }
+
+                    @Override
+                    public long release() {
+                        return depthModels.releasePreloaded();
+                    }
+                });
+        resources.register("depth session", ResourceManager.PRIORITY_DEPTH_SESSION,
+                new ResourceManager.Releasable() {
+                    @Override
+                    public long footprintBytes() {
+                        return depthModels.activeFootprintBytes();
+                    }
+
+                    @Override
+                    public long release() {
+                        return depthModels.trimActiveSession();
+                    }
+                });
+        resources.register("frame buffers", ResourceManager.PRIORITY_FRAME_BUFFERS,
+                new ResourceManager.Releasable() {
+                    @Override
+                    public long footprintBytes() {
+                        return frameArena.retainedBytes();
+                    }
+
+                    @Override
+                    public long release() {
+                        return frameArena.clear();
+                    }
+                });
+    }
+
     // ---------------------------------------------------------------------------------------------
     //  UI init & listeners
     // ---------------------------------------------------------------------------------------------
@@ -355,6 +415,7 @@ public class MainActivity extends ComponentActivity {
             }
             if (isChecked) {
                 singleShotRequested = false;
+                frameRateController.reset();
             }
         });
     }
@@ -444,72 +505,41 @@ public class MainActivity extends ComponentActivity {
 
 
     private void reloadPipelinesForEnvChange() {
-        // Pause realtime so we don't process frames while reloading depth
-        realtimeEnabled = false;
-
-        runOnUiThread(() -> {
-            Log.i(TAG, "Reloading depth pipeline for envMode = " + envMode);
-
-            // 1) Check if we have ANY model for this mode (asset or downloaded)
-            boolean depthModelOk = DepthEstimator.isModelAvailable(this, envMode);
-            if (!depthModelOk) {
-                // No model yet -> show download dialog for this mode
-                showMissingDepthModelDialog(envMode);
-
-                // Keep depthEstimator = null, YOLO-only mode
-                depthEstimator = null;
-                synchronized (depthState) {
-                    depthState.lastDepthMap = null;
-                    depthState.lastDepthMillis = 0L;
-                    depthState.lastDepthCacheTime = 0L;
-                }
-
-                // Re-enable realtime (but without depth)
-                realtimeEnabled = true;
-                return;
-            }
-
-            // 2) We DO have a model (asset or downloaded) -> try to create DepthEstimator
-            try {
-                DepthEstimator newDepth = new DepthEstimator(this, envMode);
-                depthEstimator = newDepth;
-
-                synchronized (depthState) {
-                    depthState.lastDepthMap = null;
-                    depthState.lastDepthMillis = 0L;
-                    depthState.lastDepthCacheTime = 0L;
-                }
-
-                Toast.makeText(
-                        this,
-                        "Depth model loaded for " +
-                                (envMode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"),
-                        Toast.LENGTH_SHORT
-                ).show();
+        // Detection keeps running; frames use the old depth model until the new one is ready
+        Log.i(TAG, "Switching depth model to envMode = " + envMode);
+        depthModels.switchTo(envMode, (mode, available, error) ->
+                onDepthModelSwitched(mode, available, error, true));
+    }
 
-            } catch (Throwable e) {
-                Log.w(TAG, "Depth estimator re-init failed", e);
-                depthEstimator = null;
-                synchronized (depthState) {
-                    depthState.lastDepthMap = null;
-                    depthState.lastDepthMillis = 0L;
-                    depthState.lastDepthCacheTime = 0L;
-                }
-                Toast.makeText(
-                        this,
-                        "Failed to init depth for " +
-                                (envMode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"),
-                        Toast.LENGTH_LONG
-                ).show();
+    private void onDepthModelSwitched(EnvMode mode, boolean available, @Nullable Throwable error,
+                                      boolean announce) {
+        // Cached depth came from the previous model
+        synchronized (depthState) {
+            depthState.lastDepthMap = null;
+            depthState.lastDepthMillis = 0L;
+            depthState.lastDepthCacheTime = 0L;
+        }
+        if (mode != envMode) return; // a later switch is already queued
+        String label = mode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor";
+        if (error != null) {
+            Log.w(TAG, "Depth estimator disabled", error);
+            if (announce) {
+                Toast.makeText(this, "Failed to init depth for " + label, Toast.LENGTH_LONG).show();
             }
-
-            // Re-enable realtime (with or without depth depending on success)
-            realtimeEnabled = true;
-        });
+            return;
+        }
+        if (!available) {
+            // No model yet -> show download dialog for this mode, YOLO-only meanwhile
+            showMissingDepthModelDialog(mode);
+            return;
+        }
+        if (announce) {
+            Toast.makeText(this, "Depth model loaded for " + label, Toast.LENGTH_SHORT).show();
+        }
+        // Make the next toggle instant if there is memory for a second model
+        depthModels.preload(mode == EnvMode.OUTDOOR ? EnvMode.INDOOR : EnvMode.OUTDOOR);
     }
 
-
-
     private void initQuickSettingsButton() {
         if (quickSettingsButton == null) {
             applySettingsVisibility(true);
@@ -545,58 +575,99 @@ public class MainActivity extends ComponentActivity {
     //  Pipelines startup (detector + depth + camera)
     // ---------------------------------------------------------------------------------------------
     private void startPipelines() {
+        // Models load off the main thread, so the camera is bound without waiting for them
         initDetectorAndDepth();
         initCameraProvider();
     }
 
     private void initDetectorAndDepth() {
-        try {
-            detector = new ObjectDetector(this);
-        } catch (Throwable e) {
-            Log.e(TAG, "Detector init failed", e);
-            Toast.makeText(this, "Detector load failed: " + e.getMessage(),
-                    Toast.LENGTH_LONG).show();
-            return;
-        }
+        Context app = getApplicationContext();
+        List<Integer> hazardIds = hazardClassIds();
+        startup.load("Detector", () -> {
+            // Lighter tier on low-RAM phones. Phones that can afford the medium model run
+            // nano every frame and medium on demand (built in the background).
+            DetectorModelRegistry.Tier tier = DetectorModelRegistry.recommendedTier(app);
+            boolean cascade = tier == DetectorModelRegistry.Tier.MEDIUM
+                    && DetectorModelRegistry.available(app).contains(DetectorModelRegistry.Tier.NANO);
+            ObjectDetector det = new ObjectDetector(app, cascade ? DetectorModelRegistry.Tier.NANO : tier,
+                    DETECTOR_INPUT_LAYOUT, DETECTOR_IN_GRAPH_NMS);
+            if (HAZARD_CLASSES_ONLY) det.setActiveClasses(hazardIds);
+            det.setRowBands(rowBands);
+            if (cascade) {
+                det.setHazardClasses(hazardIds);
+                det.enableCascade(DetectorModelRegistry.Tier.MEDIUM);
+            }
+            det.warmUp();
+            return det;
+        }, (det, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Detector init failed", error);
+                Toast.makeText(this, "Detector load failed: " + error.getMessage(),
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+            detector = det;
+            startup.markDetectorReady();
+        });
 
-        // --- NEW: kiểm tra depth model có trong assets hay chưa ---
-        boolean depthModelOk = DepthEstimator.isModelAvailable(this, envMode);
-        if (!depthModelOk) {
-            // Không có model -> thông báo & gợi ý mở link download
-            showMissingDepthModelDialog(envMode);
-            // Không tạo depthEstimator, app vẫn chạy YOLO-only
-            depthEstimator = null;
-            depthState.lastDepthMap = null;
-            depthState.lastDepthMillis = 0L;
-            depthState.lastDepthCacheTime = 0L;
-            stereoProcessor = null;
-            updateStereoSwitchAvailability(false);
-            return;
+        if (YUV_GRAPH_PREPROCESSING) {
+            loadGraph(app, YuvGraph.Kind.DETECTOR);
+            loadGraph(app, YuvGraph.Kind.DEPTH);
         }
 
-        try {
-            depthEstimator = new DepthEstimator(this, envMode);
-            depthState.lastDepthMap = null;
-            depthState.lastDepthMillis = 0L;
-            depthState.lastDepthCacheTime = 0L;
-        } catch (Throwable e) {
-            Log.w(TAG, "Depth estimator disabled", e);
-            depthEstimator = null;
-            depthState.lastDepthMap = null;
-            depthState.lastDepthMillis = 0L;
-            depthState.lastDepthCacheTime = 0L;
-        }
+        // Depth loads on its own background thread, in parallel with the detector
+        depthModels.switchTo(envMode, (mode, available, error) ->
+                onDepthModelSwitched(mode, available, error, false));
+
         stereoProcessor = null;
         updateStereoSwitchAvailability(false);
     }
 
+    // Frames keep to the Java path for this kind until (and unless) its graph is loaded
+    private void loadGraph(Context app, YuvGraph.Kind kind) {
+        startup.load("Preprocessing graph " + kind, () ->
+                YuvGraph.isAvailable(app, kind) ? new YuvGraph(app, kind) : null, (graph, error) -> {
+            if (error != null) {
+                Log.w(TAG, "Preprocessing graph " + kind + " unavailable, preprocessing in Java", error);
+                return;
+            }
+            if (kind == YuvGraph.Kind.DETECTOR) detectorGraph = graph;
+            else depthGraph = graph;
+        });
+    }
+
+    // The analyzer may still be inside YuvGraph.run: close once its executor has stopped
+    private void closeGraphsWhenIdle(YuvGraph... graphs) {
+        ExecutorService analyzer = exec;
+        new Thread(() -> {
+            try {
+                if (analyzer != null) analyzer.awaitTermination(GRAPH_CLOSE_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (YuvGraph g : graphs) {
+                if (g == null) continue;
+                try {
+                    g.close();
+                } catch (Exception e) {
+                    Log.e(TAG, "Preprocessing graph close failed", e);
+                }
+            }
+        }, "yuv-graph-close").start();
+    }
+
+    // Label ids of the classes TTSWarning considers dangerous
+    private List<Integer> hazardClassIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < cachedLabels.size(); i++) {
+            if (TTSWarning.isDangerousLabel(cachedLabels.get(i))) ids.add(i);
+        }
+        return ids;
+    }
+
     private void showMissingDepthModelDialog(EnvMode targetMode) {
         String modeLabel = (targetMode == EnvMode.OUTDOOR) ? "Outdoor" : "Indoor";
 
-        String downloadUrl = (targetMode == EnvMode.OUTDOOR)
-                ? DEPTH_DOWNLOAD_OUTDOOR_URL
-                : DEPTH_DOWNLOAD_INDOOR_URL;
-
         new AlertDialog.Builder(this)
                 .setTitle("Depth model missing")
                 .setMessage(
@@ -604,7 +675,7 @@ public class MainActivity extends ComponentActivity {
                                 "Do you want to download it now?"
                 )
                 .setPositiveButton("Download", (dialog, which) -> {
-                    startDepthModelDownload(downloadUrl, targetMode);
+                    startDepthModelDownload(targetMode);
                 })
                 .setNegativeButton("Cancel", (dialog, which) -> {
                     Toast.makeText(this,
@@ -616,143 +687,40 @@ public class MainActivity extends ComponentActivity {
     }
 
 
-    private void startDepthModelDownload(String url, EnvMode mode) {
-        DownloadManager dm = (DownloadManager) getSystemService(DOWNLOAD_SERVICE);
-        if (dm == null) {
-            Toast.makeText(this, "DownloadManager not available", Toast.LENGTH_LONG).show();
-            return;
-        }
-
-        java.io.File outFile = getDepthModelFileForMode(mode);
-        if (outFile == null) {
-            Toast.makeText(this, "No external files dir for downloads", Toast.LENGTH_LONG).show();
-            return;
-        }
-
-        String fileName = outFile.getName();
-
-        DownloadManager.Request req = new DownloadManager.Request(Uri.parse(url))
-                .setTitle("Downloading " + fileName)
-                .setDescription("Depth model for " + (mode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"))
-                .setNotificationVisibility(
-                        DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED)
-                // We know exactly where the file will be:
-                .setDestinationInExternalFilesDir(
-                        this,
-                        Environment.DIRECTORY_DOWNLOADS,
-                        fileName
-                );
-
-        long id = dm.enqueue(req);
-
-        String keyPath = (mode == EnvMode.OUTDOOR)
-                ? PREF_DEPTH_MODEL_OUTDOOR_PATH
-                : PREF_DEPTH_MODEL_INDOOR_PATH;
-
-        // Save: which download, which mode, and where we expect the file to be
-        depthModelPrefs.edit()
-                .putLong(PREF_LAST_DEPTH_DOWNLOAD_ID, id)
-                .putString(PREF_LAST_DEPTH_DOWNLOAD_MODE, mode.name())
-                .putString(keyPath, outFile.getAbsolutePath())
-                .apply();
-
-        Toast.makeText(this, "Downloading depth model...", Toast.LENGTH_SHORT).show();
-    }
-
-    private final android.content.BroadcastReceiver downloadReceiver =
-            new android.content.BroadcastReceiver() {
-                @Override
-                public void onReceive(android.content.Context ctx, Intent intent) {
-                    if (!DownloadManager.ACTION_DOWNLOAD_COMPLETE.equals(intent.getAction())) {
-                        return;
-                    }
+    private void startDepthModelDownload(EnvMode mode) {
+        boolean started = DepthModelDownloads.start(this, mode, new DepthModelDownloads.Callback() {
+            @Override
+            public void onProgress(EnvMode m, int percent) {
+                if (percent >= 0 && percent % 10 == 0) Log.i(TAG, "Depth model " + m + ": " + percent + "%");
+            }
 
-                    long id = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1L);
-                    long expectedId = depthModelPrefs.getLong(PREF_LAST_DEPTH_DOWNLOAD_ID, -1L);
-                    if (id != expectedId) return; // Not our download
-
-                    DownloadManager dm = (DownloadManager) getSystemService(DOWNLOAD_SERVICE);
-                    if (dm == null) return;
-
-                    DownloadManager.Query q = new DownloadManager.Query().setFilterById(id);
-                    try (Cursor c = dm.query(q)) {
-                        if (c != null && c.moveToFirst()) {
-                            int statusIdx = c.getColumnIndex(DownloadManager.COLUMN_STATUS);
-                            if (statusIdx == -1) return;
-
-                            int status = c.getInt(statusIdx);
-                            if (status == DownloadManager.STATUS_SUCCESSFUL) {
-
-                                // Which mode was this download for?
-                                String modeName = depthModelPrefs.getString(
-                                        PREF_LAST_DEPTH_DOWNLOAD_MODE,
-                                        EnvMode.INDOOR.name()
-                                );
-                                final EnvMode mode = EnvMode.valueOf(modeName);
-
-                                String keyPath = (mode == EnvMode.OUTDOOR)
-                                        ? PREF_DEPTH_MODEL_OUTDOOR_PATH
-                                        : PREF_DEPTH_MODEL_INDOOR_PATH;
-
-                                final String path = depthModelPrefs.getString(keyPath, null);
-
-                                if (path != null && new java.io.File(path).exists()) {
-                                    Log.i(TAG, "Depth model downloaded OK for mode=" + mode + " at " + path);
-
-                                    runOnUiThread(() -> {
-                                        try {
-                                            // Make sure envMode matches the model we just downloaded
-                                            if (envMode == mode) {
-                                                reloadPipelinesForEnvChange();
-                                            }
-
-                                            Toast.makeText(
-                                                    MainActivity.this,
-                                                    "Depth model loaded for " +
-                                                            (envMode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"),
-                                                    Toast.LENGTH_SHORT
-                                            ).show();
-
-                                        } catch (Throwable e) {
-                                            Log.w(TAG, "Failed to init depth after download", e);
-                                            Toast.makeText(
-                                                    MainActivity.this,
-                                                    "Depth model downloaded but failed to init",
-                                                    Toast.LENGTH_LONG
-                                            ).show();
-                                        }
-                                    });
-
-                                } else {
-                                    Log.w(TAG, "Depth model download reported success but file missing at " + path);
-                                    Toast.makeText(MainActivity.this,
-                                            "Depth model file missing after download",
-                                            Toast.LENGTH_LONG).show();
-                                }
-
-                            } else {
-                                Toast.makeText(MainActivity.this,
-                                        "Depth model download failed",
-                                        Toast.LENGTH_LONG).show();
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error checking download status", e);
-                    }
+            @Override
+            public void onFinished(EnvMode m, @Nullable Throwable error) {
+                if (isFinishing() || isDestroyed()) return;
+                if (error != null) {
+                    Toast.makeText(MainActivity.this,
+                            "Depth model download failed: " + error.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                    return;
                 }
-            };
-
-
-
-    private java.io.File getDepthModelFileForMode(EnvMode mode) {
-        String fileName = (mode == EnvMode.OUTDOOR)
-                ? "depth_anything_v2_metric_vkitti_vits_fp16.onnx"
-                : "depth_anything_v2_metric_hypersim_vits_fp16.onnx";
-
-        java.io.File dir = getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS);
-        if (dir == null) return null;
-        return new java.io.File(dir, fileName);
+                Log.i(TAG, "Depth model downloaded and verified for mode=" + m);
+                // A preloaded estimator for this mode still runs the old model
+                depthModels.discardPreloaded(m);
+                // Make sure envMode matches the model we just downloaded
+                if (envMode == m) {
+                    reloadPipelinesForEnvChange();
+                } else {
+                    Toast.makeText(MainActivity.this,
+                            "Depth model downloaded for " + (m == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"),
+                            Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        Toast.makeText(this,
+                started ? "Downloading depth model..." : "Depth model download already running",
+                Toast.LENGTH_SHORT).show();
     }
+
     private void initCameraProvider() {
         ProcessCameraProvider.getInstance(this).addListener(() -> {
             try {
@@ -815,6 +783,7 @@ public class MainActivity extends ComponentActivity {
             Camera camera = cameraProvider.bindToLifecycle(
                     (LifecycleOwner) this, selector, preview, analysis);
             currentCamera = camera;
+            startup.markCameraBound();
 
             observeZoom(camera);
             setupStereoProcessorForCurrentCamera(camera);
@@ -827,38 +796,56 @@ public class MainActivity extends ComponentActivity {
     }
 
     /**
-     * Runs depth estimation if the interval has passed, otherwise returns cached depth.
-     * Thread-safe; can be called from background threads.
+     * Cached depth if the interval has not passed and the cache is still fresh, otherwise null:
+     * depth is due on this frame. Thread-safe.
      */
-    private DepthEstimator.DepthMap maybeRunDepthSync(
-            int[] argb,
-            int width,
-            int height,
-            long nowMs
-    ) {
-        if (depthEstimator == null) return null;
-
+    @Nullable
+    private DepthEstimator.DepthMap cachedDepth(long nowMs, long intervalMs) {
         synchronized (depthState) {
             boolean hasDepth = (depthState.lastDepthMap != null);
-            boolean tooSoon = (nowMs - depthState.lastDepthMillis) < DEPTH_INTERVAL_MS;
+            boolean tooSoon = (nowMs - depthState.lastDepthMillis) < intervalMs;
             boolean cacheValid = hasDepth &&
                     (nowMs - depthState.lastDepthCacheTime) <= DEPTH_CACHE_MS;
 
-            if (tooSoon && cacheValid) {
+            // The frame holds a reference: a depth task of an older frame may replace it meanwhile
+            if (tooSoon && cacheValid && depthState.lastDepthMap.acquire()) {
                 depthState.lastDepthCacheTime = nowMs;
                 return depthState.lastDepthMap;
             }
+            return null;
         }
+    }
 
+    /**
+     * Runs depth estimation on {@code prepared} (built from the frame if null or stale) and caches
+     * the result. Thread-safe; can be called from background threads. The caller holds a
+     * reference to the returned map: release it to frameArena when done.
+     */
+    private DepthEstimator.DepthMap runDepthSync(
+            DepthEstimator depthEstimator,
+            FramePreprocessor.Frame frame,
+            int width,
+            int height,
+            long nowMs,
+            @Nullable FramePreprocessor.Input prepared
+    ) {
         try {
+            long depthStartNs = System.nanoTime();
             DepthEstimator.DepthMap map =
-                    depthEstimator.estimate(argb, width, height);
+                    depthEstimator.estimate(frame, width, height, frameArena, prepared);
+            latencyController.recordStage(LatencyController.Stage.DEPTH,
+                    System.nanoTime() - depthStartNs);
 
+            map.acquire(); // the caller's; the creator's becomes the cache's
+            DepthEstimator.DepthMap replaced;
             synchronized (depthState) {
+                replaced = depthState.lastDepthMap;
                 depthState.lastDepthMap = map;
                 depthState.lastDepthMillis = nowMs;
                 depthState.lastDepthCacheTime = nowMs;
             }
+            // A frame still reading the replaced map keeps its array until it lets go
+            if (replaced != null && replaced != map) replaced.release(frameArena);
             return map;
         } catch (Exception e) {
             Log.e(TAG, "Depth estimation failed", e);
@@ -866,8 +853,29 @@ public class MainActivity extends ComponentActivity {
         }
     }
 
+    // Null (the estimator builds its own input) if the depth session cannot be opened here
+    @Nullable
+    private FramePreprocessor.Target depthInputTarget(DepthEstimator depthEstimator, int w, int h) {
+        try {
+            return depthEstimator.inputTarget(w, h);
+        } catch (Exception e) {
+            Log.e(TAG, "Depth input setup failed", e);
+            return null;
+        }
+    }
+
     private void analyzeFrame(ImageProxy image) {
         boolean singleShotFrame = false;
+        // Held for the whole frame so a model switch cannot close it underneath us
+        DepthEstimator depth = null;
+        // Frame buffers from frameArena, released once the inference tasks are done with them
+        int[] argb = null;
+        Yuv.LazyArgb planes = null;
+        FramePreprocessor.Input[] inputs = null;
+        // This frame's reference to the depth map it reads, released when it is done
+        DepthEstimator.DepthMap heldDepthMap = null;
+        Future<?> detTask = null;
+        Future<?> depthTask = null;
 
         try {
             boolean shouldProcess = realtimeEnabled;
@@ -887,6 +895,23 @@ public class MainActivity extends ComponentActivity {
 
             if (!shouldProcess) return;
 
+            // Models still loading: drop the frame before any conversion work
+            if (detector == null) {
+                startup.frameDropped();
+                return;
+            }
+
+            // Thermal caps apply on top of everything else
+            long pollMs = SystemClock.elapsedRealtime();
+            thermalGovernor.update(pollMs);
+            ThermalGovernor.Constraints thermal = thermalGovernor.constraints();
+            frameRateController.setMaxFps(thermal.maxFps);
+
+            // Duty cycle: skip the frame before any conversion work if nothing dangerous is near
+            if (!singleShotFrame && !frameRateController.shouldProcess(pollMs)) {
+                return;
+            }
+
             // ---- Capture timestamp (convert to nanoTime base) ----
             long imgTsNs = image.getImageInfo().getTimestamp();   // camera timestamp
             long imgTsUptimeNs = cameraTsIsRealtime
@@ -898,32 +923,74 @@ public class MainActivity extends ComponentActivity {
             long captureToAnalyzerNs = analyzerStartNs - imgTsUptimeNs;
             // -----------------------------------------------------
 
-            // Basic frame info
-            int frameW = image.getWidth();
-            int frameH = image.getHeight();
-            int rotation = image.getImageInfo().getRotationDegrees();
-
-            // YUV → ARGB (+ rotation)
-            int[] argb = Yuv.toArgb(image);
-            if (rotation != 0) {
-                argb = Yuv.rotate(argb, frameW, frameH, rotation);
-                if (rotation == 90 || rotation == 270) {
-                    int tmp = frameW;
-                    frameW = frameH;
-                    frameH = tmp;
-                }
+            // Quality knobs chosen by the latency controller for this frame
+            // (clamped by the thermal governor)
+            LatencyController.Knobs knobs = latencyController.current();
+            detector.setInputSize(Math.min(knobs.detectorInputSize, thermal.maxDetectorInputSize));
+            depth = depthModels.acquire();
+            DepthEstimator frameDepth = depth;
+            if (frameDepth != null) {
+                frameDepth.setInputSize(Math.min(knobs.depthInputSize, thermal.maxDepthInputSize));
             }
 
+            // Basic frame info (sizes of the rotated frame)
+            int rotation = image.getImageInfo().getRotationDegrees();
+            boolean transposed = rotation == 90 || rotation == 270;
+            int frameW = transposed ? image.getHeight() : image.getWidth();
+            int frameH = transposed ? image.getWidth() : image.getHeight();
+
             if (stereoProcessor != null) {
                 stereoProcessor.setReferenceSize(frameW, frameH);
             }
 
-            int[] detectorInput = (blurEnabled && BLUR_RADIUS > 0)
-                    ? ImageUtils.boxBlur(argb, frameW, frameH, BLUR_RADIUS)
-                    : argb;
-
             final long nowMs = SystemClock.elapsedRealtime();
 
+            // Depth runs at its own interval; in between the cached map is reused
+            DepthEstimator.DepthMap cachedDepthMap = null;
+            boolean depthDue = false;
+            if (frameDepth != null) {
+                long depthIntervalMs = (long) (knobs.depthIntervalMs * thermal.depthIntervalScale);
+                cachedDepthMap = cachedDepth(nowMs, depthIntervalMs);
+                heldDepthMap = cachedDepthMap;
+                depthDue = cachedDepthMap == null;
+            }
+
+            // Inputs this frame needs: the detector's (blurred if enabled) and, when due, depth's
+            int blurRadius = (blurEnabled && knobs.blur) ? BLUR_RADIUS : 0;
+            FramePreprocessor.Target[] targets = {
+                    detector.inputTarget(frameW, frameH, blurRadius),
+                    depthDue ? depthInputTarget(frameDepth, frameW, frameH) : null
+            };
+            YuvGraph[] graphs = usableGraphs(targets, rotation, image.getWidth(), image.getHeight());
+
+            // YUV → ARGB (+ rotation); when a preprocessing graph builds one of the inputs only
+            // the planes are copied, and ARGB is built later if another input still needs it
+            long stageStartNs = System.nanoTime();
+            FramePreprocessor.Frame frame;
+            if (graphs != null) {
+                planes = new Yuv.LazyArgb(Yuv.planes(image, frameArena), rotation, frameArena, rowBands);
+                frame = planes;
+            } else {
+                argb = Yuv.toArgb(image, frameArena, rowBands);
+                int[] rotated = Yuv.rotate(argb, image.getWidth(), image.getHeight(), rotation,
+                        frameArena, rowBands);
+                if (rotated != argb) frameArena.release(argb);
+                argb = rotated;
+                int[] finalArgb = argb;
+                frame = () -> finalArgb;
+            }
+
+            latencyController.recordStage(LatencyController.Stage.CONVERT,
+                    System.nanoTime() - stageStartNs);
+
+            // The graphs, or one pass over the frame, build the inputs
+            stageStartNs = System.nanoTime();
+            inputs = preprocess(frame, planes, graphs, targets, frameW, frameH);
+            FramePreprocessor.Input detectorInput = inputs[0];
+            FramePreprocessor.Input depthInput = inputs[1];
+            latencyController.recordStage(LatencyController.Stage.PREPROCESS,
+                    System.nanoTime() - stageStartNs);
+
             // Run YOLO + depth in parallel on inferenceExec
             int finalFrameW1 = frameW;
             int finalFrameH1 = frameH;
@@ -931,7 +998,12 @@ public class MainActivity extends ComponentActivity {
             Future<List<ObjectDetector.Detection>> detFuture =
                     inferenceExec.submit(() -> {
                         try {
-                            return detector.detect(detectorInput, finalFrameW1, finalFrameH1);
+                            long detectStartNs = System.nanoTime();
+                            List<ObjectDetector.Detection> result =
+                                    detector.detect(frame, finalFrameW1, finalFrameH1, frameArena, detectorInput);
+                            latencyController.recordStage(LatencyController.Stage.DETECT,
+                                    System.nanoTime() - detectStartNs);
+                            return result;
                         } catch (OrtException e) {
                             Log.e(TAG, "detect failed", e);
                             return null;
@@ -940,27 +1012,41 @@ public class MainActivity extends ComponentActivity {
                             return null;
                         }
                     });
+            detTask = detFuture;
 
             Future<DepthEstimator.DepthMap> depthFuture = null;
-            if (depthEstimator != null) {
-                int[] finalArgb = argb;
+            if (depthDue) {
                 int finalFrameW = frameW;
                 int finalFrameH = frameH;
-                depthFuture = inferenceExec.submit(() ->
-                        maybeRunDepthSync(finalArgb, finalFrameW, finalFrameH, nowMs)
-                );
+                // The task holds a reference of its own: after an interrupted wait it outlives the
+                // frame's, and a model switch must not close the session while it still runs
+                frameDepth.acquire();
+                try {
+                    depthFuture = inferenceExec.submit(() -> {
+                        try {
+                            return runDepthSync(frameDepth, frame, finalFrameW, finalFrameH, nowMs, depthInput);
+                        } finally {
+                            frameDepth.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    frameDepth.release();
+                    throw e;
+                }
+                depthTask = depthFuture;
             }
 
             // Wait for results
             List<ObjectDetector.Detection> dets = detFuture.get();
 
-            DepthEstimator.DepthMap depthMap = null;
+            DepthEstimator.DepthMap depthMap = cachedDepthMap;
             if (depthFuture != null) {
                 depthMap = depthFuture.get();
+                heldDepthMap = depthMap;
             }
 
             if (depthMap != null && dets != null) {
-                dets = depthEstimator.attachDepth(dets, depthMap);
+                dets = frameDepth.attachDepth(dets, depthMap);
             }
 
             if (stereoFusionEnabled && stereoProcessor != null
@@ -968,6 +1054,10 @@ public class MainActivity extends ComponentActivity {
                 dets = stereoProcessor.fuseDepth(depthMap, dets, frameW, frameH);
             }
 
+            if (!singleShotFrame) {
+                reportHazardsToFrameRateController(dets, nowMs);
+            }
+
             // End of your compute work
             long inferenceDoneNs = System.nanoTime();
             long processingNs = inferenceDoneNs - analyzerStartNs;
@@ -983,8 +1073,11 @@ public class MainActivity extends ComponentActivity {
             runOnUiThread(() -> {
                 long uiCallbackStartNs = System.nanoTime();
                 long captureToUiCallbackNs = uiCallbackStartNs - imgTsUptimeNsFinal;
+                latencyController.onFrameComplete(captureToUiCallbackNs,
+                        SystemClock.elapsedRealtime());
 
                 overlay.setDetections(finalDets, finalW, finalH);
+                if (finalDets != null) startup.firstDetectionShown();
 
                 // This logs capture->TTS(begin) at the moment we START calling TTS
                 processTTSWarning(finalDets,
@@ -1001,9 +1094,14 @@ public class MainActivity extends ComponentActivity {
                 if ((++latFrameCounter % LAT_LOG_EVERY_N_FRAMES) == 0) {
                     android.view.Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
                         long capToUiFrameNs = frameTimeNanos - imgTsUptimeNsFinal;
+                        ObjectDetector det = detector;
+                        DepthEstimator depthNow = depthModels.current();
                         Log.i(TAG, String.format(
-                                "Latency(ms): cap->UIframe=%.2f",
-                                capToUiFrameNs / 1e6
+                                "Latency(ms): cap->UIframe=%.2f [det=%s depth=%s %s]",
+                                capToUiFrameNs / 1e6,
+                                det != null ? det.getProvider() : "-",
+                                depthNow != null ? depthNow.getProvider() : "-",
+                                OrtMemory.describeNative() + ", " + frameArena.describe()
                         ));
                     });
                 }
@@ -1016,6 +1114,14 @@ public class MainActivity extends ComponentActivity {
             Log.e(TAG, "analyzer crash", t);
         } finally {
             image.close();
+            // A task still running (interrupted wait) keeps its buffers; they are left to the GC
+            if ((detTask == null || detTask.isDone()) && (depthTask == null || depthTask.isDone())) {
+                FramePreprocessor.releaseAll(inputs, frameArena);
+                frameArena.release(argb);
+                if (planes != null) planes.release();
+            }
+            if (heldDepthMap != null) heldDepthMap.release(frameArena);
+            if (depth != null) depth.release();
             if (singleShotFrame) {
                 singleShotRunning = false;
                 runOnUiThread(() -> {
@@ -1025,6 +1131,98 @@ public class MainActivity extends ComponentActivity {
         }
     }
 
+    /**
+     * Per target (detector, depth), the preprocessing graph that can build it from this frame's
+     * planes, or null; null instead of the array when no graph can build any of them.
+     */
+    @Nullable
+    private YuvGraph[] usableGraphs(FramePreprocessor.Target[] targets, int rotation, int width, int height) {
+        if (width % 2 != 0 || height % 2 != 0) return null;
+        YuvGraph[] graphs = {detectorGraph, depthGraph};
+        boolean any = false;
+        for (int i = 0; i < targets.length; i++) {
+            if (graphs[i] != null && (targets[i] == null || !graphs[i].supports(targets[i], rotation))) {
+                graphs[i] = null;
+            }
+            any |= graphs[i] != null;
+        }
+        return any ? graphs : null;
+    }
+
+    // A graph that failed once stays off: frames go back to the Java path for its input
+    private void disableGraph(YuvGraph graph) {
+        synchronized (graphLock) {
+            if (detectorGraph == graph) detectorGraph = null;
+            else if (depthGraph == graph) depthGraph = null;
+            else return; // already taken by teardown
+        }
+        try {
+            graph.close(); // only the analyzer runs graphs, and it is here
+        } catch (Exception e) {
+            Log.e(TAG, "Preprocessing graph close failed", e);
+        }
+    }
+
+    /**
+     * Build each target's input: from the camera planes in the preprocessing graph given for it
+     * (see {@link #usableGraphs}), else in one shared Java pass over the frame's ARGB. Inputs
+     * are null where the target is.
+     */
+    private FramePreprocessor.Input[] preprocess(FramePreprocessor.Frame frame, @Nullable Yuv.LazyArgb planes,
+                                                 @Nullable YuvGraph[] graphs, FramePreprocessor.Target[] targets,
+                                                 int frameW, int frameH) {
+        FramePreprocessor.Input[] inputs = new FramePreprocessor.Input[targets.length];
+        FramePreprocessor.Target[] rest = targets.clone();
+        boolean javaPass = false;
+        for (int i = 0; i < targets.length; i++) {
+            YuvGraph graph = graphs != null ? graphs[i] : null;
+            if (planes != null && graph != null) {
+                try {
+                    inputs[i] = graph.run(planes.planes, targets[i], frameArena);
+                    rest[i] = null;
+                } catch (OrtException | RuntimeException e) {
+                    Log.w(TAG, "Preprocessing graph failed, turning it off and building the input in Java", e);
+                    disableGraph(graph);
+                }
+            }
+            javaPass |= rest[i] != null;
+        }
+        if (javaPass) {
+            FramePreprocessor.Input[] built =
+                    FramePreprocessor.run(frame.argb(), frameW, frameH, rest, frameArena, rowBands);
+            for (int i = 0; i < built.length; i++) {
+                if (built[i] != null) inputs[i] = built[i];
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Tell the frame rate controller whether a dangerous class is in this frame and how far
+     * the closest one is. A hazard without depth is reported with an unknown (NaN) distance.
+     */
+    private void reportHazardsToFrameRateController(List<ObjectDetector.Detection> dets, long nowMs) {
+        boolean hazardSeen = false;
+        boolean unknownDistance = false;
+        float nearestMeters = Float.MAX_VALUE;
+        if (dets != null) {
+            for (ObjectDetector.Detection det : dets) {
+                String label = (det.cls >= 0 && det.cls < cachedLabels.size())
+                        ? cachedLabels.get(det.cls)
+                        : null;
+                if (!TTSWarning.isDangerousLabel(label)) continue;
+                hazardSeen = true;
+                if (Float.isNaN(det.depth) || det.depth <= 0) {
+                    unknownDistance = true;
+                } else {
+                    nearestMeters = Math.min(nearestMeters, det.depth / 100.0f);
+                }
+            }
+        }
+        float reported = (!hazardSeen || unknownDistance) ? Float.NaN : nearestMeters;
+        frameRateController.onFrameResult(hazardSeen, reported, nowMs);
+    }
+
     @SuppressLint("RestrictedApi")
     @OptIn(markerClass = ExperimentalCamera2Interop.class)
     private void setupStereoProcessorForCurrentCamera(Camera camera) {
@@ -1065,6 +1263,14 @@ public class MainActivity extends ComponentActivity {
             singleShotRunning = false;
             return;
         }
+        if (detector == null) {
+            // Still loading
+            singleShotRunning = false;
+            runOnUiThread(() -> {
+                if (detectOnceButton != null) detectOnceButton.setEnabled(true);
+            });
+            return;
+        }
         if (lensFacing != CameraSelector.LENS_FACING_BACK) {
             sequentialStereoRunning = false;
             singleShotRunning = false;
@@ -1087,6 +1293,8 @@ public class MainActivity extends ComponentActivity {
         if (backCameraInfos == null || backCameraInfos.isEmpty()) {
             backCameraInfos = CameraUtils.cacheBackCameraInfos(cameraProvider);
         }
+        // Held until onFinished so an environment switch cannot close it mid-shot
+        DepthEstimator shotDepth = depthModels.acquire();
 
         SequentialStereoHelper.runSequentialStereoShot(
                 this,
@@ -1095,7 +1303,7 @@ public class MainActivity extends ComponentActivity {
                 exec,
                 backCameraInfos,
                 detector,
-                depthEstimator,
+                shotDepth,
                 blurEnabled,
                 BLUR_RADIUS,
                 stereoFusionEnabled,
@@ -1118,6 +1326,7 @@ public class MainActivity extends ComponentActivity {
 
                     @Override
                     public void onFinished() {
+                        if (shotDepth != null) shotDepth.release();
                         sequentialStereoRunning = false;
                         singleShotRunning = false;
                         if (detectOnceButton != null) {
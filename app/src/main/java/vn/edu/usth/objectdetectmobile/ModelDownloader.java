@@ -0,0 +1,272 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Downloads a model into the {@link ModelStore}. Interrupted transfers resume with an HTTP Range
+ * request (guarded by If-Range so a changed file restarts from zero), the SHA-256 is computed
+ * while the bytes arrive, and the file is only installed once it matches the expected hash:
+ * a pinned value, else the {@code <url>.sha256} sidecar. Without either nothing is installed.
+ */
+public final class ModelDownloader {
+    private static final String TAG = "ModelDownloader";
+
+    // ----- Tuning -----
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BASE_MS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final long PROGRESS_STEP_BYTES = 1 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public interface Listener {
+        /** {@code totalBytes} is -1 when the server does not send a length. */
+        void onProgress(@NonNull String name, long bytesDone, long totalBytes);
+    }
+
+    private final ModelStore store;
+    private long retryBaseMs = RETRY_BASE_MS;
+
+    public ModelDownloader(@NonNull ModelStore store) {
+        this.store = store;
+    }
+
+    // Tests: no back-off between attempts
+    void setRetryBaseMs(long ms) {
+        retryBaseMs = ms;
+    }
+
+    /**
+     * Fetch {@code url} and install it as {@code name}. Retries a few times, resuming each time;
+     * if all attempts fail the partial file is kept and the next call resumes from it.
+     */
+    public File download(@NonNull String name, @NonNull String url, @Nullable String pinnedSha256,
+                         @Nullable Listener listener) throws IOException {
+        File part = new File(store.partialDir(), name + ".part");
+        File meta = new File(store.partialDir(), name + ".meta");
+        String actual = null;
+        for (int attempt = 1; actual == null; attempt++) {
+            try {
+                actual = fetch(name, url, part, meta, listener);
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) throw e;
+                Log.w(TAG, String.format(Locale.US, "%s: attempt %d failed at %d bytes, resuming",
+                        name, attempt, part.length()), e);
+                sleep(retryBaseMs << (attempt - 1));
+            }
+        }
+
+        String expected = pinnedSha256 != null ? pinnedSha256 : fetchSidecarHash(url);
+        if (expected == null) {
+            // The complete file stays partial: a later call with a hash to check verifies it without refetching
+            throw new IOException(name + ": no pinned hash and no .sha256 sidecar, not installing " + actual);
+        }
+        if (!expected.equalsIgnoreCase(actual)) {
+            part.delete();
+            meta.delete();
+            throw new IOException(String.format(Locale.US,
+                    "%s: SHA-256 mismatch (expected %s, got %s)", name, expected, actual));
+        }
+        File installed = store.commitVerified(name, url, part, actual);
+        meta.delete();
+        return installed;
+    }
+
+    /**
+     * Install {@code src}, a copy of {@code url} fetched some other way (e.g. by DownloadManager
+     * in older versions), if it matches the expected hash as a download would. It may be truncated:
+     * on a mismatch it is deleted. Without a hash to check it is left alone and nothing is installed.
+     */
+    public File importVerified(@NonNull String name, @NonNull String url, @Nullable String pinnedSha256,
+                               @NonNull File src) throws IOException {
+        String expected = pinnedSha256 != null ? pinnedSha256 : fetchSidecarHash(url);
+        if (expected == null) {
+            throw new IOException(name + ": no pinned hash and no .sha256 sidecar, not importing " + src);
+        }
+        String actual = hashOf(src);
+        if (!expected.equalsIgnoreCase(actual)) {
+            src.delete();
+            throw new IOException(String.format(Locale.US,
+                    "%s: SHA-256 mismatch (expected %s, got %s), deleted %s", name, expected, actual, src));
+        }
+        File installed = store.importFile(name, url, src, expected);
+        src.delete();
+        return installed;
+    }
+
+    // One HTTP exchange; returns the SHA-256 of the complete file
+    private String fetch(String name, String url, File part, File meta, @Nullable Listener listener)
+            throws IOException {
+        Properties validators = loadMeta(meta);
+        if (part.exists() && !url.equals(validators.getProperty("url"))) {
+            part.delete();
+            validators.clear();
+        }
+        long offset = part.exists() ? part.length() : 0L;
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            // Offsets must refer to the file itself, not a compressed transfer
+            conn.setRequestProperty("Accept-Encoding", "identity");
+            if (offset > 0) {
+                conn.setRequestProperty("Range", "bytes=" + offset + "-");
+                String validator = validators.getProperty("etag", validators.getProperty("lastModified"));
+                if (validator != null) conn.setRequestProperty("If-Range", validator);
+            }
+
+            int code = conn.getResponseCode();
+            boolean append;
+            if (code == HttpURLConnection.HTTP_PARTIAL && offset > 0 && rangeStartsAt(conn, offset)) {
+                append = true;
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                append = false; // no range support, or the file changed since the partial was written
+                if (offset > 0) Log.i(TAG, name + ": server sent the whole file, restarting");
+            } else if (code == 416 && offset > 0 && offset == totalFromContentRange(conn)) {
+                return hashOf(part); // the partial file was already complete
+            } else {
+                if (code == 416) part.delete();
+                throw new IOException("HTTP " + code + " for " + url);
+            }
+
+            saveMeta(meta, url, conn);
+            long length = conn.getContentLengthLong();
+            long total = length < 0 ? -1L : (append ? offset : 0L) + length;
+            MessageDigest md = ModelStore.newDigest();
+            long done = 0L;
+            if (append) {
+                hashInto(part, md);
+                done = offset;
+            }
+            long nextReport = done;
+            try (InputStream in = conn.getInputStream();
+                 FileOutputStream out = new FileOutputStream(part, append)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int r;
+                while ((r = in.read(buf)) != -1) {
+                    out.write(buf, 0, r);
+                    md.update(buf, 0, r);
+                    done += r;
+                    if (listener != null && done >= nextReport) {
+                        listener.onProgress(name, done, total);
+                        nextReport = done + PROGRESS_STEP_BYTES;
+                    }
+                }
+                out.getFD().sync();
+            }
+            if (total >= 0 && done != total) {
+                throw new IOException(String.format(Locale.US, "Connection closed at %d of %d bytes", done, total));
+            }
+            if (listener != null) listener.onProgress(name, done, total);
+            return ModelStore.hex(md.digest());
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    @Nullable
+    private String fetchSidecarHash(String url) {
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(url + ".sha256").openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) return null;
+            byte[] buf = new byte[256];
+            int n = 0, r;
+            try (InputStream in = conn.getInputStream()) {
+                while (n < buf.length && (r = in.read(buf, n, buf.length - n)) != -1) n += r;
+            }
+            // "sha256sum" format: "<hex>  <file name>"
+            String token = new String(buf, 0, n, StandardCharsets.US_ASCII).trim().split("\\s+")[0];
+            return token.matches("[0-9a-fA-F]{64}") ? token.toLowerCase(Locale.US) : null;
+        } catch (IOException e) {
+            Log.w(TAG, "No hash sidecar for " + url, e);
+            return null;
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    private static boolean rangeStartsAt(HttpURLConnection conn, long offset) {
+        String range = conn.getHeaderField("Content-Range"); // "bytes 100-999/1000"
+        return range != null && range.trim().startsWith("bytes " + offset + "-");
+    }
+
+    private static long totalFromContentRange(HttpURLConnection conn) {
+        String range = conn.getHeaderField("Content-Range"); // "bytes */1000"
+        if (range == null) return -1L;
+        int slash = range.lastIndexOf('/');
+        try {
+            return slash < 0 ? -1L : Long.parseLong(range.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static String hashOf(File f) throws IOException {
+        MessageDigest md = ModelStore.newDigest();
+        hashInto(f, md);
+        return ModelStore.hex(md.digest());
+    }
+
+    private static void hashInto(File f, MessageDigest md) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int r;
+            while ((r = in.read(buf)) != -1) md.update(buf, 0, r);
+        }
+    }
+
+    private static Properties loadMeta(File meta) {
+        Properties p = new Properties();
+        if (meta.isFile()) {
+            try (InputStream in = new FileInputStream(meta)) {
+                p.load(in);
+            } catch (IOException e) {
+                p.clear();
+            }
+        }
+        return p;
+    }
+
+    // Validators for If-Range, so a resume never appends bytes of a different file version
+    private static void saveMeta(File meta, String url, HttpURLConnection conn) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("url", url);
+        String etag = conn.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) p.setProperty("etag", etag); // weak tags are not allowed in If-Range
+        String lastModified = conn.getHeaderField("Last-Modified");
+        if (lastModified != null) p.setProperty("lastModified", lastModified);
+        try (OutputStream out = new FileOutputStream(meta)) {
+            p.store(out, null);
+        }
+    }
+
+    private static void sleep(long ms) throws IOException {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+}
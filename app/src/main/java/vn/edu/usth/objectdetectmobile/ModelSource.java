@@ -0,0 +1,97 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Model bytes for ORT, memory-mapped straight from a file or from an uncompressed asset inside
+ * the APK (assets are stored with noCompress "onnx"), so nothing is copied to filesDir first
+ * and the pages stay reclaimable by the kernel.
+ */
+public final class ModelSource {
+    private static final String TAG = "ModelSource";
+
+    public final String name;
+    // Changes whenever the content may have (path, size, mtime); keys cached hashes
+    final String identity;
+    // How the bytes were obtained, for load-time logs
+    final String origin;
+    // Known content hash (models from the ModelStore), else null
+    @Nullable final String sha256;
+    private final ByteBuffer bytes;
+
+    private ModelSource(String name, String identity, String origin, @Nullable String sha256, ByteBuffer bytes) {
+        this.name = name;
+        this.identity = identity;
+        this.origin = origin;
+        this.sha256 = sha256;
+        this.bytes = bytes;
+    }
+
+    /** Direct buffer over the whole model; each call gets its own position/limit. */
+    public ByteBuffer bytes() {
+        return bytes.duplicate();
+    }
+
+    public long size() {
+        return bytes.capacity();
+    }
+
+    /** ORT-format models can be used from the mapped bytes without a copy. */
+    boolean isOrtFormat() {
+        return name.endsWith(".ort");
+    }
+
+    ModelSource withOrigin(String newOrigin) {
+        return new ModelSource(name, identity, newOrigin, sha256, bytes);
+    }
+
+    public static ModelSource ofFile(@NonNull File file) throws IOException {
+        return ofFile(file, file.getName(), null);
+    }
+
+    /** A ModelStore blob: named after the model, with its hash already known. */
+    public static ModelSource ofStored(@NonNull File blob, @NonNull String name, @NonNull String sha256)
+            throws IOException {
+        return ofFile(blob, name, sha256).withOrigin("mmap store");
+    }
+
+    private static ModelSource ofFile(File file, String name, @Nullable String sha256) throws IOException {
+        try (FileInputStream in = new FileInputStream(file);
+             FileChannel ch = in.getChannel()) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            String id = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+            return new ModelSource(name, id, "mmap file", sha256, buf);
+        }
+    }
+
+    public static ModelSource ofAsset(@NonNull Context ctx, @NonNull String assetName) throws IOException {
+        try (AssetFileDescriptor afd = ctx.getAssets().openFd(assetName);
+             FileInputStream in = afd.createInputStream();
+             FileChannel ch = in.getChannel()) {
+            // The channel is the whole APK; the asset is a stored (uncompressed) slice of it
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+            long apkTime = new File(ctx.getApplicationInfo().sourceDir).lastModified();
+            String id = "asset:" + assetName + "|" + afd.getLength() + "|" + apkTime;
+            return new ModelSource(assetName, id, "mmap asset", null, buf);
+        } catch (FileNotFoundException e) {
+            // openFd refuses compressed assets: fall back to the one-time copy into the model store
+            Log.w(TAG, assetName + " is compressed in the APK, copying instead of mapping");
+            File stored = new File(ObjectDetector.Util.cacheAsset(ctx, assetName));
+            String sha = ObjectDetector.Util.store(ctx).sha256(assetName);
+            return ofFile(stored, assetName, sha).withOrigin("copied asset");
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Content-addressed model files: {@code blobs/<sha256>} plus a manifest mapping a model name
+ * to its blob. Bytes are hashed while they are written, land in {@code tmp/} first and are
+ * renamed into place, so a crash never leaves a half-written model under a valid name.
+ * The manifest records size and mtime, so {@link #get} verifies a model with a stat instead
+ * of a re-hash. Blobs no manifest entry points to are deleted.
+ */
+public final class ModelStore {
+    private static final String TAG = "ModelStore";
+    private static final String MANIFEST = "manifest.properties";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File root;
+    private final File blobs;
+    private final File tmp;
+    private final File partial;
+    private final Properties manifest = new Properties();
+
+    public ModelStore(@NonNull File root) throws IOException {
+        this.root = root;
+        this.blobs = new File(root, "blobs");
+        this.tmp = new File(root, "tmp");
+        this.partial = new File(root, "partial");
+        mkdirs(blobs);
+        mkdirs(tmp);
+        mkdirs(partial);
+        File m = new File(root, MANIFEST);
+        if (m.isFile()) {
+            try (InputStream in = new FileInputStream(m)) {
+                manifest.load(in);
+            }
+        }
+        // Leftovers of installs interrupted by a crash
+        File[] stale = tmp.listFiles();
+        if (stale != null) for (File f : stale) f.delete();
+    }
+
+    /**
+     * The stored file for {@code name}, or null if there is none, its blob is missing or was
+     * modified, or it was installed from a different {@code sourceId} (null = any source).
+     */
+    @Nullable
+    public synchronized File get(@NonNull String name, @Nullable String sourceId) {
+        String sha = manifest.getProperty(name + ".sha256");
+        if (sha == null) return null;
+        if (sourceId != null && !sourceId.equals(manifest.getProperty(name + ".source"))) return null;
+        File blob = new File(blobs, sha);
+        long size = parseLong(manifest.getProperty(name + ".size"));
+        long mtime = parseLong(manifest.getProperty(name + ".mtime"));
+        if (!blob.isFile() || blob.length() != size || blob.lastModified() != mtime) {
+            Log.w(TAG, name + ": stored blob missing or modified, dropping entry");
+            removeEntry(name);
+            return null;
+        }
+        return blob;
+    }
+
+    /** SHA-256 recorded for {@code name}, or null. */
+    @Nullable
+    public synchronized String sha256(@NonNull String name) {
+        return manifest.getProperty(name + ".sha256");
+    }
+
+    public synchronized boolean contains(@NonNull String name) {
+        return get(name, null) != null;
+    }
+
+    /**
+     * Stream {@code in} into the store under {@code name}. When {@code expectedSha256} is given
+     * and the bytes do not match, nothing is installed and an IOException is thrown.
+     */
+    public synchronized File install(@NonNull String name, @Nullable String sourceId, @NonNull InputStream in,
+                                     @Nullable String expectedSha256) throws IOException {
+        File part = File.createTempFile("install", ".part", tmp);
+        try {
+            MessageDigest md = newDigest();
+            long size = 0;
+            try (FileOutputStream out = new FileOutputStream(part)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int r;
+                while ((r = in.read(buf)) != -1) {
+                    md.update(buf, 0, r);
+                    out.write(buf, 0, r);
+                    size += r;
+                }
+                out.getFD().sync();
+            }
+            return commit(name, sourceId, part, hex(md.digest()), size, expectedSha256);
+        } finally {
+            part.delete(); // no-op once renamed into blobs/
+        }
+    }
+
+    public synchronized File importFile(@NonNull String name, @Nullable String sourceId, @NonNull File src,
+                                        @Nullable String expectedSha256) throws IOException {
+        try (InputStream in = new FileInputStream(src)) {
+            return install(name, sourceId, in, expectedSha256);
+        }
+    }
+
+    /**
+     * Install a file that was already hashed while it was written (a download). It is renamed
+     * into the store, so it must come from {@link #partialDir()}.
+     */
+    public synchronized File commitVerified(@NonNull String name, @Nullable String sourceId, @NonNull File part,
+                                            @NonNull String sha256) throws IOException {
+        return commit(name, sourceId, part, sha256, part.length(), null);
+    }
+
+    /** Partial downloads: same filesystem as the blobs and, unlike tmp/, kept across restarts. */
+    public File partialDir() {
+        return partial;
+    }
+
+    public synchronized void remove(@NonNull String name) {
+        removeEntry(name);
+    }
+
+    /** Re-hash the stored blob (slow); drops the entry if it no longer matches. */
+    public synchronized boolean verify(@NonNull String name) throws IOException {
+        File blob = get(name, null);
+        if (blob == null) return false;
+        MessageDigest md = newDigest();
+        try (InputStream in = new FileInputStream(blob)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int r;
+            while ((r = in.read(buf)) != -1) md.update(buf, 0, r);
+        }
+        if (hex(md.digest()).equals(manifest.getProperty(name + ".sha256"))) return true;
+        Log.w(TAG, name + ": content does not match its hash, dropping entry");
+        removeEntry(name);
+        return false;
+    }
+
+    private File commit(String name, @Nullable String sourceId, File part, String sha, long size,
+                        @Nullable String expectedSha256) throws IOException {
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha)) {
+            part.delete();
+            throw new IOException(String.format(Locale.US,
+                    "%s: SHA-256 mismatch (expected %s, got %s)", name, expectedSha256, sha));
+        }
+        File blob = new File(blobs, sha);
+        if (blob.isFile() && blob.length() == size) {
+            part.delete(); // same content already stored
+        } else if (!part.renameTo(blob)) {
+            throw new IOException("Cannot move " + part + " to " + blob);
+        }
+        manifest.setProperty(name + ".sha256", sha);
+        manifest.setProperty(name + ".size", Long.toString(size));
+        manifest.setProperty(name + ".mtime", Long.toString(blob.lastModified()));
+        if (sourceId != null) manifest.setProperty(name + ".source", sourceId);
+        else manifest.remove(name + ".source");
+        saveManifest();
+        evictUnreferenced();
+        Log.i(TAG, String.format(Locale.US, "%s: stored as %s (%.1f MB)", name, sha.substring(0, 12), size / 1e6));
+        return blob;
+    }
+
+    private void removeEntry(String name) {
+        for (String suffix : new String[]{".sha256", ".size", ".mtime", ".source"}) {
+            manifest.remove(name + suffix);
+        }
+        try {
+            saveManifest();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save manifest", e);
+        }
+        evictUnreferenced();
+    }
+
+    // Write-then-rename so a crash leaves either the old or the new manifest
+    private void saveManifest() throws IOException {
+        File next = new File(root, MANIFEST + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(next)) {
+            manifest.store(out, null);
+            out.getFD().sync();
+        }
+        if (!next.renameTo(new File(root, MANIFEST))) {
+            throw new IOException("Cannot replace " + MANIFEST);
+        }
+    }
+
+    // Old versions: blobs no entry refers to any more
+    private void evictUnreferenced() {
+        Set<String> live = new HashSet<>();
+        for (String key : manifest.stringPropertyNames()) {
+            if (key.endsWith(".sha256")) live.add(manifest.getProperty(key));
+        }
+        File[] files = blobs.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            if (!live.contains(f.getName()) && f.delete()) {
+                Log.i(TAG, "Evicted " + f.getName().substring(0, Math.min(12, f.getName().length())));
+            }
+        }
+    }
+
+    static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(String.format(Locale.US, "%02x", b));
+        return sb.toString();
+    }
+
+    private static long parseLong(@Nullable String s) {
+        try {
+            return s == null ? -1L : Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+    }
+}
@@ -1,14 +1,24 @@
 package vn.edu.usth.objectdetectmobile;
 
 import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import ai.onnxruntime.*;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import static java.lang.Math.*;
 
 public class ObjectDetector implements AutoCloseable {
@@ -26,77 +36,754 @@ public class ObjectDetector implements AutoCloseable {
         }
     }
 
+    private static final String TAG = "ObjectDetector";
+
+    public static final int DEFAULT_INPUT_SIZE = 640;
+    public static final int[] SUPPORTED_INPUT_SIZES = {320, 416, 512, 640};
+    private static final int STRIDE = 32;
+
+    // Inputs and outputs of exports with NMS in the graph (tools/append_nms.py)
+    private static final String NMS_SCORE_THRESHOLD = "score_threshold", NMS_IOU_THRESHOLD = "iou_threshold",
+            NMS_MAX_DETECTIONS = "max_detections", NMS_CLASS_MASK = "class_mask";
+    private static final String NMS_BOXES = "det_boxes", NMS_SCORES = "det_scores", NMS_CLASSES = "det_classes";
+    private static final long NMS_MAX_PER_CLASS = 100;
+
+    /** A loaded network: dynamic-shape (any supported size) or fixed to one size. */
+    private static final class Variant {
+        final OrtSession session;
+        final String inputName;
+        final int fixedSize; // 0 = dynamic H/W
+        final FramePreprocessor.Layout layout;
+        // Final boxes come out of the graph (NMS included); the class mask has this many entries
+        final boolean inGraphNms;
+        final int maskClasses;
+        final String outputName;
+        final long[] outputDims; // as declared, negative = dynamic
+        final boolean halfOutput; // fp16 export without an output Cast
+        final String provider;
+        final ModelSource source; // mapped bytes, kept alive with the session
+        private final ExecutionProviders.Selection<OrtSession> selection;
+        // Run into a preallocated output buffer; cleared if this session refuses pinned outputs
+        volatile boolean pinOutput = true;
+
+        Variant(ExecutionProviders.Selection<OrtSession> selection) throws OrtException {
+            this.selection = selection;
+            this.session = selection.session;
+            this.provider = selection.describe();
+            this.source = selection.source;
+            Map<String, NodeInfo> inputs = session.getInputInfo();
+            String image = null;
+            for (String name : inputs.keySet()) {
+                if (image == null && !isNmsInput(name)) image = name;
+            }
+            this.inputName = image != null ? image : inputs.keySet().iterator().next();
+            this.inGraphNms = session.getOutputInfo().containsKey(NMS_BOXES);
+            NodeInfo mask = inputs.get(NMS_CLASS_MASK);
+            this.maskClasses = mask != null ? (int) ((TensorInfo) mask.getInfo()).getShape()[0] : 0;
+            // [1,3,H,W] floats or halves, or [1,H,W,3] bytes for exports that normalize in-graph;
+            // negative dims mean the export has dynamic axes
+            TensorInfo in = (TensorInfo) inputs.get(inputName).getInfo();
+            this.layout = in.type == OnnxJavaType.UINT8 ? FramePreprocessor.Layout.HWC_UINT8
+                    : in.type == OnnxJavaType.FLOAT16 ? FramePreprocessor.Layout.CHW_HALF
+                    : FramePreprocessor.Layout.CHW_FLOAT;
+            int hAxis = layout == FramePreprocessor.Layout.HWC_UINT8 ? 1 : 2;
+            long[] shape = in.getShape();
+            long h = shape.length == 4 ? shape[hAxis] : -1, w = shape.length == 4 ? shape[hAxis + 1] : -1;
+            this.fixedSize = (h <= 0 || w <= 0) ? 0 : (int) Math.max(h, w);
+            this.outputName = session.getOutputInfo().keySet().iterator().next();
+            TensorInfo out = (TensorInfo) session.getOutputInfo().get(outputName).getInfo();
+            this.outputDims = out.getShape();
+            this.halfOutput = out.type == OnnxJavaType.FLOAT16;
+        }
+
+        void close() throws OrtException {
+            ExecutionProviders.closeSession(selection);
+        }
+
+        /**
+         * Output shape for an input size, so the output can be pinned: [1,4+C,N] or [1,N,4+C]
+         * with N the anchor count over strides 8/16/32. Null when the export does not tell, or
+         * returns final boxes (their count varies).
+         */
+        @Nullable
+        long[] outputShape(int inputW, int inputH) {
+            if (inGraphNms || outputDims.length != 3) return null;
+            long anchors = 0;
+            for (int s = 8; s <= STRIDE; s *= 2) anchors += (long) (inputW / s) * (inputH / s);
+            long[] shape = outputDims.clone();
+            shape[0] = 1;
+            if (shape[1] > 0 && shape[2] <= 0) shape[2] = anchors;
+            else if (shape[2] > 0 && shape[1] <= 0) shape[1] = anchors;
+            else if (shape[1] <= 0 || shape[2] <= 0) return null;
+            return shape;
+        }
+    }
+
+    /**
+     * All sessions of one tier. Reference counted so a swapped-out model is only closed
+     * once the frames still running on it are done.
+     */
+    private static final class Model {
+        final DetectorModelRegistry.Tier tier;
+        // Input layout asked for, and the one of the assets actually loaded (float if no uint8 export)
+        final FramePreprocessor.Layout requestedLayout, assetLayout;
+        // In-graph NMS asked for, and whether the loaded assets have it
+        final boolean requestedNms, assetNms;
+        final Variant base;
+        // Per-size sessions for fixed-shape exports, built on the loader when a size is first asked for
+        final Map<Integer, Variant> sizedVariants = new HashMap<>();
+        // Those builds by size, guarded by sizedVariants; failed sizes stay here and are not retried
+        final Map<Integer, Future<Integer>> pendingSizes = new HashMap<>();
+        // Size frames run at while the one asked for is still being built (fixed-shape exports)
+        volatile int servingSize;
+        final int[] supportedSizes;
+        final List<ExecutionProviders.Provider> providers;
+        private int refs = 1; // the owner's reference, dropped on retire()
+
+        Model(Context ctx, OrtEnvironment env, DetectorModelRegistry.Tier tier,
+              List<ExecutionProviders.Provider> providers, FramePreprocessor.Layout layout,
+              boolean inGraphNms) throws OrtException {
+            this.tier = tier;
+            this.providers = providers;
+            this.requestedLayout = layout;
+            this.requestedNms = inGraphNms;
+            this.assetLayout = Util.assetExists(ctx, tier.asset(layout)) ? layout : FramePreprocessor.Layout.CHW_FLOAT;
+            this.assetNms = inGraphNms && Util.assetExists(ctx, tier.asset(assetLayout, true));
+            this.base = new Variant(ExecutionProviders.openSession(env,
+                    Util.mapAsset(ctx, tier.asset(assetLayout, assetNms)), OrtThreading.Role.DETECTION, providers));
+            if (base.fixedSize == 0) {
+                supportedSizes = SUPPORTED_INPUT_SIZES.clone();
+            } else {
+                List<Integer> sizes = new ArrayList<>();
+                for (int size : SUPPORTED_INPUT_SIZES) {
+                    if (size == base.fixedSize || Util.assetExists(ctx, tier.sizedAsset(assetLayout, assetNms, size))) sizes.add(size);
+                }
+                if (!sizes.contains(base.fixedSize)) sizes.add(base.fixedSize);
+                Collections.sort(sizes);
+                supportedSizes = new int[sizes.size()];
+                for (int i = 0; i < supportedSizes.length; i++) supportedSizes[i] = sizes.get(i);
+            }
+            servingSize = base.fixedSize;
+            Log.i(TAG, tier + ": input sizes " + Arrays.toString(supportedSizes)
+                    + (base.fixedSize == 0 ? " (dynamic export)" : " (per-size sessions)") + ", " + base.layout
+                    + (base.inGraphNms ? ", NMS in graph" : ""));
+        }
+
+        // Largest supported size not above the request or the tier's size (or the smallest one)
+        int snap(int requested) {
+            requested = Math.min(requested, tier.inputSize);
+            int chosen = supportedSizes[0];
+            for (int s : supportedSizes) {
+                if (s <= requested) chosen = s;
+            }
+            return chosen;
+        }
+
+        // The session for this size if it exists; never blocks on a build
+        @Nullable
+        Variant loaded(int size) {
+            if (base.fixedSize == 0 || base.fixedSize == size) return base;
+            synchronized (sizedVariants) {
+                return sizedVariants.get(size);
+            }
+        }
+
+        // Size to run a frame at: the requested one once its session exists, else the previous one
+        int serving(int requested) {
+            int wanted = snap(requested);
+            if (loaded(wanted) == null) return servingSize;
+            servingSize = wanted;
+            return wanted;
+        }
+
+        // Opens the session if missing, blocking: the loader's job; frames only ask for serving() sizes
+        Variant variantFor(Context ctx, OrtEnvironment env, int size) throws OrtException {
+            Variant v = loaded(size);
+            if (v != null) return v;
+            // Built outside the lock so frames looking up other sizes are not held up
+            v = new Variant(ExecutionProviders.openSession(env, Util.mapAsset(ctx, tier.sizedAsset(assetLayout, assetNms, size)),
+                    OrtThreading.Role.DETECTION, providers));
+            synchronized (sizedVariants) {
+                Variant raced = sizedVariants.get(size);
+                if (raced == null) {
+                    sizedVariants.put(size, v);
+                    return v;
+                }
+            }
+            v.close();
+            return loaded(size);
+        }
+
+        synchronized boolean acquire() {
+            if (refs <= 0) return false;
+            refs++;
+            return true;
+        }
+
+        void release() {
+            synchronized (this) {
+                if (--refs > 0) return;
+            }
+            closeSessions();
+        }
+
+        void retire() {
+            release();
+        }
+
+        private void closeSessions() {
+            try {
+                base.close();
+                synchronized (sizedVariants) {
+                    for (Variant v : sizedVariants.values()) v.close();
+                    sizedVariants.clear();
+                }
+                Log.i(TAG, tier + " closed");
+            } catch (OrtException e) {
+                Log.w(TAG, "Closing " + tier + " failed", e);
+            }
+        }
+    }
+
     private final OrtEnvironment env;
-    private final OrtSession session;
-    private final int inputW = 640, inputH = 640;
+    private final Context appCtx;
+    private final AtomicReference<Model> active = new AtomicReference<>();
+    // Heavy tier of the detection cascade; null when the cascade is off
+    private final AtomicReference<Model> refiner = new AtomicReference<>();
+    // Builds the next tier's sessions off the frame path
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "detector-loader");
+        t.setDaemon(true);
+        return t;
+    });
+    // Loader tasks publish into active / refiner under this lock, so none lands after close()
+    private final Object publishLock = new Object();
+    private boolean closed = false; // guarded by publishLock
+    // Provider order for sessions built from now on (next swapTier / enableCascade)
+    private volatile List<ExecutionProviders.Provider> providerPreference = ExecutionProviders.DEFAULT_PREFERENCE;
+    // Input layout for models loaded from now on; tiers without a uint8 export stay on floats
+    private volatile FramePreprocessor.Layout layoutPreference;
+    // Load _nms exports (final boxes out of the graph) for models loaded from now on, where shipped
+    private volatile boolean nmsPreference;
+    private volatile int inputSize = DEFAULT_INPUT_SIZE;
+    // Dynamic exports get a stride-32 rectangle matching the frame aspect (e.g. 480x640 for 3:4)
+    private volatile boolean aspectPreserving = true;
+    // Preprocessing done here splits its rows across these threads
+    private volatile RowBands rowBands = RowBands.serial();
     private final float confThresh = 0.25f, iouThresh = 0.45f;
-    private final String inputName;
+
+    // ----- Cascade -----
+    // Cheap-model candidates of hazard classes between this and confThresh ask the heavy model to look
+    private static final float CASCADE_LOW_CONF = 0.10f;
+    private static final long CASCADE_REFRESH_MS = 2000;
+    private static final int CASCADE_LOG_EVERY_N_FRAMES = 100;
+    private volatile boolean[] hazardClasses = new boolean[0];
+
+    // Class ids decoded at all (argmax, threshold, NMS); null = every class
+    private volatile int[] activeClasses = null;
+    private volatile long lastDecodeNanos = 0L;
+    private volatile long lastRefineMs = 0L;
+    private int cascadeFrames = 0, refinedUncertain = 0, refinedPeriodic = 0;
 
     public ObjectDetector(@NonNull Context ctx) throws OrtException {
-        env = OrtEnvironment.getEnvironment();
-        String modelPath = Util.cacheAsset(ctx, "yolov8m_compatible.onnx");
-        OrtSession.SessionOptions so = new OrtSession.SessionOptions();
-        session = env.createSession(modelPath, so);
-        inputName = session.getInputInfo().keySet().iterator().next();
+        this(ctx, DetectorModelRegistry.defaultTier(ctx));
+    }
+
+    public ObjectDetector(@NonNull Context ctx, DetectorModelRegistry.Tier tier) throws OrtException {
+        this(ctx, tier, FramePreprocessor.Layout.CHW_FLOAT);
+    }
+
+    /**
+     * With {@link FramePreprocessor.Layout#HWC_UINT8} the tier's {@code _u8} export is loaded if it
+     * is shipped: it takes packed RGB bytes and normalizes in-graph, so preprocessing writes a
+     * quarter of the bytes and does no float work. Otherwise the float export is used. Whether
+     * a non-uint8 export takes floats or halves (fp16) follows the type it declares.
+     */
+    public ObjectDetector(@NonNull Context ctx, DetectorModelRegistry.Tier tier,
+                          @NonNull FramePreprocessor.Layout layout) throws OrtException {
+        this(ctx, tier, layout, false);
+    }
+
+    /**
+     * With {@code inGraphNms} the tier's {@code _nms} export is loaded if it is shipped: score
+     * filtering and NMS run in the graph and only the final boxes come back, instead of every
+     * anchor being decoded here. Exports are recognized by their outputs, whatever their name.
+     */
+    public ObjectDetector(@NonNull Context ctx, DetectorModelRegistry.Tier tier,
+                          @NonNull FramePreprocessor.Layout layout, boolean inGraphNms) throws OrtException {
+        env = OrtThreading.environment();
+        appCtx = ctx.getApplicationContext();
+        layoutPreference = layout;
+        nmsPreference = inGraphNms;
+        OptimizedModelCache.configure(new File(appCtx.getCacheDir(), "ort"));
+        Model model = new Model(appCtx, env, tier, providerPreference, layout, inGraphNms);
+        inputSize = model.snap(tier.inputSize);
+        active.set(model);
+    }
+
+    public DetectorModelRegistry.Tier getTier() {
+        return active.get().tier;
+    }
+
+    /** Execution provider of the active model, for metrics (e.g. "XNNPACK(partial)"). */
+    public String getProvider() {
+        return active.get().base.provider;
+    }
+
+    /** Provider order for models loaded after this call; the current sessions are kept. */
+    public void setProviderPreference(@NonNull List<ExecutionProviders.Provider> preference) {
+        providerPreference = Collections.unmodifiableList(new ArrayList<>(preference));
+    }
+
+    /**
+     * Input layout for models loaded after this call. {@link #swapTier} to the current tier
+     * reloads it if the layout (or in-graph NMS) asked for changed.
+     */
+    public void setInputLayout(@NonNull FramePreprocessor.Layout layout) {
+        layoutPreference = layout;
+    }
+
+    /** In-graph NMS for models loaded after this call; like {@link #setInputLayout}. */
+    public void setInGraphNms(boolean enabled) {
+        nmsPreference = enabled;
+    }
+
+    /** Whether the active model returns final boxes (NMS in the graph). */
+    public boolean hasInGraphNms() {
+        return active.get().base.inGraphNms;
+    }
+
+    /** Input layout of the active model: what it was asked for, if the tier has that export. */
+    public FramePreprocessor.Layout getInputLayout() {
+        return active.get().base.layout;
+    }
+
+    /**
+     * Switch to another model tier without stalling frames: the new sessions are built on a
+     * background thread (including the one for the current input size), then swapped in
+     * atomically. Frames already running keep the old model until they finish; it is closed
+     * afterwards. The returned future completes with the active tier, or fails if the new
+     * tier could not be loaded (the old one stays active).
+     */
+    public Future<DetectorModelRegistry.Tier> swapTier(DetectorModelRegistry.Tier tier) {
+        return loader.submit(() -> {
+            Model current = active.get();
+            FramePreprocessor.Layout layout = layoutPreference;
+            boolean nms = nmsPreference;
+            if (current != null && current.tier == tier && current.requestedLayout == layout
+                    && current.requestedNms == nms) return tier;
+            long start = System.nanoTime();
+            Model next = new Model(appCtx, env, tier, providerPreference, layout, nms);
+            int size = next.snap(inputSize);
+            next.variantFor(appCtx, env, size);
+            next.servingSize = size;
+            Model old = publish(active, next);
+            Log.i(TAG, String.format(Locale.US, "Swapped %s -> %s in %.0f ms",
+                    old == null ? "none" : old.tier, tier, (System.nanoTime() - start) / 1e6));
+            if (old != null) old.retire();
+            return tier;
+        });
+    }
+
+    /**
+     * Turn on the two-level cascade: the active (cheap) tier runs every frame, {@code heavy} only
+     * when the cheap one sees low-confidence hazard candidates, or every
+     * {@value #CASCADE_REFRESH_MS} ms. Both result sets go through the same NMS.
+     * The heavy model is built in the background; until it is ready frames use the cheap one only.
+     */
+    public Future<DetectorModelRegistry.Tier> enableCascade(DetectorModelRegistry.Tier heavy) {
+        return loader.submit(() -> {
+            Model current = refiner.get();
+            FramePreprocessor.Layout layout = layoutPreference;
+            boolean nms = nmsPreference;
+            if (current != null && current.tier == heavy && current.requestedLayout == layout
+                    && current.requestedNms == nms) return heavy;
+            Model next = new Model(appCtx, env, heavy, providerPreference, layout, nms);
+            int size = next.snap(inputSize);
+            next.variantFor(appCtx, env, size);
+            next.servingSize = size;
+            Model old = publish(refiner, next);
+            if (old != null) old.retire();
+            Log.i(TAG, "Cascade enabled: " + getTier() + " every frame, " + heavy + " on demand");
+            return heavy;
+        });
+    }
+
+    // Swap next in and return the model it replaces; a model built while closing is retired instead
+    private Model publish(AtomicReference<Model> slot, Model next) {
+        synchronized (publishLock) {
+            if (!closed) return slot.getAndSet(next);
+        }
+        next.retire();
+        throw new IllegalStateException("ObjectDetector is closed");
+    }
+
+    public void disableCascade() {
+        Model old = refiner.getAndSet(null);
+        if (old != null) old.retire();
+    }
+
+    /** Class ids the cascade treats as hazards (e.g. the TTSWarning danger list). */
+    public void setHazardClasses(Collection<Integer> classIds) {
+        int max = -1;
+        for (int c : classIds) max = Math.max(max, c);
+        boolean[] mask = new boolean[max + 1];
+        for (int c : classIds) if (c >= 0) mask[c] = true;
+        hazardClasses = mask;
+    }
+
+    /**
+     * Restrict decoding to a class subset: the argmax, threshold and NMS only see these ids, so
+     * the per-anchor cost drops from classCount to classIds.size(). Null or empty = all classes.
+     */
+    public void setActiveClasses(@Nullable Collection<Integer> classIds) {
+        if (classIds == null || classIds.isEmpty()) {
+            activeClasses = null;
+            return;
+        }
+        int[] ids = new int[classIds.size()];
+        int n = 0;
+        for (int c : classIds) if (c >= 0) ids[n++] = c;
+        activeClasses = Arrays.copyOf(ids, n);
+    }
+
+    /** Time spent decoding the output of the last model run (benchmarks). */
+    long getLastDecodeNanos() {
+        return lastDecodeNanos;
+    }
+
+    private boolean isHazardClass(int cls) {
+        boolean[] mask = hazardClasses;
+        return cls >= 0 && cls < mask.length && mask[cls];
+    }
+
+    /**
+     * Select the network input size: the largest size the active tier supports that is not above
+     * {@code size} nor the tier's own input size (or its smallest one). Letterboxing and decoding follow the active size.
+     * Fixed-shape exports need a session per size: a missing one is built on the loader thread
+     * while frames keep running at the previous size. The returned future completes with the
+     * size frames run at once that is settled (the previous one if the build failed).
+     */
+    public Future<Integer> setInputSize(int size) {
+        inputSize = size;
+        Model model = acquireModel();
+        try {
+            int chosen = model.snap(size);
+            if (model.loaded(chosen) != null) return CompletableFuture.completedFuture(chosen);
+            return loadVariant(model, chosen);
+        } finally {
+            model.release();
+        }
+    }
+
+    /** Size frames run at now; may lag {@link #setInputSize} while a session is being built. */
+    public int getInputSize() {
+        return active.get().serving(inputSize);
+    }
+
+    // Size for this frame; starts the build of the requested size's session if it is missing
+    private int frameSize(Model model) {
+        int requested = inputSize;
+        int size = model.serving(requested);
+        int wanted = model.snap(requested);
+        if (size != wanted) loadVariant(model, wanted);
+        return size;
+    }
+
+    private Future<Integer> loadVariant(Model model, int size) {
+        synchronized (model.sizedVariants) {
+            Future<Integer> pending = model.pendingSizes.get(size);
+            if (pending != null) return pending;
+            if (!model.acquire()) return CompletableFuture.completedFuture(model.servingSize); // retired
+            try {
+                pending = loader.submit(() -> {
+                    try {
+                        long start = System.nanoTime();
+                        model.variantFor(appCtx, env, size);
+                        Log.i(TAG, String.format(Locale.US, "%s: %d session ready in %.0f ms",
+                                model.tier, size, (System.nanoTime() - start) / 1e6));
+                        return size;
+                    } catch (OrtException | RuntimeException e) {
+                        Log.w(TAG, "Cannot switch detector to " + size + ", staying at " + model.servingSize, e);
+                        return model.servingSize;
+                    } finally {
+                        model.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) { // closed
+                model.release();
+                return CompletableFuture.completedFuture(model.servingSize);
+            }
+            model.pendingSizes.put(size, pending);
+            return pending;
+        }
+    }
+
+    public int[] getSupportedInputSizes() {
+        return active.get().supportedSizes.clone();
+    }
+
+    /** Only takes effect with dynamic-shape exports; fixed-size ones always letterbox to a square. */
+    public void setAspectPreserving(boolean enabled) {
+        aspectPreserving = enabled;
+    }
+
+    /** Threads for preprocessing done here (without a prepared input); serial by default. */
+    public void setRowBands(@NonNull RowBands bands) {
+        rowBands = bands;
+    }
+
+    /**
+     * One inference on a blank frame at the current input size, so ORT's lazy first-run work
+     * (arena growth, kernel and weight-packing setup) happens at startup, not on the first camera frame.
+     */
+    public void warmUp() throws OrtException {
+        int size = getInputSize();
+        long start = System.nanoTime();
+        detect(new int[size * size], size, size);
+        Log.i(TAG, String.format(Locale.US, "Warm-up at %d: %.0f ms", size, (System.nanoTime() - start) / 1e6));
+    }
+
+    private Model acquireModel() {
+        while (true) {
+            Model m = active.get();
+            if (m == null) throw new IllegalStateException("ObjectDetector is closed");
+            if (m.acquire()) return m;
+            // retired between get() and acquire(): the replacement is already published
+        }
     }
 
     public List<Detection> detect(int[] argb, int srcW, int srcH) throws OrtException {
-        Letterbox lb = letterbox(argb, srcW, srcH);
-        float[] chw = toCHW(lb.rgb, inputW, inputH);
-        OnnxTensor input = OnnxTensor.createTensor(env, FloatBuffer.wrap(chw),
-                new long[]{1,3,inputH,inputW});
+        return detect(argb, srcW, srcH, FrameArena.unpooled());
+    }
 
-        try (OrtSession.Result out = session.run(Collections.singletonMap(inputName, input))) {
-            OnnxValue ov = out.get(0);
-            return parse(ov, lb.scale, lb.padX, lb.padY, srcW, srcH);
+    /** Scratch buffers (input and output tensors) come from and go back to {@code arena}. */
+    public List<Detection> detect(int[] argb, int srcW, int srcH, FrameArena arena) throws OrtException {
+        return detect(argb, srcW, srcH, arena, null);
+    }
+
+    /**
+     * With the input already built by a shared {@link FramePreprocessor} pass. It is used when it
+     * matches what the model wants (see {@link #inputTarget}); otherwise, e.g. when the input size
+     * changed meanwhile or the cascade's heavy model wants another size, the input is rebuilt
+     * from {@code argb} with the same blur. {@code prepared} stays the caller's to release.
+     */
+    public List<Detection> detect(int[] argb, int srcW, int srcH, FrameArena arena,
+                                  @Nullable FramePreprocessor.Input prepared) throws OrtException {
+        return detect(() -> argb, srcW, srcH, arena, prepared);
+    }
+
+    /** As above, with the pixels only converted if {@code prepared} has to be rebuilt. */
+    public List<Detection> detect(FramePreprocessor.Frame frame, int srcW, int srcH, FrameArena arena,
+                                  @Nullable FramePreprocessor.Input prepared) throws OrtException {
+        Model model = acquireModel();
+        Model heavy = refiner.get();
+        if (heavy != null && !heavy.acquire()) heavy = null; // being swapped out: skip refinement
+        try {
+            if (heavy == null) return nms(runModel(model, frame, srcW, srcH, confThresh, arena, prepared), iouThresh);
+            return detectCascade(model, heavy, frame, srcW, srcH, arena, prepared);
+        } finally {
+            model.release();
+            if (heavy != null) heavy.release();
         }
     }
 
-    // --- preprocessing ---
-    private static class Letterbox { int[] rgb; float scale, padX, padY; }
-    private Letterbox letterbox(int[] src, int w, int h) {
-        float r = Math.min(inputW/(float)w, inputH/(float)h);
-        int nw = (int)(w*r), nh = (int)(h*r);
-        int dx = (inputW - nw)/2, dy = (inputH - nh)/2;
+    private List<Detection> detectCascade(Model cheap, Model heavy, FramePreprocessor.Frame frame, int srcW, int srcH,
+                                          FrameArena arena, @Nullable FramePreprocessor.Input prepared)
+            throws OrtException {
+        List<Detection> candidates = runModel(cheap, frame, srcW, srcH, CASCADE_LOW_CONF, arena, prepared);
+        List<Detection> merged = new ArrayList<>(candidates.size());
+        boolean uncertainHazard = false;
+        for (Detection d : candidates) {
+            if (d.score >= confThresh) merged.add(d);
+            else if (isHazardClass(d.cls)) uncertainHazard = true;
+        }
 
-        int[] dst = new int[inputW*inputH]; // zero-padded
-        for (int y=0; y<nh; y++) {
-            int sy = Math.min((int)(y/r), h-1);
-            for (int x=0; x<nw; x++) {
-                int sx = Math.min((int)(x/r), w-1);
-                dst[(y+dy)*inputW + (x+dx)] = src[sy*w + sx];
+        long now = SystemClock.elapsedRealtime();
+        boolean periodic = now - lastRefineMs >= CASCADE_REFRESH_MS;
+        if (uncertainHazard || periodic) {
+            lastRefineMs = now;
+            merged.addAll(runModel(heavy, frame, srcW, srcH, confThresh, arena, prepared));
+        }
+
+        synchronized (this) {
+            cascadeFrames++;
+            if (uncertainHazard) refinedUncertain++;
+            else if (periodic) refinedPeriodic++;
+            if (cascadeFrames % CASCADE_LOG_EVERY_N_FRAMES == 0) {
+                Log.i(TAG, String.format(Locale.US,
+                        "Cascade %s/%s: %d frames, heavy ran on %.0f%% (uncertain hazard %d, periodic %d)",
+                        cheap.tier, heavy.tier, cascadeFrames,
+                        100f * (refinedUncertain + refinedPeriodic) / cascadeFrames,
+                        refinedUncertain, refinedPeriodic));
             }
         }
-        Letterbox lb = new Letterbox();
-        lb.rgb = dst; lb.scale = r; lb.padX = dx; lb.padY = dy;
-        return lb;
+        return nms(merged, iouThresh);
+    }
+
+    /**
+     * Input the active model wants for a srcW x srcH frame at the current input size: letterboxed
+     * to its (fixed, or stride-aligned aspect-preserving) size, scaled to [0,1] (or left as bytes
+     * for uint8 exports), after a box blur of {@code blurRadius} (0 = none).
+     */
+    public FramePreprocessor.Target inputTarget(int srcW, int srcH, int blurRadius) throws OrtException {
+        Model model = acquireModel();
+        try {
+            return inputTarget(model, frameSize(model), srcW, srcH, blurRadius);
+        } finally {
+            model.release();
+        }
     }
 
-    private float[] toCHW(int[] rgb, int w, int h) {
-        int size = w*h; float[] out = new float[3*size];
-        int rI=0, gI=size, bI=2*size;
-        for (int i=0;i<size;i++){
-            int p = rgb[i];
-            out[rI++] = ((p>>16)&0xFF)/255f;
-            out[gI++] = ((p>>8)&0xFF)/255f;
-            out[bI++] = (p&0xFF)/255f;
+    private FramePreprocessor.Target inputTarget(Model model, int size, int srcW, int srcH, int blurRadius)
+            throws OrtException {
+        Variant variant = model.variantFor(appCtx, env, size);
+        int inputW = size, inputH = size;
+        if (variant.fixedSize == 0 && aspectPreserving) {
+            // Longest side = size, other side rounded up to the stride: padding < 32 px
+            float r = size / (float) Math.max(srcW, srcH);
+            inputW = roundUpToStride(srcW * r);
+            inputH = roundUpToStride(srcH * r);
         }
-        return out;
+        // Letterbox: fit inside, center, zero border
+        float r = Math.min(inputW/(float)srcW, inputH/(float)srcH);
+        int nw = (int)(srcW*r), nh = (int)(srcH*r);
+        return new FramePreprocessor.Target(inputW, inputH, nw, nh, (inputW - nw)/2, (inputH - nh)/2,
+                r, r, FramePreprocessor.Normalization.UNIT, blurRadius, variant.layout);
     }
 
-    // --- parse YOLOv8 output + NMS ---
-    private List<Detection> parse(OnnxValue val, float scale, float padX, float padY, int imgW, int imgH) throws OrtException {
-        OnnxTensor t = (OnnxTensor) val;
-        long[] shape = t.getInfo().getShape(); // expect [1,84,N] or [1,N,84]
-        float[] flat = t.getFloatBuffer().array();
+    // Candidates above threshold in frame coordinates, before NMS
+    private List<Detection> runModel(Model model, FramePreprocessor.Frame frame, int srcW, int srcH, float threshold,
+                                     FrameArena arena, @Nullable FramePreprocessor.Input prepared)
+            throws OrtException {
+        final int size = frameSize(model); // snapshot: size may change mid-frame
+        Variant variant = model.variantFor(appCtx, env, size);
+        int blurRadius = prepared != null ? prepared.target.blurRadius : 0;
+        FramePreprocessor.Target target = inputTarget(model, size, srcW, srcH, blurRadius);
+        FramePreprocessor.Input prep = prepared != null && prepared.target.equals(target)
+                ? prepared
+                : FramePreprocessor.run(frame.argb(), srcW, srcH, target, arena, rowBands);
+        int inputW = target.modelW, inputH = target.modelH;
 
+        long[] outShape = variant.pinOutput ? variant.outputShape(inputW, inputH) : null;
+        int outLen = outShape != null ? (int) (outShape[1] * outShape[2]) : 0;
+        FloatBuffer outBuf = outShape != null && !variant.halfOutput ? arena.directFloats(outLen) : null;
+        ShortBuffer outHalf = outShape != null && variant.halfOutput ? arena.directShorts(outLen) : null;
+        float[] flat = null;
+        try (OnnxTensor input = prep.hwc != null
+                ? OnnxTensor.createTensor(env, prep.hwc, new long[]{1,inputH,inputW,3}, OnnxJavaType.UINT8)
+                : prep.chwHalf != null
+                ? OnnxTensor.createTensor(env, prep.chwHalf, new long[]{1,3,inputH,inputW}, OnnxJavaType.FLOAT16)
+                : OnnxTensor.createTensor(env, prep.chw, new long[]{1,3,inputH,inputW})) {
+            if (variant.inGraphNms) return runWithNms(variant, input, threshold, target, srcW, srcH);
+            if (outShape != null) {
+                try (OnnxTensor output = outHalf != null
+                             ? OnnxTensor.createTensor(env, outHalf, outShape, OnnxJavaType.FLOAT16)
+                             : OnnxTensor.createTensor(env, outBuf, outShape);
+                     OrtSession.Result ignored = variant.session.run(
+                             Collections.singletonMap(variant.inputName, input),
+                             Collections.singletonMap(variant.outputName, output))) {
+                    flat = arena.floats(outLen);
+                    if (outHalf != null) {
+                        outHalf.rewind();
+                        HalfFloat.toFloats(outHalf, flat, outLen);
+                    } else {
+                        outBuf.rewind();
+                        outBuf.get(flat);
+                    }
+                } catch (OrtException e) {
+                    variant.pinOutput = false;
+                    Log.w(TAG, "Pinned output rejected on " + variant.provider + ", copying outputs from now on", e);
+                }
+            }
+            if (flat == null) {
+                try (OrtSession.Result out = variant.session.run(Collections.singletonMap(variant.inputName, input))) {
+                    OnnxTensor t = (OnnxTensor) out.get(0);
+                    outShape = t.getInfo().getShape();
+                    if (t.getInfo().type == OnnxJavaType.FLOAT16) {
+                        ShortBuffer halves = t.getShortBuffer();
+                        flat = arena.floats(halves.remaining());
+                        HalfFloat.toFloats(halves, flat, flat.length);
+                    } else {
+                        flat = t.getFloatBuffer().array();
+                    }
+                }
+            }
+        } finally {
+            if (prep != prepared) prep.release(arena);
+            arena.release(outBuf);
+            arena.release(outHalf);
+        }
+
+        long decodeStart = System.nanoTime();
+        List<Detection> dets = parse(flat, outShape, model.tier.classCount, threshold,
+                target.scaleX, target.padX, target.padY, srcW, srcH);
+        lastDecodeNanos = System.nanoTime() - decodeStart;
+        arena.release(flat);
+        return dets;
+    }
+
+    /**
+     * Exports with NMS in the graph: the thresholds and the active classes go in, final boxes
+     * (centre format, input pixels) come out and only need mapping back to the frame.
+     */
+    private List<Detection> runWithNms(Variant variant, OnnxTensor input, float threshold,
+                                       FramePreprocessor.Target target, int srcW, int srcH) throws OrtException {
+        float[] mask = new float[variant.maskClasses];
+        int[] active = activeClasses;
+        if (active == null) {
+            Arrays.fill(mask, 1f);
+        } else {
+            for (int c : active) if (c < mask.length) mask[c] = 1f;
+        }
+        Map<String, OnnxTensor> in = new HashMap<>();
+        in.put(variant.inputName, input);
+        try {
+            in.put(NMS_SCORE_THRESHOLD, OnnxTensor.createTensor(env, FloatBuffer.wrap(new float[]{threshold}), new long[]{1}));
+            in.put(NMS_IOU_THRESHOLD, OnnxTensor.createTensor(env, FloatBuffer.wrap(new float[]{iouThresh}), new long[]{1}));
+            in.put(NMS_MAX_DETECTIONS, OnnxTensor.createTensor(env, LongBuffer.wrap(new long[]{NMS_MAX_PER_CLASS}), new long[]{1}));
+            in.put(NMS_CLASS_MASK, OnnxTensor.createTensor(env, FloatBuffer.wrap(mask), new long[]{mask.length}));
+            try (OrtSession.Result out = variant.session.run(in)) {
+                long decodeStart = System.nanoTime();
+                float[] boxes = ((OnnxTensor) out.get(NMS_BOXES).get()).getFloatBuffer().array();
+                float[] scores = ((OnnxTensor) out.get(NMS_SCORES).get()).getFloatBuffer().array();
+                long[] classes = ((OnnxTensor) out.get(NMS_CLASSES).get()).getLongBuffer().array();
+                float scale = target.scaleX, padX = target.padX, padY = target.padY;
+                List<Detection> dets = new ArrayList<>(scores.length);
+                for (int k = 0; k < scores.length; k++) {
+                    float x = boxes[4*k], y = boxes[4*k + 1], w = boxes[4*k + 2], h = boxes[4*k + 3];
+                    float x1 = clamp((x - w/2f - padX)/scale, 0, srcW);
+                    float y1 = clamp((y - h/2f - padY)/scale, 0, srcH);
+                    float x2 = clamp((x + w/2f - padX)/scale, 0, srcW);
+                    float y2 = clamp((y + h/2f - padY)/scale, 0, srcH);
+                    dets.add(new Detection(x1, y1, x2, y2, scores[k], (int) classes[k]));
+                }
+                lastDecodeNanos = System.nanoTime() - decodeStart;
+                return dets;
+            }
+        } finally {
+            for (Map.Entry<String, OnnxTensor> e : in.entrySet()) {
+                if (e.getValue() != input) e.getValue().close();
+            }
+        }
+    }
+
+    private static boolean isNmsInput(String name) {
+        return name.equals(NMS_SCORE_THRESHOLD) || name.equals(NMS_IOU_THRESHOLD)
+                || name.equals(NMS_MAX_DETECTIONS) || name.equals(NMS_CLASS_MASK);
+    }
+
+    // --- parse YOLOv8 output (NMS is done by the caller) ---
+    // shape: [1,4+C,N] or [1,N,4+C]
+    private List<Detection> parse(float[] flat, long[] shape, int classCount, float threshold, float scale, float padX, float padY, int imgW, int imgH) {
         int dim1 = (int)shape[1], dim2 = (int)shape[2];
-        boolean colsAreProps = (dim1==84); // [1,84,N]
+        boolean colsAreProps = (dim1==4+classCount); // [1,4+C,N]
         int props = colsAreProps ? dim1 : dim2;
         int clsCount = props - 4;
         int N = colsAreProps ? dim2 : dim1;
+        int[] classes = decodeClasses(activeClasses, clsCount);
 
-        List<Detection> dets = new ArrayList<>(N);
+        List<Detection> dets = new ArrayList<>(); // few anchors pass the threshold
         if (colsAreProps) {
             int stride = N; // properties are stored in separate contiguous rows
             for (int i=0;i<N;i++){
@@ -106,11 +793,11 @@ public class ObjectDetector implements AutoCloseable {
                 float h = flat[3*stride + i];
 
                 int bestC = -1; float bestS = 0f;
-                for (int c=0;c<clsCount;c++){
+                for (int c : classes){
                     float s = flat[(4+c)*stride + i];
                     if (s>bestS){ bestS = s; bestC = c; }
                 }
-                if (bestS < confThresh) continue;
+                if (bestS < threshold) continue;
 
                 float bx = x - w/2f, by = y - h/2f, ex = x + w/2f, ey = y + h/2f;
                 float x1 = clamp((bx - padX)/scale, 0, imgW);
@@ -126,11 +813,11 @@ public class ObjectDetector implements AutoCloseable {
                         w = flat[base+2], h = flat[base+3];
 
                 int bestC = -1; float bestS = 0f;
-                for (int c=0;c<clsCount;c++){
+                for (int c : classes){
                     float s = flat[base+4+c];
                     if (s>bestS){ bestS = s; bestC = c; }
                 }
-                if (bestS < confThresh) continue;
+                if (bestS < threshold) continue;
 
                 float bx = x - w/2f, by = y - h/2f, ex = x + w/2f, ey = y + h/2f;
                 float x1 = clamp((bx - padX)/scale, 0, imgW);
@@ -140,7 +827,25 @@ public class ObjectDetector implements AutoCloseable {
                 dets.add(new Detection(x1,y1,x2,y2,bestS,bestC));
             }
         }
-        return nms(dets, iouThresh);
+        return dets;
+    }
+
+    // Active ids that exist in this model's output, or every class when no mask is set
+    private static int[] decodeClasses(@Nullable int[] active, int clsCount) {
+        if (active == null) {
+            int[] all = new int[clsCount];
+            for (int c = 0; c < clsCount; c++) all[c] = c;
+            return all;
+        }
+        int[] ids = new int[active.length];
+        int n = 0;
+        for (int c : active) if (c < clsCount) ids[n++] = c;
+        return n == ids.length ? ids : Arrays.copyOf(ids, n);
+    }
+
+    private static int roundUpToStride(float v) {
+        // small epsilon so 640.00006 (float noise from size/longest*longest) stays 640
+        return Math.max(STRIDE, (int) Math.ceil(v / STRIDE - 1e-3f) * STRIDE);
     }
 
     private static float clamp(float v, int lo, int hi){ return Math.max(lo, Math.min(hi, v)); }
@@ -168,7 +873,13 @@ public class ObjectDetector implements AutoCloseable {
     }
 
     @Override public void close() throws Exception {
-        session.close();
+        synchronized (publishLock) {
+            closed = true;
+        }
+        loader.shutdownNow();
+        Model model = active.getAndSet(null);
+        if (model != null) model.retire();
+        disableCascade();
     }
 
     // Utility to read asset fully
@@ -182,20 +893,49 @@ public class ObjectDetector implements AutoCloseable {
             } catch (Exception e){ throw new RuntimeException(e); }
         }
 
+        static boolean assetExists(Context ctx, String assetName){
+            try (InputStream ignored = ctx.getAssets().open(assetName)) {
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        static ModelSource mapAsset(Context ctx, String assetName){
+            try {
+                return ModelSource.ofAsset(ctx, assetName);
+            } catch (java.io.IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static ModelStore store;
+
+        static synchronized ModelStore store(Context ctx){
+            if (store == null) {
+                try {
+                    store = new ModelStore(new File(ctx.getApplicationContext().getFilesDir(), "model_store"));
+                } catch (java.io.IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return store;
+        }
+
+        // Copy of a (compressed) asset in the model store; re-copied when the APK changes
         static String cacheAsset(Context ctx, String assetName){
-            File dir = new File(ctx.getFilesDir(), "models");
-            if (!dir.exists()) dir.mkdirs();
-            File out = new File(dir, assetName);
-            if (out.exists() && out.length() > 0) return out.getAbsolutePath();
-            try (InputStream is = ctx.getAssets().open(assetName);
-                 FileOutputStream fos = new FileOutputStream(out)) {
-                byte[] buf = new byte[1<<16]; int r;
-                while ((r = is.read(buf)) != -1) fos.write(buf, 0, r);
-                fos.flush();
-                return out.getAbsolutePath();
+            ModelStore s = store(ctx);
+            String sourceId = "asset:" + new File(ctx.getApplicationInfo().sourceDir).lastModified();
+            File stored = s.get(assetName, sourceId);
+            if (stored != null) return stored.getAbsolutePath();
+            try (InputStream is = ctx.getAssets().open(assetName)) {
+                stored = s.install(assetName, sourceId, is, null);
             } catch (Exception e){
                 throw new RuntimeException(e);
             }
+            // Plain copy left by older versions
+            new File(new File(ctx.getFilesDir(), "models"), assetName).delete();
+            return stored.getAbsolutePath();
         }
     }
 }
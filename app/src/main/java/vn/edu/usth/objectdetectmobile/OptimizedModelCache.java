@@ -0,0 +1,167 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * Graph-optimized copies of the models, so ORT does not redo constant folding and fusions on
+ * every launch. The first load writes the optimized graph via setOptimizedModelFilePath; later
+ * loads open that file instead. Files are keyed by model SHA-256, ORT version and the options
+ * the graph was optimized with: when any of them changes the old file is deleted and a new one
+ * written. One model is optimized at a time; other models open meanwhile.
+ */
+public final class OptimizedModelCache {
+    private static final String TAG = "OptimizedModelCache";
+
+    // BASIC rewrites (constant folding, redundant node removal) run before partitioning and are
+    // the same for every EP. EXTENDED and up fuse into CPU-EP contrib ops (FusedConv, ...) that
+    // XNNPACK/NNAPI would then be handed. Sessions apply their own levels on top at load time.
+    private static final OrtSession.SessionOptions.OptLevel OPT_LEVEL =
+            OrtSession.SessionOptions.OptLevel.BASIC_OPT;
+    // The optimizing session's options (threads and memory per role, like any session)
+    private static final ExecutionProviders.Provider OPTIMIZED_WITH = ExecutionProviders.Provider.CPU;
+    private static final String FORMAT_VERSION = "1";
+    private static final String FINGERPRINTS = "fingerprints.properties";
+
+    private static File dir;
+    // Per-model locks, so a first-launch optimization does not hold up other models
+    private static final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    // FINGERPRINTS of dir, read on first need and kept; null until then
+    private static Properties fingerprints;
+
+    private OptimizedModelCache() {}
+
+    /** Where optimized models go (usually cacheDir/ort). Until set, models load unoptimized. */
+    public static synchronized void configure(@NonNull File directory) {
+        if (!directory.equals(dir)) fingerprints = null;
+        dir = directory;
+    }
+
+    /**
+     * Source to open instead of {@code model}: the (mapped) optimized copy, written now if
+     * missing or stale. Falls back to {@code model} if the cache is off or cannot be written.
+     */
+    public static ModelSource resolve(@NonNull OrtEnvironment env, @NonNull ModelSource model,
+                                      @NonNull OrtThreading.Role role) {
+        File cacheDir;
+        synchronized (OptimizedModelCache.class) {
+            cacheDir = dir;
+        }
+        if (cacheDir == null || model.isOrtFormat()) return model;
+        String base = baseName(model.name);
+        synchronized (locks.computeIfAbsent(base, k -> new Object())) {
+            return resolve(env, model, role, cacheDir, base);
+        }
+    }
+
+    private static ModelSource resolve(OrtEnvironment env, ModelSource model, OrtThreading.Role role,
+                                       File cacheDir, String base) {
+        File tmp = null;
+        try {
+            if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) throw new IOException("Cannot create " + cacheDir);
+            String key = key(sha256Of(model, cacheDir), env.getVersion());
+            File optimized = new File(cacheDir, base + "." + key + ".onnx");
+            if (optimized.isFile() && optimized.length() > 0) {
+                return ModelSource.ofFile(optimized).withOrigin("optimized cache hit");
+            }
+
+            removeStale(cacheDir, base, optimized);
+            tmp = new File(cacheDir, optimized.getName() + ".tmp");
+            long start = System.nanoTime();
+            try (OrtSession.SessionOptions opts = ExecutionProviders.options(OPTIMIZED_WITH, false, role, false, null)) {
+                opts.setOptimizationLevel(OPT_LEVEL);
+                opts.setOptimizedModelFilePath(tmp.getAbsolutePath());
+                env.createSession(model.bytes(), opts).close();
+            }
+            if (!tmp.isFile() || !tmp.renameTo(optimized)) {
+                throw new IOException("ORT did not write " + tmp);
+            }
+            Log.i(TAG, String.format(Locale.US, "%s: optimized graph written in %.0f ms",
+                    model.name, (System.nanoTime() - start) / 1e6));
+            return ModelSource.ofFile(optimized).withOrigin("optimized cache written");
+        } catch (IOException | OrtException | RuntimeException e) {
+            Log.w(TAG, model.name + ": optimization cache unavailable, loading raw model", e);
+            if (tmp != null) tmp.delete();
+            return model;
+        }
+    }
+
+    static String key(String modelSha256, String ortVersion) throws IOException {
+        String material = modelSha256 + "|" + ortVersion + "|" + OPTIMIZED_WITH + "|" + OPT_LEVEL
+                + "|" + FORMAT_VERSION;
+        return ModelStore.hex(ModelStore.newDigest().digest(material.getBytes("UTF-8"))).substring(0, 16);
+    }
+
+    private static void removeStale(File cacheDir, String base, File keep) {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith(base + ".") && !f.equals(keep) && f.delete()) {
+                Log.i(TAG, "Removed stale " + name);
+            }
+        }
+    }
+
+    // SHA-256 of the model, remembered per identity (path, length, mtime) so warm launches skip the read
+    private static String sha256Of(ModelSource model, File cacheDir) throws IOException {
+        if (model.sha256 != null) return model.sha256; // store-backed: hashed when installed
+        File stamps = new File(cacheDir, FINGERPRINTS);
+        synchronized (OptimizedModelCache.class) {
+            if (fingerprints == null) {
+                Properties loaded = new Properties();
+                if (stamps.isFile()) {
+                    try (InputStream in = new FileInputStream(stamps)) {
+                        loaded.load(in);
+                    }
+                }
+                fingerprints = loaded;
+            }
+            String hash = fingerprints.getProperty(model.identity);
+            if (hash != null) return hash;
+        }
+
+        // Hashed outside the class lock: other models resolve meanwhile
+        MessageDigest md = ModelStore.newDigest();
+        md.update(model.bytes());
+        String hash = ModelStore.hex(md.digest());
+        synchronized (OptimizedModelCache.class) {
+            if (fingerprints == null) return hash; // cleared meanwhile
+            fingerprints.setProperty(model.identity, hash);
+            try (OutputStream out = new FileOutputStream(stamps)) {
+                fingerprints.store(out, null);
+            }
+        }
+        return hash;
+    }
+
+    private static String baseName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    /** Drop every optimized model (e.g. to measure a cold start). */
+    public static synchronized void clear() {
+        fingerprints = null;
+        if (dir == null) return;
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) f.delete();
+    }
+}
@@ -0,0 +1,101 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.os.Debug;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * ORT memory settings per model role.
+ * <p>
+ * The detector runs every frame at a handful of fixed shapes, so it keeps its CPU arena and
+ * memory-pattern plans. Depth runs every few hundred ms at a size the latency controller keeps
+ * changing: memory patterns (planned per shape) only add allocations there, and the arena is
+ * shrunk after each run. Idle memory with the kept depth session is then close to what the
+ * old session-per-call approach left behind.
+ */
+public final class OrtMemory {
+
+    // ORT run config key: return fully free arena chunks to the system after the run
+    private static final String ARENA_SHRINKAGE = "memory.enable_memory_arena_shrinkage";
+    private static final String CPU_DEVICE = "cpu:0";
+
+    public static final class Config {
+        public final boolean cpuArena;
+        public final boolean memPattern;
+        // Only meaningful with cpuArena
+        public final boolean shrinkArenaAfterRun;
+
+        public Config(boolean cpuArena, boolean memPattern, boolean shrinkArenaAfterRun) {
+            this.cpuArena = cpuArena;
+            this.memPattern = memPattern;
+            this.shrinkArenaAfterRun = shrinkArenaAfterRun;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "arena=%b pattern=%b shrink=%b",
+                    cpuArena, memPattern, shrinkArenaAfterRun);
+        }
+    }
+
+    private static final Map<OrtThreading.Role, Config> configs = new EnumMap<>(OrtThreading.Role.class);
+
+    static {
+        configs.put(OrtThreading.Role.DETECTION, new Config(true, true, false));
+        configs.put(OrtThreading.Role.DEPTH, new Config(true, false, true));
+    }
+
+    private OrtMemory() {}
+
+    /** Memory settings for sessions of {@code role} opened after this call. */
+    public static synchronized void configure(@NonNull OrtThreading.Role role, @NonNull Config config) {
+        configs.put(role, config);
+    }
+
+    public static synchronized Config config(@NonNull OrtThreading.Role role) {
+        return configs.get(role);
+    }
+
+    /** Memory settings for a session of the given role. */
+    static void apply(OrtThreading.Role role, OrtSession.SessionOptions opts) throws OrtException {
+        Config c = config(role);
+        opts.setCPUArenaAllocator(c.cpuArena);
+        opts.setMemoryPatternOptimization(c.memPattern);
+    }
+
+    /**
+     * Run options for a session of the given role, or null when the defaults apply.
+     * Reusable across runs; the caller closes them with the session.
+     */
+    @Nullable
+    static OrtSession.RunOptions runOptions(OrtThreading.Role role) throws OrtException {
+        Config c = config(role);
+        if (!c.cpuArena || !c.shrinkArenaAfterRun) return null;
+        OrtSession.RunOptions ro = new OrtSession.RunOptions();
+        try {
+            ro.addRunConfigEntry(ARENA_SHRINKAGE, CPU_DEVICE);
+            return ro;
+        } catch (OrtException e) {
+            ro.close();
+            throw e;
+        }
+    }
+
+    /** Bytes allocated on the native heap, where ORT's arenas and weights live. */
+    public static long nativeHeapBytes() {
+        return Debug.getNativeHeapAllocatedSize();
+    }
+
+    /** For logs, e.g. "native 212.4 MB". */
+    public static String describeNative() {
+        return String.format(Locale.US, "native %.1f MB", nativeHeapBytes() / 1e6);
+    }
+}
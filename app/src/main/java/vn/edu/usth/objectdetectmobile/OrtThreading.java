@@ -0,0 +1,186 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtLoggingLevel;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * One OrtEnvironment for the whole app with an explicit intra-op thread budget.
+ * <p>
+ * Detection and depth run in parallel on inferenceExec, so the budget is split between them.
+ * ORT has a single global intra-op pool per environment: detector sessions (every tier,
+ * per-size variant and the cascade refiner) share it via disablePerSessionThreads(). There is
+ * only one such pool, and detection uses it, so each depth session gets a pool of its own of
+ * {@code depthThreads}. The active and a preloaded estimator hold two such pools, as does the
+ * short-lived session {@link OptimizedModelCache} writes a depth graph with. Depth sessions
+ * run one at a time, though. Busy ORT threads are bounded by detectionThreads + depthThreads,
+ * and existing ones by detectionThreads + depthThreads per open depth session.
+ * <p>
+ * XNNPACK sessions run their kernels on a pthreadpool of the EP's own, one per session, and
+ * leave ORT's intra-op pool at one thread as ORT recommends. The sessions of a role run one at
+ * a time (the cascade runs its models one after the other; a replaced, preloaded or other-size
+ * session sits idle), so each pool is sized to the whole role budget: a session opened while
+ * the one it replaces is still open is as fast as that one, and stays so after it closes.
+ * Idle pools cost their stacks only. Leases count the open pools per role.
+ */
+public final class OrtThreading {
+    private static final String TAG = "OrtThreading";
+
+    // ----- Tuning -----
+    // Cores left for the camera, UI and the inferenceExec/CameraX caller threads
+    private static final int RESERVED_CORES = 2;
+    private static final float DETECTION_SHARE = 0.65f;
+    private static final int MAX_DETECTION_THREADS = 4;
+    private static final int MAX_DEPTH_THREADS = 2;
+
+    // ORT session config key for per-session spin-waiting
+    private static final String ALLOW_SPINNING = "session.intra_op.allow_spinning";
+
+    public enum Role { DETECTION, DEPTH }
+
+    public static final class Budget {
+        public final int detectionThreads;
+        public final int depthThreads;
+        // Spinning lowers wake-up latency but burns CPU (and heat) between frames
+        public final boolean spinWait;
+
+        public Budget(int detectionThreads, int depthThreads, boolean spinWait) {
+            this.detectionThreads = Math.max(1, detectionThreads);
+            this.depthThreads = Math.max(1, depthThreads);
+            this.spinWait = spinWait;
+        }
+
+        /** Default split for a device with {@code cores} CPUs. */
+        public static Budget forCores(int cores) {
+            int usable = Math.max(2, cores - RESERVED_CORES);
+            int detection = Math.min(MAX_DETECTION_THREADS, Math.max(1, Math.round(usable * DETECTION_SHARE)));
+            int depth = Math.min(MAX_DEPTH_THREADS, Math.max(1, usable - detection));
+            return new Budget(detection, depth, false);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "detection=%d depth=%d spin=%b",
+                    detectionThreads, depthThreads, spinWait);
+        }
+    }
+
+    private static Budget budget = Budget.forCores(Runtime.getRuntime().availableProcessors());
+    private static OrtEnvironment env;
+    private static boolean globalPools;
+    // XNNPACK pools open per role (one per session)
+    private static final int[] xnnpackPools = new int[Role.values().length];
+
+    private OrtThreading() {}
+
+    /**
+     * Set the thread budget. Only effective before the first {@link #environment()} call
+     * (the global pool is fixed once the environment exists); later calls are ignored.
+     */
+    public static synchronized void configure(@NonNull Budget newBudget) {
+        if (env != null) {
+            Log.w(TAG, "Environment already created, keeping " + budget);
+            return;
+        }
+        budget = newBudget;
+    }
+
+    public static synchronized Budget budget() {
+        return budget;
+    }
+
+    /** The shared environment; use this instead of OrtEnvironment.getEnvironment(). */
+    public static synchronized OrtEnvironment environment() {
+        if (env != null) return env;
+        try (OrtEnvironment.ThreadingOptions threading = new OrtEnvironment.ThreadingOptions()) {
+            threading.setGlobalIntraOpNumThreads(budget.detectionThreads);
+            threading.setGlobalInterOpNumThreads(1);
+            threading.setGlobalSpinControl(budget.spinWait);
+            env = OrtEnvironment.getEnvironment(OrtLoggingLevel.ORT_LOGGING_LEVEL_WARNING, "ObjectDetectMobile", threading);
+            globalPools = true;
+            Log.i(TAG, "ORT environment with " + budget);
+        } catch (OrtException | IllegalStateException e) {
+            // IllegalStateException: an environment already exists (created without our options)
+            Log.w(TAG, "Global thread pools unavailable, using per-session defaults", e);
+            env = OrtEnvironment.getEnvironment();
+        }
+        return env;
+    }
+
+    /** Thread settings for a session of the given role; XNNPACK sessions get one ORT thread. */
+    static void apply(Role role, OrtSession.SessionOptions opts, boolean xnnpack) throws OrtException {
+        Budget b = budget();
+        boolean shared;
+        synchronized (OrtThreading.class) {
+            shared = globalPools;
+        }
+        if (xnnpack) {
+            // The EP's own pool does the work; a second ORT pool would only contend with it
+            opts.setIntraOpNumThreads(1);
+            opts.setInterOpNumThreads(1);
+            opts.addConfigEntry(ALLOW_SPINNING, "0");
+            return;
+        }
+        if (role == Role.DETECTION && shared) {
+            opts.disablePerSessionThreads();
+            return;
+        }
+        opts.setIntraOpNumThreads(role == Role.DETECTION ? b.detectionThreads : b.depthThreads);
+        opts.setInterOpNumThreads(1);
+        opts.addConfigEntry(ALLOW_SPINNING, b.spinWait ? "1" : "0");
+    }
+
+    /**
+     * Threads for one XNNPACK session: the role's budget, which its sessions use one at a time.
+     * Close the lease with the session.
+     */
+    static synchronized XnnpackLease leaseXnnpack(Role role) {
+        int threads = role == Role.DETECTION ? budget.detectionThreads : budget.depthThreads;
+        int pools = ++xnnpackPools[role.ordinal()];
+        if (pools > 1) Log.i(TAG, role + ": " + pools + " XNNPACK pools open, one runs at a time");
+        return new XnnpackLease(role, threads);
+    }
+
+    /** XNNPACK pools currently open for {@code role}. */
+    static synchronized int openXnnpackPools(Role role) {
+        return xnnpackPools[role.ordinal()];
+    }
+
+    private static synchronized void returnLease(XnnpackLease lease) {
+        xnnpackPools[lease.role.ordinal()]--;
+    }
+
+    /** XNNPACK threads of one session: {@code threads} counts the caller, the pool has one less. */
+    static final class XnnpackLease implements AutoCloseable {
+        final Role role;
+        final int threads;
+        private boolean returned = false;
+
+        private XnnpackLease(Role role, int threads) {
+            this.role = role;
+            this.threads = threads;
+        }
+
+        Map<String, String> providerOptions() {
+            return Collections.singletonMap("intra_op_num_threads", String.valueOf(threads));
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (returned) return;
+                returned = true;
+            }
+            returnLease(this);
+        }
+    }
+}
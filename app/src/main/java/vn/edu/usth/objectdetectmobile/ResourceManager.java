@@ -0,0 +1,126 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Large memory consumers (depth cache, depth sessions, frame buffers), each registered with a
+ * priority and a footprint estimate. On onTrimMemory / onLowMemory they are released in priority
+ * order, lowest first, as far as the trim level calls for. Owners rebuild what they need lazily
+ * on next use. Every release is logged with the bytes it freed.
+ */
+public final class ResourceManager implements ComponentCallbacks2 {
+    private static final String TAG = "ResourceManager";
+
+    // Release order: lower goes first
+    public static final int PRIORITY_DEPTH_CACHE = 10;
+    public static final int PRIORITY_PRELOADED_DEPTH = 20;
+    public static final int PRIORITY_DEPTH_SESSION = 30;
+    public static final int PRIORITY_FRAME_BUFFERS = 40;
+
+    public interface Releasable {
+        /** Estimated bytes currently held; 0 when there is nothing to release. */
+        long footprintBytes();
+
+        /** Drop what can be rebuilt later; returns the bytes freed (estimate). */
+        long release();
+    }
+
+    private static final class Entry {
+        final String name;
+        final int priority;
+        final Releasable releasable;
+
+        Entry(String name, int priority, Releasable releasable) {
+            this.name = name;
+            this.priority = priority;
+            this.releasable = releasable;
+        }
+    }
+
+    // Sorted by priority; guarded by itself
+    private final List<Entry> entries = new ArrayList<>();
+
+    public void register(@NonNull String name, int priority, @NonNull Releasable releasable) {
+        synchronized (entries) {
+            int i = 0;
+            while (i < entries.size() && entries.get(i).priority <= priority) i++;
+            entries.add(i, new Entry(name, priority, releasable));
+        }
+    }
+
+    public void unregister(@NonNull String name) {
+        synchronized (entries) {
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                if (entries.get(i).name.equals(name)) entries.remove(i);
+            }
+        }
+    }
+
+    /** Sum of the registered footprints. */
+    public long footprintBytes() {
+        long total = 0L;
+        for (Entry e : snapshot()) total += e.releasable.footprintBytes();
+        return total;
+    }
+
+    /**
+     * Highest priority released for a trim level. Running levels are mild to severe while the
+     * app is visible; once the UI is hidden the camera stops, so more can go.
+     */
+    static int priorityCeiling(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) return Integer.MAX_VALUE;
+        if (level >= TRIM_MEMORY_UI_HIDDEN) return PRIORITY_DEPTH_SESSION;
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) return Integer.MAX_VALUE;
+        if (level >= TRIM_MEMORY_RUNNING_LOW) return PRIORITY_DEPTH_SESSION;
+        if (level >= TRIM_MEMORY_RUNNING_MODERATE) return PRIORITY_DEPTH_CACHE;
+        return Integer.MIN_VALUE;
+    }
+
+    /** Release every consumer with priority up to {@code maxPriority}; returns the bytes freed. */
+    public long releaseUpTo(int maxPriority, @NonNull String reason) {
+        long total = 0L;
+        for (Entry e : snapshot()) {
+            if (e.priority > maxPriority) break;
+            if (e.releasable.footprintBytes() <= 0) continue;
+            long freed = e.releasable.release();
+            total += freed;
+            Log.i(TAG, String.format(Locale.US, "%s: released %s (%.1f MB)", reason, e.name, freed / 1e6));
+        }
+        if (total > 0) {
+            Log.i(TAG, String.format(Locale.US, "%s: %.1f MB freed, %.1f MB still held",
+                    reason, total / 1e6, footprintBytes() / 1e6));
+        }
+        return total;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int ceiling = priorityCeiling(level);
+        if (ceiling == Integer.MIN_VALUE) return;
+        releaseUpTo(ceiling, "trim level " + level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        releaseUpTo(Integer.MAX_VALUE, "low memory");
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        // Not memory related
+    }
+
+    private List<Entry> snapshot() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+}
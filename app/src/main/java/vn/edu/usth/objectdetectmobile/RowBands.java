@@ -0,0 +1,147 @@
+package vn.edu.usth.objectdetectmobile;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fork-join over horizontal bands of an image. A kernel is split into one band of rows per
+ * thread: the calling thread runs the first band and a small fixed pool runs the others, and
+ * the call returns once every band is done. Images below a pixel threshold stay on the caller,
+ * where the hand-off would cost more than it saves. A kernel called from a band of another
+ * kernel also runs serially, so bands never wait on each other.
+ */
+public final class RowBands {
+
+    // ----- Tuning -----
+    // Below this many pixels a kernel runs on the calling thread
+    public static final int DEFAULT_MIN_PARALLEL_PIXELS = 64 * 1024;
+    // Upper bound on bands; ORT's own threads need the remaining cores
+    public static final int MAX_THREADS = 4;
+
+    /** Processes rows [from, to) of the image; bands must not write outside their rows. */
+    public interface Kernel {
+        void rows(int from, int to);
+    }
+
+    private static final RowBands SERIAL = new RowBands(1, Integer.MAX_VALUE);
+    private static RowBands shared;
+
+    private static final class Worker extends Thread {
+        Worker(Runnable r, String name) {
+            super(r, name);
+            setDaemon(true);
+        }
+    }
+
+    private final int threads;
+    private final int minParallelPixels;
+    // threads - 1 workers; null when serial
+    private final ExecutorService workers;
+
+    public RowBands(int threads, int minParallelPixels) {
+        this.threads = Math.max(1, Math.min(MAX_THREADS, threads));
+        this.minParallelPixels = minParallelPixels;
+        if (this.threads == 1) {
+            workers = null;
+        } else {
+            AtomicInteger n = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(this.threads - 1,
+                    r -> new Worker(r, "row-band-" + n.incrementAndGet()));
+        }
+    }
+
+    /** Runs every kernel on the calling thread. */
+    public static RowBands serial() {
+        return SERIAL;
+    }
+
+    /** Process-wide instance with one band per two cores, up to {@link #MAX_THREADS}. */
+    public static synchronized RowBands shared() {
+        if (shared == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            shared = new RowBands(Math.max(1, cores / 2), DEFAULT_MIN_PARALLEL_PIXELS);
+        }
+        return shared;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * Run {@code kernel} over {@code rows} rows. {@code pixelsPerRow} is the work per row in pixels
+     * touched (e.g. width times the taps of a filter), compared against the serial threshold.
+     */
+    public void forRows(int rows, int pixelsPerRow, @NonNull Kernel kernel) {
+        int bands = bandsFor(rows, pixelsPerRow);
+        if (bands <= 1) {
+            kernel.rows(0, rows);
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(bands - 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int b = 1; b < bands; b++) {
+            int from = (int) ((long) rows * b / bands);
+            int to = (int) ((long) rows * (b + 1) / bands);
+            Runnable band = () -> {
+                try {
+                    kernel.rows(from, to);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    done.countDown();
+                }
+            };
+            try {
+                workers.execute(band);
+            } catch (RejectedExecutionException e) {
+                band.run(); // shut down meanwhile
+            }
+        }
+        try {
+            kernel.rows(0, rows / bands);
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+        awaitUninterruptibly(done);
+        rethrow(failure.get());
+    }
+
+    /** Stop the workers; later calls run serially. Not for {@link #shared()}. */
+    public void shutdown() {
+        if (workers != null) workers.shutdown();
+    }
+
+    private int bandsFor(int rows, int pixelsPerRow) {
+        if (threads == 1 || rows < 2 || (long) rows * pixelsPerRow < minParallelPixels) return 1;
+        if (Thread.currentThread() instanceof Worker || workers.isShutdown()) return 1;
+        return Math.min(threads, rows);
+    }
+
+    // Bands write into the caller's buffers: never return while one is still running
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private static void rethrow(Throwable t) {
+        if (t == null) return;
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new RuntimeException(t);
+    }
+}
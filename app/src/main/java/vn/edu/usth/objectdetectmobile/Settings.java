@@ -1,38 +1,24 @@
 package vn.edu.usth.objectdetectmobile;
 
 import android.app.AlertDialog;
-import android.app.DownloadManager;
 import android.content.SharedPreferences;
-import android.net.Uri;
 import android.os.Bundle;
-import android.os.Environment;
 import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.SwitchCompat;
 import androidx.cardview.widget.CardView;
 import androidx.core.content.ContextCompat;
 
-import java.io.File;
-
 import vn.edu.usth.objectdetectmobile.MainActivity.EnvMode;
 
 public class Settings extends AppCompatActivity {
 
-    private static final String DEPTH_DOWNLOAD_INDOOR_URL =
-            "https://haidreamer.github.io/models_mobile_app_gp_for_visually_impaired/depth_anything_v2_metric_hypersim_vits_fp16.onnx";
-    private static final String DEPTH_DOWNLOAD_OUTDOOR_URL =
-            "https://haidreamer.github.io/models_mobile_app_gp_for_visually_impaired/depth_anything_v2_metric_vkitti_vits_fp16.onnx";
-    private static final String PREF_DEPTH_MODEL_INDOOR_PATH = "pref_depth_model_indoor_path";
-    private static final String PREF_DEPTH_MODEL_OUTDOOR_PATH = "pref_depth_model_outdoor_path";
-    private static final String PREF_LAST_DEPTH_DOWNLOAD_ID = "pref_last_depth_download_id";
-    private static final String PREF_LAST_DEPTH_DOWNLOAD_MODE = "pref_last_depth_download_mode";
-    private static final String DEPTH_MODEL_PREFS = "depth_models";
     private static final String PREF_ENV_MODE = "pref_env_mode";
 
-    private SharedPreferences depthModelPrefs;
     private SharedPreferences prefs;
 
     @Override
@@ -40,7 +26,6 @@ public class Settings extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.settings);
 
-        depthModelPrefs = getSharedPreferences(DEPTH_MODEL_PREFS, MODE_PRIVATE);
         prefs = DepthCalibrationHelper.getPrefs(this);
 
         ImageButton buttonBack = findViewById(R.id.buttonBack);
@@ -103,10 +88,10 @@ public class Settings extends AppCompatActivity {
                 .setItems(actions, (dialog, which) -> {
                     switch (which) {
                         case 0:
-                            startDepthModelDownload(DEPTH_DOWNLOAD_INDOOR_URL, EnvMode.INDOOR);
+                            startDepthModelDownload(EnvMode.INDOOR);
                             break;
                         case 1:
-                            startDepthModelDownload(DEPTH_DOWNLOAD_OUTDOOR_URL, EnvMode.OUTDOOR);
+                            startDepthModelDownload(EnvMode.OUTDOOR);
                             break;
                         case 2:
                             deleteDepthModel(EnvMode.INDOOR);
@@ -134,67 +119,31 @@ public class Settings extends AppCompatActivity {
         ).show();
     }
 
-    private void startDepthModelDownload(String url, EnvMode mode) {
-        DownloadManager dm = (DownloadManager) getSystemService(DOWNLOAD_SERVICE);
-        if (dm == null) {
-            Toast.makeText(this, "DownloadManager not available", Toast.LENGTH_LONG).show();
-            return;
-        }
-
-        File outFile = getDepthModelFileForMode(mode);
-        if (outFile == null) {
-            Toast.makeText(this, "No external files dir for downloads", Toast.LENGTH_LONG).show();
-            return;
-        }
-
-        String fileName = outFile.getName();
-
-        try {
-            DownloadManager.Request req = new DownloadManager.Request(Uri.parse(url))
-                    .setTitle("Downloading " + fileName)
-                    .setDescription("Depth model for " + (mode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"))
-                    .setNotificationVisibility(
-                            DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED)
-                    .setDestinationInExternalFilesDir(
-                            this,
-                            Environment.DIRECTORY_DOWNLOADS,
-                            fileName
-                    );
-
-            long id = dm.enqueue(req);
-
-            String keyPath = (mode == EnvMode.OUTDOOR)
-                    ? PREF_DEPTH_MODEL_OUTDOOR_PATH
-                    : PREF_DEPTH_MODEL_INDOOR_PATH;
-
-            if (depthModelPrefs != null) {
-                depthModelPrefs.edit()
-                        .putLong(PREF_LAST_DEPTH_DOWNLOAD_ID, id)
-                        .putString(PREF_LAST_DEPTH_DOWNLOAD_MODE, mode.name())
-                        .putString(keyPath, outFile.getAbsolutePath())
-                        .apply();
+    private void startDepthModelDownload(EnvMode mode) {
+        String label = mode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor";
+        boolean started = DepthModelDownloads.start(this, mode, new DepthModelDownloads.Callback() {
+            @Override
+            public void onProgress(EnvMode m, int percent) {
+                // Progress is only logged; Settings reports start and finish
             }
 
-            Toast.makeText(this, "Downloading depth model...", Toast.LENGTH_SHORT).show();
-        } catch (Throwable t) {
-            Toast.makeText(this, "Download failed: " + t.getMessage(), Toast.LENGTH_LONG).show();
-        }
+            @Override
+            public void onFinished(EnvMode m, @Nullable Throwable error) {
+                if (isFinishing() || isDestroyed()) return;
+                Toast.makeText(Settings.this,
+                        error == null
+                                ? "Đã tải " + label + " model"
+                                : "Download failed: " + error.getMessage(),
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+        Toast.makeText(this,
+                started ? "Downloading depth model..." : "Depth model download already running",
+                Toast.LENGTH_SHORT).show();
     }
 
     private void deleteDepthModel(EnvMode mode) {
-        File f = getDepthModelFileForMode(mode);
-        boolean deleted = false;
-        if (f != null && f.exists()) {
-            deleted = f.delete();
-        }
-        String keyPath = (mode == EnvMode.OUTDOOR)
-                ? PREF_DEPTH_MODEL_OUTDOOR_PATH
-                : PREF_DEPTH_MODEL_INDOOR_PATH;
-        if (depthModelPrefs != null) {
-            depthModelPrefs.edit()
-                    .remove(keyPath)
-                    .apply();
-        }
+        boolean deleted = DepthModelDownloads.delete(this, mode);
         Toast.makeText(
                 this,
                 (deleted ? "Đã xóa " : "Không tìm thấy ") +
@@ -202,14 +151,4 @@ public class Settings extends AppCompatActivity {
                 Toast.LENGTH_SHORT
         ).show();
     }
-
-    private File getDepthModelFileForMode(EnvMode mode) {
-        String fileName = (mode == EnvMode.OUTDOOR)
-                ? "depth_anything_v2_metric_vkitti_vits_fp16.onnx"
-                : "depth_anything_v2_metric_hypersim_vits_fp16.onnx";
-
-        File dir = getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS);
-        if (dir == null) return null;
-        return new File(dir, fileName);
-    }
 }
@@ -0,0 +1,127 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Startup critical path. The camera preview is bound right away while the models load in
+ * parallel on background threads, each followed by a warm-up inference. Results are handed
+ * back on the main thread. Frames that arrive before the detector is ready are dropped and
+ * counted, and the time to the first detection is logged once.
+ */
+final class StartupCoordinator {
+    private static final String TAG = "Startup";
+    // Detector and depth load side by side
+    private static final int LOADER_THREADS = 2;
+
+    /** Builds and warms up one model on a loader thread. */
+    interface Loader<T extends AutoCloseable> {
+        @Nullable
+        T load() throws Exception;
+    }
+
+    /** Main-thread result of a {@link Loader}; {@code error} is null on success. */
+    interface Listener<T> {
+        void onLoaded(@Nullable T result, @Nullable Throwable error);
+    }
+
+    private final ExecutorService loaders;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final long startNs = System.nanoTime();
+    private final AtomicInteger droppedFrames = new AtomicInteger();
+    private final AtomicBoolean firstDetectionLogged = new AtomicBoolean();
+    private volatile long cameraBoundNs = 0L;
+    private volatile long detectorReadyNs = 0L;
+    private volatile boolean closed = false;
+
+    StartupCoordinator() {
+        AtomicInteger n = new AtomicInteger();
+        loaders = Executors.newFixedThreadPool(LOADER_THREADS, r -> {
+            Thread t = new Thread(r, "startup-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Run {@code loader} off the main thread. If closed in the meantime, the result is closed instead of delivered. */
+    <T extends AutoCloseable> void load(@NonNull String what, @NonNull Loader<T> loader,
+                                        @NonNull Listener<T> listener) {
+        loaders.execute(() -> {
+            long start = System.nanoTime();
+            T result = null;
+            Throwable error = null;
+            try {
+                result = loader.load();
+                Log.i(TAG, String.format(Locale.US, "%s loaded and warmed up in %.0f ms (t+%.0f ms)",
+                        what, (System.nanoTime() - start) / 1e6, sinceStartMs(System.nanoTime())));
+            } catch (Throwable t) {
+                error = t;
+            }
+            T finalResult = result;
+            Throwable finalError = error;
+            main.post(() -> {
+                if (closed) {
+                    closeQuietly(finalResult);
+                    return;
+                }
+                listener.onLoaded(finalResult, finalError);
+            });
+        });
+    }
+
+    void markCameraBound() {
+        if (cameraBoundNs == 0L) {
+            cameraBoundNs = System.nanoTime();
+            Log.i(TAG, String.format(Locale.US, "Camera bound at t+%.0f ms", sinceStartMs(cameraBoundNs)));
+        }
+    }
+
+    void markDetectorReady() {
+        if (detectorReadyNs == 0L) detectorReadyNs = System.nanoTime();
+    }
+
+    /** A camera frame arrived before the detector was ready. */
+    void frameDropped() {
+        droppedFrames.incrementAndGet();
+    }
+
+    /** Called for every frame with detections on screen; only the first one is reported. */
+    void firstDetectionShown() {
+        if (!firstDetectionLogged.compareAndSet(false, true)) return;
+        long now = System.nanoTime();
+        Log.i(TAG, String.format(Locale.US,
+                "Time to first detection: %.0f ms (camera=%.0f detector=%.0f, %d frames dropped while loading)",
+                sinceStartMs(now),
+                cameraBoundNs == 0L ? -1.0 : sinceStartMs(cameraBoundNs),
+                detectorReadyNs == 0L ? -1.0 : sinceStartMs(detectorReadyNs),
+                droppedFrames.get()));
+    }
+
+    void close() {
+        closed = true;
+        loaders.shutdown();
+    }
+
+    private double sinceStartMs(long ns) {
+        return (ns - startNs) / 1e6;
+    }
+
+    private static void closeQuietly(@Nullable AutoCloseable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (Exception e) {
+            Log.w(TAG, "Close after shutdown failed", e);
+        }
+    }
+}
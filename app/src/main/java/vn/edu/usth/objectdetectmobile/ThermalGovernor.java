@@ -0,0 +1,162 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Sheds pipeline load as the device heats up and restores it once it cools down.
+ * Load is shed in a fixed order: depth frequency first, then detector/depth resolution,
+ * then the realtime frame rate. Escalation is immediate; de-escalation goes one level at a
+ * time and only after the device has stayed below a lower (hysteresis) threshold for a while.
+ *
+ * The thermal readings come from a {@link ThermalSource}, so the policy runs on a plain JVM
+ * with a fake source; {@link AndroidThermalSource} is the PowerManager-backed one.
+ */
+public class ThermalGovernor {
+    private static final String TAG = "ThermalGovernor";
+
+    /** Thermal readings. Mirrors the PowerManager thermal API. */
+    public interface ThermalSource {
+        /**
+         * Forecast thermal headroom: 0 = cold, 1.0 = the point where the device throttles.
+         * NaN if not supported or not available right now.
+         */
+        float getHeadroom();
+
+        /** Current thermal status, one of the {@code STATUS_*} constants. */
+        int getStatus();
+    }
+
+    // Same values as PowerManager.THERMAL_STATUS_*
+    public static final int STATUS_NONE = 0;
+    public static final int STATUS_LIGHT = 1;
+    public static final int STATUS_MODERATE = 2;
+    public static final int STATUS_SEVERE = 3;
+    public static final int STATUS_CRITICAL = 4;
+
+    public enum Level {
+        NORMAL,
+        SHED_DEPTH,       // run depth less often
+        SHED_RESOLUTION,  // + cap detector and depth input sizes
+        SHED_FRAME_RATE   // + cap realtime analysis FPS
+    }
+
+    /** Caps the rest of the pipeline must respect at the current level. */
+    public static final class Constraints {
+        public final float depthIntervalScale;
+        public final int maxDetectorInputSize;
+        public final int maxDepthInputSize;
+        public final float maxFps;
+
+        Constraints(float depthIntervalScale, int maxDetectorInputSize, int maxDepthInputSize, float maxFps) {
+            this.depthIntervalScale = depthIntervalScale;
+            this.maxDetectorInputSize = maxDetectorInputSize;
+            this.maxDepthInputSize = maxDepthInputSize;
+            this.maxFps = maxFps;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "depthInterval x%.1f det<=%d depth<=%d fps<=%.0f",
+                    depthIntervalScale, maxDetectorInputSize, maxDepthInputSize, maxFps);
+        }
+    }
+
+    private static final Constraints[] CONSTRAINTS = {
+            new Constraints(1f, Integer.MAX_VALUE, Integer.MAX_VALUE, Float.POSITIVE_INFINITY),
+            new Constraints(2f, Integer.MAX_VALUE, Integer.MAX_VALUE, Float.POSITIVE_INFINITY),
+            new Constraints(3f, 416, 392, Float.POSITIVE_INFINITY),
+            new Constraints(4f, 320, 308, 5f),
+    };
+
+    // ----- Tuning -----
+    // Headroom needed to enter SHED_DEPTH / SHED_RESOLUTION / SHED_FRAME_RATE
+    private static final float[] HEADROOM_ENTER = {0.75f, 0.85f, 0.95f};
+    private static final float HEADROOM_HYSTERESIS = 0.07f;
+    static final long POLL_INTERVAL_MS = 2000;    // getThermalHeadroom is rate limited to ~1 Hz
+    static final long RESTORE_HOLD_MS = 10_000;   // must stay cool this long before restoring a level
+
+    private final ThermalSource source;
+    private Level level = Level.NORMAL;
+    private long lastPollMs = Long.MIN_VALUE / 2;
+    private long coolSinceMs = -1L;
+    private volatile Constraints constraints = CONSTRAINTS[0];
+
+    public ThermalGovernor(ThermalSource source) {
+        this.source = source;
+    }
+
+    public Constraints constraints() {
+        return constraints;
+    }
+
+    public synchronized Level getLevel() {
+        return level;
+    }
+
+    /** Poll the source if the poll interval has passed. Cheap to call every frame. */
+    public synchronized Level update(long nowMs) {
+        if (nowMs - lastPollMs < POLL_INTERVAL_MS) return level;
+        return evaluate(nowMs);
+    }
+
+    /** Re-evaluate right away, e.g. from a thermal status listener. */
+    public synchronized Level onStatusChanged(long nowMs) {
+        return evaluate(nowMs);
+    }
+
+    private Level evaluate(long nowMs) {
+        lastPollMs = nowMs;
+        float headroom = source.getHeadroom();
+        int status = source.getStatus();
+
+        int heating = targetLevel(headroom, status, 0f);
+        if (heating > level.ordinal()) {
+            coolSinceMs = -1L;
+            setLevel(heating, headroom, status);
+            return level;
+        }
+
+        // Only step down once readings are below the lowered thresholds for RESTORE_HOLD_MS
+        int cooling = targetLevel(headroom, status, HEADROOM_HYSTERESIS);
+        if (cooling < level.ordinal()) {
+            if (coolSinceMs < 0) {
+                coolSinceMs = nowMs;
+            } else if (nowMs - coolSinceMs >= RESTORE_HOLD_MS) {
+                coolSinceMs = nowMs;
+                setLevel(level.ordinal() - 1, headroom, status);
+            }
+        } else {
+            coolSinceMs = -1L;
+        }
+        return level;
+    }
+
+    private static int targetLevel(float headroom, int status, float margin) {
+        int fromStatus;
+        if (status >= STATUS_SEVERE) fromStatus = 3;
+        else if (status == STATUS_MODERATE) fromStatus = 2;
+        else if (status == STATUS_LIGHT) fromStatus = 1;
+        else fromStatus = 0;
+
+        int fromHeadroom = 0;
+        if (!Float.isNaN(headroom)) {
+            for (int i = HEADROOM_ENTER.length - 1; i >= 0; i--) {
+                if (headroom >= HEADROOM_ENTER[i] - margin) {
+                    fromHeadroom = i + 1;
+                    break;
+                }
+            }
+        }
+        return Math.max(fromStatus, fromHeadroom);
+    }
+
+    private void setLevel(int next, float headroom, int status) {
+        Level nextLevel = Level.values()[next];
+        Log.i(TAG, String.format(Locale.US, "%s -> %s (headroom=%.2f status=%d) {%s}",
+                level, nextLevel, headroom, status, CONSTRAINTS[next]));
+        level = nextLevel;
+        constraints = CONSTRAINTS[next];
+    }
+}
@@ -5,9 +5,118 @@ import java.nio.ByteBuffer;
 
 // Simple YUV_420_888 -> ARGB8888 converter (CPU). Adequate for prototyping.
 public final class Yuv {
+    /**
+     * The planes of a YUV_420_888 frame with strides removed: Y is width x height, U and V are
+     * half that (rounded up) each, in direct buffers from a frame arena. Input of {@link YuvGraph}.
+     */
+    public static final class Planes {
+        public final int width, height;
+        public final ByteBuffer y, u, v;
+
+        Planes(int width, int height, ByteBuffer y, ByteBuffer u, ByteBuffer v) {
+            this.width = width; this.height = height;
+            this.y = y; this.u = u; this.v = v;
+        }
+
+        public int chromaWidth() { return (width + 1) / 2; }
+
+        public int chromaHeight() { return (height + 1) / 2; }
+
+        public void release(FrameArena arena) {
+            arena.release(y);
+            arena.release(u);
+            arena.release(v);
+        }
+    }
+
+    /**
+     * A frame kept as its planes, converted to upright ARGB on the first {@link #argb()} call
+     * (from any thread, once). Owns the planes and the pixels: {@link #release} returns both.
+     */
+    public static final class LazyArgb implements FramePreprocessor.Frame {
+        public final Planes planes;
+        public final int rotation;
+        private final FrameArena arena;
+        private final RowBands bands;
+        private int[] argb;
+
+        public LazyArgb(Planes planes, int rotation, FrameArena arena, RowBands bands) {
+            this.planes = planes;
+            this.rotation = rotation;
+            this.arena = arena;
+            this.bands = bands;
+        }
+
+        /** Width of the rotated frame. */
+        public int width() {
+            return rotation == 90 || rotation == 270 ? planes.height : planes.width;
+        }
+
+        /** Height of the rotated frame. */
+        public int height() {
+            return rotation == 90 || rotation == 270 ? planes.width : planes.height;
+        }
+
+        @Override
+        public synchronized int[] argb() {
+            if (argb == null) {
+                int[] upright = toArgb(planes, arena, bands);
+                int[] rotated = rotate(upright, planes.width, planes.height, rotation, arena, bands);
+                if (rotated != upright) arena.release(upright);
+                argb = rotated;
+            }
+            return argb;
+        }
+
+        /** Whether {@link #argb()} has run, i.e. some input needed the Java path. */
+        public synchronized boolean converted() {
+            return argb != null;
+        }
+
+        public synchronized void release() {
+            planes.release(arena);
+            arena.release(argb);
+            argb = null;
+        }
+    }
+
+    /** Copy the planes of {@code image} without their row and pixel strides; release the result to {@code arena}. */
+    public static Planes planes(ImageProxy image, FrameArena arena){
+        int w = image.getWidth(), h = image.getHeight();
+        int cw = (w + 1) / 2, ch = (h + 1) / 2;
+        ImageProxy.PlaneProxy[] p = image.getPlanes();
+        ByteBuffer y = arena.directBytes(w*h), u = arena.directBytes(cw*ch), v = arena.directBytes(cw*ch);
+        copyPlane(p[0].getBuffer(), p[0].getRowStride(), p[0].getPixelStride(), w, h, y);
+        copyPlane(p[1].getBuffer(), p[1].getRowStride(), p[1].getPixelStride(), cw, ch, u);
+        copyPlane(p[2].getBuffer(), p[2].getRowStride(), p[2].getPixelStride(), cw, ch, v);
+        return new Planes(w, h, y, u, v);
+    }
+
+    private static void copyPlane(ByteBuffer src, int rowStride, int pixelStride, int w, int h, ByteBuffer dst){
+        ByteBuffer s = src.duplicate();
+        for (int j=0;j<h;j++){
+            int row = j*rowStride;
+            if (pixelStride == 1) {
+                s.limit(row + w).position(row);
+                dst.put(s);
+            } else {
+                for (int i=0;i<w;i++) dst.put(s.get(row + i*pixelStride));
+            }
+        }
+        dst.rewind();
+    }
+
     public static int[] toArgb(ImageProxy image){
+        return toArgb(image, FrameArena.unpooled(), RowBands.serial());
+    }
+
+    /**
+     * Output and plane copies come from {@code arena}; the caller releases the result to it.
+     * Rows are converted in parallel bands on {@code bands}.
+     */
+    public static int[] toArgb(ImageProxy image, FrameArena arena, RowBands bands){
         final int w = image.getWidth(), h = image.getHeight();
-        int[] out = new int[w*h];
+        int[] out = arena.ints(w*h);
 
         ByteBuffer yb = image.getPlanes()[0].getBuffer();
         ByteBuffer ub = image.getPlanes()[1].getBuffer();
@@ -16,56 +125,91 @@ public final class Yuv {
         int uvRowStride = image.getPlanes()[1].getRowStride();
         int uvPixelStride = image.getPlanes()[1].getPixelStride();
 
-        byte[] y = new byte[yb.remaining()]; yb.get(y);
-        byte[] u = new byte[ub.remaining()]; ub.get(u);
-        byte[] v = new byte[vb.remaining()]; vb.get(v);
+        byte[] y = arena.bytes(yb.remaining()); yb.get(y);
+        byte[] u = arena.bytes(ub.remaining()); ub.get(u);
+        byte[] v = arena.bytes(vb.remaining()); vb.get(v);
 
-        for (int j=0;j<h;j++){
-            int pY = j*yRowStride;
-            int pUV = (j/2)*uvRowStride;
-            for (int i=0;i<w;i++){
-                int Y = y[pY + i] & 0xFF;
-                int U = u[pUV + (i/2)*uvPixelStride] & 0xFF;
-                int V = v[pUV + (i/2)*uvPixelStride] & 0xFF;
-
-                int C = Y - 16; int D = U - 128; int E = V - 128;
-                int R = clamp((298*C + 409*E + 128)>>8);
-                int G = clamp((298*C - 100*D - 208*E + 128)>>8);
-                int B = clamp((298*C + 516*D + 128)>>8);
-                out[j*w + i] = 0xFF000000 | (R<<16) | (G<<8) | B;
-            }
-        }
+        convert(y, u, v, w, h, yRowStride, uvRowStride, uvPixelStride, out, bands);
+        arena.release(y);
+        arena.release(u);
+        arena.release(v);
+        return out;
+    }
+
+    /** As {@link #toArgb(ImageProxy, FrameArena, RowBands)}, from planes already copied out. */
+    public static int[] toArgb(Planes planes, FrameArena arena, RowBands bands){
+        final int w = planes.width, h = planes.height;
+        int[] out = arena.ints(w*h);
+        byte[] y = arena.bytes(planes.y.capacity()); planes.y.duplicate().get(y);
+        byte[] u = arena.bytes(planes.u.capacity()); planes.u.duplicate().get(u);
+        byte[] v = arena.bytes(planes.v.capacity()); planes.v.duplicate().get(v);
+        convert(y, u, v, w, h, w, planes.chromaWidth(), 1, out, bands);
+        arena.release(y);
+        arena.release(u);
+        arena.release(v);
         return out;
     }
 
+    private static void convert(byte[] y, byte[] u, byte[] v, int w, int h, int yRowStride, int uvRowStride,
+                                int uvPixelStride, int[] out, RowBands bands){
+        bands.forRows(h, w, (from, to) -> {
+            for (int j=from;j<to;j++){
+                int pY = j*yRowStride;
+                int pUV = (j/2)*uvRowStride;
+                for (int i=0;i<w;i++){
+                    int Y = y[pY + i] & 0xFF;
+                    int U = u[pUV + (i/2)*uvPixelStride] & 0xFF;
+                    int V = v[pUV + (i/2)*uvPixelStride] & 0xFF;
+
+                    int C = Y - 16; int D = U - 128; int E = V - 128;
+                    int R = clamp((298*C + 409*E + 128)>>8);
+                    int G = clamp((298*C - 100*D - 208*E + 128)>>8);
+                    int B = clamp((298*C + 516*D + 128)>>8);
+                    out[j*w + i] = 0xFF000000 | (R<<16) | (G<<8) | B;
+                }
+            }
+        });
+    }
+
     public static int[] rotate(int[] src, int w, int h, int rotation){
+        return rotate(src, w, h, rotation, FrameArena.unpooled(), RowBands.serial());
+    }
+
+    /**
+     * Returns {@code src} itself for 0 degrees, else a buffer from {@code arena} (src is left to
+     * the caller). Source rows are split into bands on {@code bands}.
+     */
+    public static int[] rotate(int[] src, int w, int h, int rotation, FrameArena arena, RowBands bands){
         if (rotation % 360 == 0) return src;
-        int[] dst = new int[src.length];
-        switch(rotation){
-            case 90:
-                for (int y=0;y<h;y++){
-                    for (int x=0;x<w;x++){
-                        dst[x*h + (h-1-y)] = src[y*w + x];
+        if (rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        }
+        int[] dst = arena.ints(src.length);
+        bands.forRows(h, w, (from, to) -> {
+            switch(rotation){
+                case 90:
+                    for (int y=from;y<to;y++){
+                        for (int x=0;x<w;x++){
+                            dst[x*h + (h-1-y)] = src[y*w + x];
+                        }
                     }
-                }
-                break;
-            case 180:
-                for (int y=0;y<h;y++){
-                    for (int x=0;x<w;x++){
-                        dst[(h-1-y)*w + (w-1-x)] = src[y*w + x];
+                    break;
+                case 180:
+                    for (int y=from;y<to;y++){
+                        for (int x=0;x<w;x++){
+                            dst[(h-1-y)*w + (w-1-x)] = src[y*w + x];
+                        }
                     }
-                }
-                break;
-            case 270:
-                for (int y=0;y<h;y++){
-                    for (int x=0;x<w;x++){
-                        dst[(w-1-x)*h + y] = src[y*w + x];
+                    break;
+                default: // 270
+                    for (int y=from;y<to;y++){
+                        for (int x=0;x<w;x++){
+                            dst[(w-1-x)*h + y] = src[y*w + x];
+                        }
                     }
-                }
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported rotation: " + rotation);
-        }
+                    break;
+            }
+        });
         return dst;
     }
     private static int clamp(int v){ return v<0?0:(v>255?255:v); }
@@ -0,0 +1,162 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import ai.onnxruntime.OnnxJavaType;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * Preprocessing as an ONNX graph (tools/build_yuv_preprocess.py): the camera's Y, U and V planes
+ * go in as uint8 tensors and a model input comes out, with colour conversion, rotation, blur,
+ * resize and normalization run by ORT's kernels instead of the Java loops. The result equals
+ * what {@link Yuv#toArgb}, {@link Yuv#rotate} and {@link FramePreprocessor#run} produce for the
+ * same target, so it can be passed to the detector or depth estimator as a prepared input.
+ * The sensor rotation and the blur radius are fixed when the graph is built; the geometry comes
+ * from the target at run time.
+ */
+public final class YuvGraph implements AutoCloseable {
+
+    private static final String TAG = "YuvGraph";
+
+    public enum Kind {
+        DETECTOR("yuv_preprocess_detector.onnx", FramePreprocessor.Normalization.UNIT),
+        DEPTH("yuv_preprocess_depth.onnx", FramePreprocessor.Normalization.IMAGENET);
+
+        public final String asset;
+        final FramePreprocessor.Normalization norm;
+
+        Kind(String asset, FramePreprocessor.Normalization norm) {
+            this.asset = asset;
+            this.norm = norm;
+        }
+    }
+
+    private final OrtEnvironment env;
+    private final OrtSession session;
+    private final ExecutionProviders.Selection<OrtSession> selection;
+    private final ModelSource source; // mapped bytes, kept alive with the session
+    private final Kind kind;
+    private final int rotation;
+    private final int blurRadius;
+    private final String outputName;
+    // Run into the caller's buffer; cleared if the session refuses pinned outputs
+    private volatile boolean pinOutput = true;
+
+    public static boolean isAvailable(@NonNull Context ctx, @NonNull Kind kind) {
+        return ObjectDetector.Util.assetExists(ctx, kind.asset);
+    }
+
+    public YuvGraph(@NonNull Context ctx, @NonNull Kind kind) throws OrtException {
+        this.kind = kind;
+        env = OrtThreading.environment();
+        ExecutionProviders.Selection<OrtSession> s = ExecutionProviders.openSession(env,
+                ObjectDetector.Util.mapAsset(ctx.getApplicationContext(), kind.asset),
+                kind == Kind.DEPTH ? OrtThreading.Role.DEPTH : OrtThreading.Role.DETECTION,
+                Collections.singletonList(ExecutionProviders.Provider.CPU));
+        selection = s;
+        session = s.session;
+        source = s.source;
+        Map<String, String> meta = session.getMetadata().getCustomMetadata();
+        if (!kind.name().equalsIgnoreCase(meta.get("yuv_kind"))) {
+            ExecutionProviders.closeSession(s);
+            throw new IllegalArgumentException(kind.asset + " was built for " + meta.get("yuv_kind"));
+        }
+        rotation = Integer.parseInt(meta.get("yuv_rotation"));
+        blurRadius = Integer.parseInt(meta.get("yuv_blur_radius"));
+        outputName = session.getOutputInfo().keySet().iterator().next();
+        Log.i(TAG, kind + ": rotation " + rotation + ", blur radius " + blurRadius);
+    }
+
+    /** Sensor rotation the graph applies; frames with another one need the Java path. */
+    public int rotation() {
+        return rotation;
+    }
+
+    /** Whether {@link #run} can produce {@code target} from frames with this rotation. */
+    public boolean supports(@NonNull FramePreprocessor.Target target, int frameRotation) {
+        return frameRotation % 360 == rotation && builds(target);
+    }
+
+    private boolean builds(FramePreprocessor.Target target) {
+        return target.layout == FramePreprocessor.Layout.CHW_FLOAT
+                && target.norm == kind.norm
+                && (target.blurRadius == 0 || target.blurRadius == blurRadius);
+    }
+
+    /**
+     * Build {@code target} from {@code planes} (even width and height). The target's geometry is
+     * relative to the rotated frame, as for the Java path. The input's buffer comes from
+     * {@code arena}; release it there.
+     */
+    public FramePreprocessor.Input run(@NonNull Yuv.Planes planes, @NonNull FramePreprocessor.Target target,
+                                       FrameArena arena) throws OrtException {
+        if (!builds(target)) throw new IllegalArgumentException("Target not supported by " + kind.asset);
+        if (planes.width % 2 != 0 || planes.height % 2 != 0) {
+            throw new IllegalArgumentException("Odd frame size " + planes.width + "x" + planes.height);
+        }
+        Map<String, OnnxTensor> in = new HashMap<>();
+        FloatBuffer out = arena.directFloats(3 * target.modelW * target.modelH);
+        long[] outShape = {1, 3, target.modelH, target.modelW};
+        boolean filled = false;
+        try {
+            in.put("y", OnnxTensor.createTensor(env, planes.y, new long[]{planes.height, planes.width}, OnnxJavaType.UINT8));
+            long[] chroma = {planes.chromaHeight(), planes.chromaWidth()};
+            in.put("u", OnnxTensor.createTensor(env, planes.u, chroma, OnnxJavaType.UINT8));
+            in.put("v", OnnxTensor.createTensor(env, planes.v, chroma, OnnxJavaType.UINT8));
+            if (kind == Kind.DETECTOR) {
+                FloatBuffer scales = FloatBuffer.wrap(new float[]{1f, 1f, target.scaleY, target.scaleX});
+                in.put("scales", OnnxTensor.createTensor(env, scales, new long[]{4}));
+            } else {
+                LongBuffer sizes = LongBuffer.wrap(new long[]{1, 3, target.contentH, target.contentW});
+                in.put("sizes", OnnxTensor.createTensor(env, sizes, new long[]{4}));
+            }
+            // ONNX Pad layout: all leading edges, then all trailing edges
+            LongBuffer pads = LongBuffer.wrap(new long[]{0, 0, target.padY, target.padX, 0, 0,
+                    target.modelH - target.contentH - target.padY, target.modelW - target.contentW - target.padX});
+            in.put("pads", OnnxTensor.createTensor(env, pads, new long[]{8}));
+            if (blurRadius > 0) in.put("blur", OnnxTensor.createTensor(env, new boolean[]{target.blurRadius > 0}));
+
+            if (pinOutput) {
+                try (OnnxTensor pinned = OnnxTensor.createTensor(env, out, outShape);
+                     OrtSession.Result ignored = session.run(in, Collections.singletonMap(outputName, pinned))) {
+                    filled = true;
+                } catch (OrtException e) {
+                    pinOutput = false;
+                    Log.w(TAG, "Pinned output rejected, copying outputs from now on", e);
+                }
+            }
+            if (!filled) {
+                try (OrtSession.Result r = session.run(in)) {
+                    FloatBuffer result = ((OnnxTensor) r.get(0)).getFloatBuffer();
+                    if (result.remaining() != out.capacity()) {
+                        throw new IllegalStateException("Output has " + result.remaining()
+                                + " values, target wants " + out.capacity());
+                    }
+                    out.put(result).rewind();
+                    filled = true;
+                }
+            }
+            return new FramePreprocessor.Input(target, out, null);
+        } finally {
+            for (OnnxTensor t : in.values()) t.close();
+            if (!filled) arena.release(out);
+        }
+    }
+
+    @Override
+    public void close() throws OrtException {
+        ExecutionProviders.closeSession(selection);
+    }
+}
@@ -158,6 +158,11 @@ public class TTSWarning {
     }
 
     private boolean isDangerous(String label) {
+        return isDangerousLabel(label);
+    }
+
+    // Shared with the realtime pipeline so it uses the same notion of "hazard" as the warnings
+    public static boolean isDangerousLabel(String label) {
         if (label == null) return false;
         String lower = label.toLowerCase(Locale.US);
         for (String dangerous : DANGEROUS_OBJECTS) {
@@ -166,6 +171,10 @@ public class TTSWarning {
         return false;
     }
 
+    public static boolean isWithinWarningDistance(float meters) {
+        return meters > 0f && meters <= MAX_WARNING_DISTANCE;
+    }
+
     private enum Zone { LEFT, CENTER, RIGHT }
 
     private Zone zoneOf(float xCenterNorm) {
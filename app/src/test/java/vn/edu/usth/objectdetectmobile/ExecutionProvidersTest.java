@@ -0,0 +1,127 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import ai.onnxruntime.OrtException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Provider selection and CPU fallback, using a fake opener in place of real ORT sessions
+ * (the unit-test classpath only has the Android ORT build, whose native library does not load
+ * on a desktop JVM).
+ */
+public class ExecutionProvidersTest {
+    private static final List<ExecutionProviders.Provider> NNAPI_XNNPACK_CPU = Arrays.asList(
+            ExecutionProviders.Provider.NNAPI, ExecutionProviders.Provider.XNNPACK,
+            ExecutionProviders.Provider.CPU);
+    private static final Set<ExecutionProviders.Provider> ALL =
+            EnumSet.allOf(ExecutionProviders.Provider.class);
+
+    /** Opens "<provider>/<strict|fallback>" sessions; coverage and failures are configured per provider. */
+    private static class FakeOpener implements ExecutionProviders.Opener<String> {
+        final Set<ExecutionProviders.Provider> fullCoverage = EnumSet.noneOf(ExecutionProviders.Provider.class);
+        final Set<ExecutionProviders.Provider> broken = EnumSet.noneOf(ExecutionProviders.Provider.class);
+        // Strict opens that fail once for another reason than coverage (e.g. out of memory)
+        final Set<ExecutionProviders.Provider> flaky = EnumSet.noneOf(ExecutionProviders.Provider.class);
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public String open(ExecutionProviders.Provider provider, boolean strict) throws OrtException {
+            String call = provider + (strict ? "/strict" : "/fallback");
+            calls.add(call);
+            if (broken.contains(provider)) throw new OrtException(provider + " unavailable");
+            if (strict && flaky.remove(provider)) throw new OrtException("Failed to allocate memory");
+            if (strict && provider != ExecutionProviders.Provider.CPU && !fullCoverage.contains(provider)) {
+                throw new OrtException("This session contains graph nodes that are assigned to the default"
+                        + " CPU EP, but fallback to CPU EP has been explicitly disabled by the user.");
+            }
+            return call;
+        }
+    }
+
+    private final FakeOpener opener = new FakeOpener();
+
+    @Before
+    public void setUp() {
+        ExecutionProviders.clearCoverageCache();
+    }
+
+    private ExecutionProviders.Selection<String> select(List<ExecutionProviders.Provider> preference,
+                                                        Set<ExecutionProviders.Provider> available)
+            throws OrtException {
+        return ExecutionProviders.select("model.onnx", preference, available, opener);
+    }
+
+    @Test
+    public void fullyCoveredProviderIsUsedStrict() throws Exception {
+        opener.fullCoverage.add(ExecutionProviders.Provider.XNNPACK);
+        ExecutionProviders.Selection<String> s = select(ExecutionProviders.DEFAULT_PREFERENCE, ALL);
+        assertEquals(ExecutionProviders.Provider.XNNPACK, s.provider);
+        assertEquals(ExecutionProviders.Coverage.FULL, s.coverage);
+        assertEquals("XNNPACK/strict", s.session);
+    }
+
+    @Test
+    public void partialXnnpackKeepsCpuFallbackForMissingOps() throws Exception {
+        ExecutionProviders.Selection<String> s = select(ExecutionProviders.DEFAULT_PREFERENCE, ALL);
+        assertEquals(ExecutionProviders.Provider.XNNPACK, s.provider);
+        assertEquals(ExecutionProviders.Coverage.PARTIAL, s.coverage);
+        assertEquals("XNNPACK(partial)", s.describe());
+        assertEquals(Arrays.asList("XNNPACK/strict", "XNNPACK/fallback"), opener.calls);
+    }
+
+    @Test
+    public void partialNnapiIsSkipped() throws Exception {
+        ExecutionProviders.Selection<String> s = select(NNAPI_XNNPACK_CPU, ALL);
+        assertEquals(ExecutionProviders.Provider.XNNPACK, s.provider);
+        assertFalse(opener.calls.contains("NNAPI/fallback"));
+    }
+
+    @Test
+    public void brokenProvidersFallBackToCpu() throws Exception {
+        opener.broken.add(ExecutionProviders.Provider.NNAPI);
+        opener.broken.add(ExecutionProviders.Provider.XNNPACK);
+        ExecutionProviders.Selection<String> s = select(NNAPI_XNNPACK_CPU, ALL);
+        assertEquals(ExecutionProviders.Provider.CPU, s.provider);
+        assertEquals("CPU/fallback", s.session);
+    }
+
+    @Test
+    public void providersMissingFromRuntimeAreNotTried() throws Exception {
+        ExecutionProviders.Selection<String> s =
+                select(NNAPI_XNNPACK_CPU, EnumSet.of(ExecutionProviders.Provider.CPU));
+        assertEquals(ExecutionProviders.Provider.CPU, s.provider);
+        assertEquals(Arrays.asList("CPU/fallback"), opener.calls);
+    }
+
+    @Test
+    public void coverageProbeIsCachedPerModel() throws Exception {
+        select(NNAPI_XNNPACK_CPU, ALL);
+        opener.calls.clear();
+        ExecutionProviders.Selection<String> again = select(NNAPI_XNNPACK_CPU, ALL);
+        assertEquals(ExecutionProviders.Provider.XNNPACK, again.provider);
+        assertEquals(Arrays.asList("XNNPACK/fallback"), opener.calls);
+    }
+
+    @Test
+    public void failedProbesOtherThanCoverageAreNotCached() throws Exception {
+        opener.fullCoverage.add(ExecutionProviders.Provider.NNAPI);
+        opener.flaky.add(ExecutionProviders.Provider.NNAPI);
+        ExecutionProviders.Selection<String> first = select(NNAPI_XNNPACK_CPU, ALL);
+        assertEquals(ExecutionProviders.Provider.XNNPACK, first.provider);
+
+        opener.calls.clear();
+        ExecutionProviders.Selection<String> again = select(NNAPI_XNNPACK_CPU, ALL);
+        assertEquals(ExecutionProviders.Provider.NNAPI, again.provider);
+        assertEquals(ExecutionProviders.Coverage.FULL, again.coverage);
+        assertEquals(Arrays.asList("NNAPI/strict"), opener.calls);
+    }
+}
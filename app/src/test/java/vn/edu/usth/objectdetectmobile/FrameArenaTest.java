@@ -0,0 +1,191 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Buffer reuse of the frame arena, and the heap allocated per frame by the pure-Java stages
+ * (rotate, blur) once it is warm, measured with the JVM's per-thread allocation counter.
+ */
+public class FrameArenaTest {
+
+    private static final int W = 320, H = 240;
+    private static final int FRAMES = 20;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Rotate then blur, releasing everything at the end like analyzeFrame does
+    private static void frame(int[] argb, FrameArena arena) {
+        int[] rotated = Yuv.rotate(argb, W, H, 90, arena, RowBands.serial());
+        int[] blurred = ImageUtils.boxBlur(rotated, H, W, 2, arena, RowBands.serial());
+        FloatBuffer chw = arena.directFloats(3 * W * H);
+        float[] scratch = arena.floats(3 * W * H);
+        chw.put(scratch).rewind();
+        arena.release(scratch);
+        arena.release(chw);
+        arena.release(blurred);
+        arena.release(rotated);
+    }
+
+    private static long allocatedOverFrames(int[] argb, FrameArena arena) {
+        for (int i = 0; i < 3; i++) frame(argb, arena); // warm-up: fills the pool, JIT-compiles
+        long before = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++) frame(argb, arena);
+        return allocatedBytes() - before;
+    }
+
+    @Test
+    public void warmPipelineAllocatesAlmostNothing() {
+        assumeTrue("thread allocation counting unsupported",
+                THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled());
+        int[] argb = new int[W * H];
+        long pooled = allocatedOverFrames(argb, new FrameArena());
+        long unpooled = allocatedOverFrames(argb, FrameArena.unpooled());
+
+        long frameBytes = W * H * 4L;
+        assertTrue("unpooled run allocated only " + unpooled + " bytes", unpooled >= FRAMES * frameBytes * 2);
+        // Less than one frame buffer's worth for all frames together
+        assertTrue("pooled run allocated " + pooled + " bytes", pooled < frameBytes);
+    }
+
+    @Test
+    public void releasedBufferIsHandedOutAgain() {
+        FrameArena arena = new FrameArena();
+        int[] a = arena.ints(100);
+        arena.release(a);
+        assertSame(a, arena.ints(100));
+        assertNotSame(a, arena.ints(100));
+        assertEquals(1, arena.reusedCount());
+        assertEquals(2, arena.allocatedCount());
+    }
+
+    @Test
+    public void buffersAreKeyedByTypeAndExactLength() {
+        FrameArena arena = new FrameArena();
+        arena.release(new int[100]);
+        arena.release(new float[100]);
+        assertEquals(101, arena.ints(101).length);
+        assertEquals(99, arena.floats(99).length);
+        arena.bytes(100);
+        assertEquals(0, arena.reusedCount());
+        assertEquals(100 * 4 * 2, arena.retainedBytes());
+    }
+
+    @Test
+    public void directBuffersComeBackCleared() {
+        FrameArena arena = new FrameArena();
+        FloatBuffer b = arena.directFloats(16);
+        assertTrue(b.isDirect());
+        b.put(1f).put(2f).limit(2);
+        arena.release(b);
+        FloatBuffer again = arena.directFloats(16);
+        assertSame(b, again);
+        assertEquals(0, again.position());
+        assertEquals(16, again.limit());
+    }
+
+    @Test
+    public void directByteBuffersArePooledApartFromFloats() {
+        FrameArena arena = new FrameArena();
+        ByteBuffer b = arena.directBytes(64);
+        assertTrue(b.isDirect());
+        b.put((byte) 1).limit(1);
+        arena.release(b);
+        assertNotSame(b, arena.directFloats(16));
+        ByteBuffer again = arena.directBytes(64);
+        assertSame(b, again);
+        assertEquals(0, again.position());
+        assertEquals(64, again.limit());
+    }
+
+    @Test
+    public void directShortBuffersArePooledApartFromBytes() {
+        FrameArena arena = new FrameArena();
+        ShortBuffer b = arena.directShorts(32);
+        assertTrue(b.isDirect());
+        assertEquals(32, b.capacity());
+        arena.release(b);
+        assertNotSame(b, arena.directBytes(64));
+        assertSame(b, arena.directShorts(32));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleReleaseIsRejected() {
+        FrameArena arena = new FrameArena();
+        int[] a = arena.ints(10);
+        arena.release(a);
+        arena.release(a);
+    }
+
+    @Test
+    public void retainedBytesAreBounded() {
+        FrameArena arena = new FrameArena(1000);
+        int[] a = new int[100]; // 400 bytes
+        int[] b = new int[100];
+        int[] c = new int[100];
+        arena.release(a);
+        arena.release(b);
+        arena.release(c); // would exceed the budget: dropped
+        assertEquals(800, arena.retainedBytes());
+
+        // A new size evicts the least recently used one
+        arena.release(new float[150]);
+        assertEquals(600, arena.retainedBytes());
+        assertNotSame(a, arena.ints(100));
+
+        assertEquals(600, arena.clear());
+        assertEquals(0, arena.retainedBytes());
+    }
+
+    @Test
+    public void unpooledArenaKeepsNothing() {
+        FrameArena arena = FrameArena.unpooled();
+        int[] a = arena.ints(10);
+        arena.release(a);
+        assertNotSame(a, arena.ints(10));
+        assertEquals(0, arena.retainedBytes());
+    }
+
+    @Test
+    public void concurrentUsersNeverShareABuffer() throws Exception {
+        FrameArena arena = new FrameArena();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int marker = t + 1;
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        int[] buf = arena.ints(64);
+                        Arrays.fill(buf, marker);
+                        Thread.yield();
+                        for (int v : buf) if (v != marker) return false;
+                        arena.release(buf);
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> r : results) assertTrue(r.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The fused single-pass preprocessing against the resize-then-normalize path it replaces.
+ */
+public class FramePreprocessorTest {
+
+    private static final int W = 97, H = 61;
+
+    private final RowBands bands = new RowBands(4, 1000);
+
+    @After
+    public void tearDown() {
+        bands.shutdown();
+    }
+
+    private static int[] frame(int w, int h) {
+        Random rnd = new Random(11);
+        int[] argb = new int[w * h];
+        for (int i = 0; i < argb.length; i++) argb[i] = 0xFF000000 | rnd.nextInt(0x1000000);
+        return argb;
+    }
+
+    // Detector-style letterbox: fit inside size x size, centered
+    private static FramePreprocessor.Target letterbox(int size, int blurRadius) {
+        float r = Math.min(size / (float) W, size / (float) H);
+        int nw = (int) (W * r), nh = (int) (H * r);
+        return new FramePreprocessor.Target(size, size, nw, nh, (size - nw) / 2, (size - nh) / 2,
+                r, r, FramePreprocessor.Normalization.UNIT, blurRadius);
+    }
+
+    // Depth-style: content scaled per axis, fed as a rectangle
+    private static FramePreprocessor.Target stretched(int cw, int ch) {
+        return new FramePreprocessor.Target(cw, ch, cw, ch, 0, 0, cw / (float) W, ch / (float) H,
+                FramePreprocessor.Normalization.IMAGENET, 0);
+    }
+
+    // Nearest-neighbour resample into the padded tensor, then per-pixel normalization
+    private static float[] reference(int[] argb, FramePreprocessor.Target t, float[] mean, float[] std) {
+        int plane = t.modelW * t.modelH;
+        float[] out = new float[3 * plane];
+        for (int y = 0; y < t.contentH; y++) {
+            int sy = Math.min((int) (y / t.scaleY), H - 1);
+            for (int x = 0; x < t.contentW; x++) {
+                int sx = Math.min((int) (x / t.scaleX), W - 1);
+                int p = argb[sy * W + sx];
+                int idx = (y + t.padY) * t.modelW + x + t.padX;
+                out[idx] = (((p >> 16) & 0xFF) / 255f - mean[0]) / std[0];
+                out[plane + idx] = (((p >> 8) & 0xFF) / 255f - mean[1]) / std[1];
+                out[2 * plane + idx] = ((p & 0xFF) / 255f - mean[2]) / std[2];
+            }
+        }
+        return out;
+    }
+
+    private static float[] unit(int[] argb, FramePreprocessor.Target t) {
+        return reference(argb, t, new float[]{0f, 0f, 0f}, new float[]{1f, 1f, 1f});
+    }
+
+    private static float[] imagenet(int[] argb, FramePreprocessor.Target t) {
+        return reference(argb, t, new float[]{0.485f, 0.456f, 0.406f}, new float[]{0.229f, 0.224f, 0.225f});
+    }
+
+    private static float[] contents(FramePreprocessor.Input in) {
+        float[] out = new float[in.chw.remaining()];
+        in.chw.duplicate().get(out);
+        return out;
+    }
+
+    @Test
+    public void matchesResizeThenNormalize() {
+        int[] argb = frame(W, H);
+        for (int size : new int[]{32, 64, 160}) {
+            FramePreprocessor.Target t = letterbox(size, 0);
+            FramePreprocessor.Input in = FramePreprocessor.run(argb, W, H, t, FrameArena.unpooled(), bands);
+            assertArrayEquals("size " + size, unit(argb, t), contents(in), 0f);
+        }
+    }
+
+    @Test
+    public void blurredTargetMatchesBlurThenResize() {
+        int[] argb = frame(W, H);
+        int[] blurred = ImageUtils.boxBlur(argb, W, H, 1);
+        FramePreprocessor.Target t = letterbox(128, 1);
+        FramePreprocessor.Input in = FramePreprocessor.run(argb, W, H, t, FrameArena.unpooled(), bands);
+        assertArrayEquals(unit(blurred, t), contents(in), 0f);
+    }
+
+    @Test
+    public void oneSharedPassMatchesSeparatePasses() {
+        int[] argb = frame(W, H);
+        int[] blurred = ImageUtils.boxBlur(argb, W, H, 1);
+        FramePreprocessor.Target det = letterbox(64, 1);
+        FramePreprocessor.Target depth = stretched(140, 84);
+        FrameArena arena = new FrameArena();
+        FramePreprocessor.Input[] inputs = FramePreprocessor.run(argb, W, H,
+                new FramePreprocessor.Target[]{det, null, depth}, arena, bands);
+        assertNull(inputs[1]);
+        assertSame(depth, inputs[2].target);
+        assertArrayEquals(unit(blurred, det), contents(inputs[0]), 0f);
+        assertArrayEquals(imagenet(argb, depth), contents(inputs[2]), 0f);
+        FramePreprocessor.releaseAll(inputs, arena);
+    }
+
+    @Test
+    public void pooledBuffersCarryNoOldPadding() {
+        int[] argb = frame(W, H);
+        FrameArena arena = new FrameArena();
+        FramePreprocessor.Target t = letterbox(64, 0);
+        int[] white = new int[W * H];
+        java.util.Arrays.fill(white, 0xFFFFFFFF);
+        FramePreprocessor.run(white, W, H, t, arena, bands).release(arena);
+        FramePreprocessor.Input in = FramePreprocessor.run(argb, W, H, t, arena, bands);
+        assertArrayEquals(unit(argb, t), contents(in), 0f);
+    }
+
+    @Test
+    public void packedBytesMatchTheFloatInputTransposed() {
+        int[] argb = frame(W, H);
+        FramePreprocessor.Target chw = letterbox(64, 1);
+        FramePreprocessor.Target hwc = new FramePreprocessor.Target(chw.modelW, chw.modelH, chw.contentW,
+                chw.contentH, chw.padX, chw.padY, chw.scaleX, chw.scaleY, chw.norm, chw.blurRadius,
+                FramePreprocessor.Layout.HWC_UINT8);
+        FrameArena arena = new FrameArena();
+        FramePreprocessor.Input[] inputs = FramePreprocessor.run(argb, W, H,
+                new FramePreprocessor.Target[]{chw, hwc}, arena, bands);
+        assertNull(inputs[0].hwc);
+        assertNull(inputs[1].chw);
+        assertEquals(hwc.tensorBytes() * 4, chw.tensorBytes());
+        assertEquals(hwc.tensorBytes(), inputs[1].hwc.remaining());
+
+        // What the uint8 graph computes in front of the float one: cast, / 255, NHWC -> NCHW
+        float[] expected = contents(inputs[0]);
+        int plane = hwc.modelW * hwc.modelH;
+        for (int i = 0; i < plane; i++) {
+            for (int c = 0; c < 3; c++) {
+                float v = (inputs[1].hwc.get(3 * i + c) & 0xFF) / 255f;
+                assertEquals("pixel " + i + " channel " + c, expected[c * plane + i], v, 0f);
+            }
+        }
+        FramePreprocessor.releaseAll(inputs, arena);
+    }
+
+    @Test
+    public void halvesAreTheFloatInputRounded() {
+        int[] argb = frame(W, H);
+        FramePreprocessor.Target chw = stretched(42, 28);
+        FramePreprocessor.Target half = new FramePreprocessor.Target(56, 56, 42, 28, 7, 14,
+                chw.scaleX, chw.scaleY, chw.norm, 0, FramePreprocessor.Layout.CHW_HALF);
+        FramePreprocessor.Target padded = new FramePreprocessor.Target(56, 56, 42, 28, 7, 14,
+                chw.scaleX, chw.scaleY, chw.norm, 0);
+        FrameArena arena = new FrameArena();
+        FramePreprocessor.Input[] inputs = FramePreprocessor.run(argb, W, H,
+                new FramePreprocessor.Target[]{padded, half}, arena, bands);
+        assertNull(inputs[1].chw);
+        assertEquals(padded.tensorBytes(), 2 * half.tensorBytes());
+        assertEquals(3 * 56 * 56, inputs[1].chwHalf.remaining());
+
+        float[] expected = contents(inputs[0]);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("element " + i, HalfFloat.toHalf(expected[i]), inputs[1].chwHalf.get(i));
+        }
+        FramePreprocessor.releaseAll(inputs, arena);
+    }
+
+    @Test
+    public void targetsCompareByGeometry() {
+        assertEquals(letterbox(64, 1), letterbox(64, 1));
+        assertEquals(letterbox(64, 1).hashCode(), letterbox(64, 1).hashCode());
+        assertNotEquals(letterbox(64, 1), letterbox(64, 0));
+        assertNotEquals(letterbox(64, 0), letterbox(96, 0));
+        FramePreprocessor.Target t = letterbox(64, 0);
+        assertNotEquals(t, new FramePreprocessor.Target(t.modelW, t.modelH, t.contentW, t.contentH,
+                t.padX, t.padY, t.scaleX, t.scaleY, t.norm, t.blurRadius, FramePreprocessor.Layout.HWC_UINT8));
+    }
+}
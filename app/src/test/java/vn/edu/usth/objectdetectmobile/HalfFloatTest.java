@@ -0,0 +1,92 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Float/half conversion: exact on every half, nearest (ties to even) on everything else.
+ */
+public class HalfFloatTest {
+
+    @Test
+    public void knownValues() {
+        assertEquals(0x0000, HalfFloat.toHalf(0f));
+        assertEquals((short) 0x8000, HalfFloat.toHalf(-0f));
+        assertEquals(0x3C00, HalfFloat.toHalf(1f));
+        assertEquals((short) 0xC000, HalfFloat.toHalf(-2f));
+        assertEquals(0x7BFF, HalfFloat.toHalf(65504f));
+        assertEquals(0x0400, HalfFloat.toHalf(0x1p-14f)); // smallest normal
+        assertEquals(0x0001, HalfFloat.toHalf(0x1p-24f)); // smallest subnormal
+        assertEquals(0x7C00, HalfFloat.toHalf(Float.POSITIVE_INFINITY));
+        assertEquals((short) 0xFC00, HalfFloat.toHalf(Float.NEGATIVE_INFINITY));
+        assertEquals(0x7C00, HalfFloat.toHalf(1e6f));
+        assertEquals(0x0000, HalfFloat.toHalf(1e-10f));
+        assertTrue(Float.isNaN(HalfFloat.toFloat(HalfFloat.toHalf(Float.NaN))));
+    }
+
+    @Test
+    public void tiesRoundToEven() {
+        // 1 + 2^-11 is halfway between 1 and the next half: stays on the even 1
+        assertEquals(0x3C00, HalfFloat.toHalf(1f + 0x1p-11f));
+        // 1 + 3 * 2^-11 is halfway between two odd/even neighbours: goes up to the even one
+        assertEquals(0x3C02, HalfFloat.toHalf(1f + 3 * 0x1p-11f));
+        // 65520 is halfway between 65504 and 65536: rounds to infinity
+        assertEquals(0x7C00, HalfFloat.toHalf(65520f));
+        assertEquals(0x7BFF, HalfFloat.toHalf(65519f));
+        // Subnormal tie: 1.5 * 2^-24 goes to 2 * 2^-24
+        assertEquals(0x0002, HalfFloat.toHalf(1.5f * 0x1p-24f));
+        assertEquals(0x0000, HalfFloat.toHalf(0.5f * 0x1p-24f));
+    }
+
+    @Test
+    public void everyHalfRoundTrips() {
+        for (int h = 0; h < 0x10000; h++) {
+            if ((h & 0x7C00) == 0x7C00 && (h & 0x3FF) != 0) continue; // NaN payloads
+            short half = (short) h;
+            assertEquals("half 0x" + Integer.toHexString(h), half, HalfFloat.toHalf(HalfFloat.toFloat(half)));
+        }
+        assertEquals(1f, HalfFloat.toFloat((short) 0x3C00), 0f);
+        assertEquals(0x1p-24f, HalfFloat.toFloat((short) 0x0001), 0f);
+        assertEquals(-65504f, HalfFloat.toFloat((short) 0xFBFF), 0f);
+    }
+
+    @Test
+    public void randomFloatsGoToTheNearestHalf() {
+        Random rnd = new Random(3);
+        for (int i = 0; i < 200_000; i++) {
+            float f = (rnd.nextFloat() - 0.5f) * (float) Math.pow(2, rnd.nextInt(40) - 26);
+            short h = HalfFloat.toHalf(f);
+            float err = Math.abs(HalfFloat.toFloat(h) - f);
+            for (int step : new int[]{-1, 1}) {
+                short n = (short) (h + step);
+                float other = HalfFloat.toFloat(n);
+                if (Float.isNaN(other) || Float.isInfinite(other) || Math.signum(other) * Math.signum(f) < 0) continue;
+                assertTrue(f + " -> 0x" + Integer.toHexString(h & 0xFFFF), err <= Math.abs(other - f));
+            }
+        }
+    }
+
+    @Test
+    public void bulkConversionMatchesScalar() {
+        short[] halves = new short[1000];
+        Random rnd = new Random(7);
+        for (int i = 0; i < halves.length; i++) halves[i] = HalfFloat.toHalf((rnd.nextFloat() - 0.5f) * 100f);
+        float[] expected = new float[halves.length];
+        for (int i = 0; i < halves.length; i++) expected[i] = HalfFloat.toFloat(halves[i]);
+
+        float[] heap = new float[halves.length];
+        HalfFloat.toFloats(ShortBuffer.wrap(halves), heap, halves.length);
+        assertArrayEquals(expected, heap, 0f);
+
+        ShortBuffer direct = new FrameArena().directShorts(halves.length);
+        direct.put(halves).rewind();
+        float[] fromDirect = new float[halves.length];
+        HalfFloat.toFloats(direct, fromDirect, halves.length);
+        assertArrayEquals(expected, fromDirect, 0f);
+        assertEquals(0, direct.position());
+    }
+}
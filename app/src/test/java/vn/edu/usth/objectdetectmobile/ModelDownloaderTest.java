@@ -0,0 +1,229 @@
+package vn.edu.usth.objectdetectmobile;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resume, hash verification and install behaviour of the model downloader against a local
+ * HTTP server that can drop connections and ignore Range requests.
+ */
+public class ModelDownloaderTest {
+    private static final String ETAG = "\"v1\"";
+
+    private File root;
+    private HttpServer server;
+    private byte[] content;
+    private String sidecar;
+    private boolean rangeSupport = true;
+    private int dropAfterBytes = -1; // first response only
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("downloader", "");
+        root.delete();
+        content = new byte[3 << 20];
+        new Random(42).nextBytes(content);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/model.onnx", this::serveModel);
+        server.createContext("/model.onnx.sha256", ex -> {
+            if (sidecar == null) {
+                ex.sendResponseHeaders(404, -1);
+            } else {
+                byte[] body = (sidecar + "  model.onnx\n").getBytes(StandardCharsets.US_ASCII);
+                ex.sendResponseHeaders(200, body.length);
+                ex.getResponseBody().write(body);
+            }
+            ex.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        deleteRecursively(root);
+    }
+
+    private void serveModel(HttpExchange ex) throws IOException {
+        String range = ex.getRequestHeaders().getFirst("Range");
+        ranges.add(String.valueOf(range));
+        String ifRange = ex.getRequestHeaders().getFirst("If-Range");
+        int start = 0;
+        if (rangeSupport && range != null && (ifRange == null || ifRange.equals(ETAG))) {
+            start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+        }
+        ex.getResponseHeaders().set("ETag", ETAG);
+        int length = content.length - start;
+        if (start > 0) {
+            ex.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+        }
+        ex.sendResponseHeaders(start > 0 ? 206 : 200, length);
+        OutputStream out = ex.getResponseBody();
+        int drop = dropAfterBytes;
+        dropAfterBytes = -1;
+        try {
+            if (drop >= 0) {
+                out.write(content, start, drop);
+                out.flush();
+                throw new IOException("simulated drop"); // the server then resets the connection
+            }
+            out.write(content, start, length);
+        } finally {
+            ex.close();
+        }
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/model.onnx";
+    }
+
+    private ModelDownloader downloader(ModelStore store) {
+        ModelDownloader d = new ModelDownloader(store);
+        d.setRetryBaseMs(0);
+        return d;
+    }
+
+    private String contentSha() throws IOException {
+        return ModelStore.hex(ModelStore.newDigest().digest(content));
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) for (File c : children) deleteRecursively(c);
+        f.delete();
+    }
+
+    @Test
+    public void downloadVerifiedBySidecarIsInstalled() throws Exception {
+        sidecar = contentSha();
+        ModelStore store = new ModelStore(root);
+        File f = downloader(store).download("model.onnx", url(), null, null);
+        assertArrayEquals(content, Files.readAllBytes(f.toPath()));
+        assertEquals(contentSha(), store.sha256("model.onnx"));
+        assertEquals(f, store.get("model.onnx", url()));
+    }
+
+    @Test
+    public void pinnedHashMismatchInstallsNothing() throws Exception {
+        ModelStore store = new ModelStore(root);
+        char[] wrong = new char[64];
+        Arrays.fill(wrong, '0');
+        try {
+            downloader(store).download("model.onnx", url(), new String(wrong), null);
+            fail("mismatch must throw");
+        } catch (IOException expected) {
+            // fall through
+        }
+        assertFalse(store.contains("model.onnx"));
+        assertFalse(new File(store.partialDir(), "model.onnx.part").exists());
+    }
+
+    @Test
+    public void droppedConnectionResumesWithRange() throws Exception {
+        sidecar = contentSha();
+        dropAfterBytes = 1 << 20;
+        ModelStore store = new ModelStore(root);
+        File f = downloader(store).download("model.onnx", url(), null, null);
+        assertArrayEquals(content, Files.readAllBytes(f.toPath()));
+        assertEquals("null", ranges.get(0));
+        assertTrue(ranges.get(1), ranges.get(1).startsWith("bytes="));
+        assertNotEquals("bytes=0-", ranges.get(1));
+    }
+
+    @Test
+    public void serverIgnoringRangeRestartsFromZero() throws Exception {
+        sidecar = contentSha();
+        dropAfterBytes = 1 << 20;
+        rangeSupport = false;
+        ModelStore store = new ModelStore(root);
+        File f = downloader(store).download("model.onnx", url(), null, null);
+        assertArrayEquals(content, Files.readAllBytes(f.toPath()));
+    }
+
+    @Test
+    public void withoutAnyHashNothingIsInstalled() throws Exception {
+        ModelStore store = new ModelStore(root);
+        try {
+            downloader(store).download("model.onnx", url(), null, null);
+            fail("unverifiable download must throw");
+        } catch (IOException expected) {
+            // fall through
+        }
+        assertFalse(store.contains("model.onnx"));
+
+        // The bytes are kept: once a hash is known they are verified without a second transfer
+        ranges.clear();
+        File f = downloader(store).download("model.onnx", url(), contentSha(), null);
+        assertArrayEquals(content, Files.readAllBytes(f.toPath()));
+        assertEquals("bytes=" + content.length + "-", ranges.get(0));
+        assertEquals(contentSha(), store.sha256("model.onnx"));
+    }
+
+    @Test
+    public void legacyFileIsImportedOnlyWhenItMatches() throws Exception {
+        ModelStore store = new ModelStore(root);
+        File legacy = new File(root, "legacy.onnx");
+
+        // Truncated (an interrupted DownloadManager transfer): deleted, nothing installed
+        Files.write(legacy.toPath(), Arrays.copyOf(content, content.length / 2));
+        try {
+            downloader(store).importVerified("model.onnx", url(), contentSha(), legacy);
+            fail("truncated file must not be imported");
+        } catch (IOException expected) {
+            // fall through
+        }
+        assertFalse(legacy.exists());
+        assertFalse(store.contains("model.onnx"));
+
+        // No hash to check: kept for a later attempt, nothing installed
+        Files.write(legacy.toPath(), content);
+        try {
+            downloader(store).importVerified("model.onnx", url(), null, legacy);
+            fail("unverifiable file must not be imported");
+        } catch (IOException expected) {
+            // fall through
+        }
+        assertTrue(legacy.exists());
+        assertFalse(store.contains("model.onnx"));
+
+        sidecar = contentSha();
+        File f = downloader(store).importVerified("model.onnx", url(), null, legacy);
+        assertArrayEquals(content, Files.readAllBytes(f.toPath()));
+        assertEquals(contentSha(), store.sha256("model.onnx"));
+        assertFalse(legacy.exists());
+    }
+
+    @Test
+    public void progressReachesTotal() throws Exception {
+        long[] last = {0, 0};
+        downloader(new ModelStore(root)).download("model.onnx", url(), contentSha(),
+                (name, done, total) -> {
+                    assertTrue(done >= last[0]);
+                    last[0] = done;
+                    last[1] = total;
+                });
+        assertEquals(content.length, last[0]);
+        assertEquals(content.length, last[1]);
+    }
+}
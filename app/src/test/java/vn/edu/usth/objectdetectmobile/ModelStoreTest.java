@@ -0,0 +1,127 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Integrity and atomic-install behaviour of the content-addressed model store, on a temp dir.
+ */
+public class ModelStoreTest {
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("modelstore", "");
+        root.delete();
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(root);
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) for (File c : children) deleteRecursively(c);
+        f.delete();
+    }
+
+    private static ByteArrayInputStream bytes(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(String s) throws IOException {
+        return ModelStore.hex(ModelStore.newDigest().digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void installedModelIsStoredUnderItsHash() throws Exception {
+        ModelStore store = new ModelStore(root);
+        File f = store.install("model.onnx", null, bytes("weights-v1"), null);
+        assertEquals(sha256("weights-v1"), f.getName());
+        assertEquals(f, store.get("model.onnx", null));
+        assertEquals(sha256("weights-v1"), store.sha256("model.onnx"));
+    }
+
+    @Test
+    public void manifestSurvivesReopen() throws Exception {
+        File f = new ModelStore(root).install("model.onnx", "src-1", bytes("weights"), null);
+        ModelStore reopened = new ModelStore(root);
+        assertEquals(f, reopened.get("model.onnx", "src-1"));
+    }
+
+    @Test
+    public void differentSourceIsAMiss() throws Exception {
+        ModelStore store = new ModelStore(root);
+        store.install("model.onnx", "apk-1", bytes("weights"), null);
+        assertNull(store.get("model.onnx", "apk-2"));
+    }
+
+    @Test
+    public void truncatedBlobIsDetectedWithoutRehash() throws Exception {
+        ModelStore store = new ModelStore(root);
+        File f = store.install("model.onnx", null, bytes("0123456789"), null);
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(4);
+        }
+        assertNull(store.get("model.onnx", null));
+        assertFalse(store.contains("model.onnx"));
+    }
+
+    @Test
+    public void hashMismatchInstallsNothing() throws Exception {
+        ModelStore store = new ModelStore(root);
+        try {
+            store.install("model.onnx", null, bytes("tampered"), sha256("original"));
+            fail("expected a hash mismatch");
+        } catch (IOException expected) {
+            // ok
+        }
+        assertNull(store.get("model.onnx", null));
+        assertEquals(0, new File(root, "blobs").listFiles().length);
+        assertEquals(0, new File(root, "tmp").listFiles().length);
+    }
+
+    @Test
+    public void replacingAModelEvictsTheOldVersion() throws Exception {
+        ModelStore store = new ModelStore(root);
+        File v1 = store.install("model.onnx", null, bytes("v1"), null);
+        File v2 = store.install("model.onnx", null, bytes("v2"), null);
+        assertFalse(v1.exists());
+        assertTrue(v2.exists());
+        assertEquals(1, new File(root, "blobs").listFiles().length);
+    }
+
+    @Test
+    public void sharedContentIsKeptWhileReferenced() throws Exception {
+        ModelStore store = new ModelStore(root);
+        File a = store.install("a.onnx", null, bytes("same"), null);
+        store.install("b.onnx", null, bytes("same"), null);
+        store.remove("a.onnx");
+        assertTrue(a.exists());
+        assertEquals(a, store.get("b.onnx", null));
+    }
+
+    @Test
+    public void verifyCatchesSameSizeCorruption() throws Exception {
+        ModelStore store = new ModelStore(root);
+        File f = store.install("model.onnx", null, bytes("abcdef"), null);
+        long mtime = f.lastModified();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.write('X');
+        }
+        f.setLastModified(mtime); // looks untouched to the O(1) check
+        assertNotNull(store.get("model.onnx", null));
+        assertFalse(store.verify("model.onnx"));
+        assertNull(store.get("model.onnx", null));
+    }
+}
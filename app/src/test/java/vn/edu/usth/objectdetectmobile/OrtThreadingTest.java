@@ -0,0 +1,44 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * XNNPACK pools are sized to the role budget, which a role's sessions use one at a time.
+ */
+public class OrtThreadingTest {
+
+    @Test
+    public void replacementKeepsTheFullBudgetAfterTheOldSessionCloses() {
+        int budget = OrtThreading.budget().depthThreads;
+        int before = OrtThreading.openXnnpackPools(OrtThreading.Role.DEPTH);
+        OrtThreading.XnnpackLease old = OrtThreading.leaseXnnpack(OrtThreading.Role.DEPTH);
+        // Swap: the replacement opens while the old session still holds its lease
+        OrtThreading.XnnpackLease replacement = OrtThreading.leaseXnnpack(OrtThreading.Role.DEPTH);
+        assertEquals(budget, old.threads);
+        assertEquals(budget, replacement.threads);
+        assertEquals(String.valueOf(budget), replacement.providerOptions().get("intra_op_num_threads"));
+        assertEquals(before + 2, OrtThreading.openXnnpackPools(OrtThreading.Role.DEPTH));
+
+        old.close();
+        old.close(); // returned once only
+        assertEquals(before + 1, OrtThreading.openXnnpackPools(OrtThreading.Role.DEPTH));
+        assertEquals(budget, replacement.threads);
+        replacement.close();
+        assertEquals(before, OrtThreading.openXnnpackPools(OrtThreading.Role.DEPTH));
+    }
+
+    @Test
+    public void cascadeModelsEachGetTheDetectionBudget() {
+        OrtThreading.XnnpackLease cheap = OrtThreading.leaseXnnpack(OrtThreading.Role.DETECTION);
+        OrtThreading.XnnpackLease heavy = OrtThreading.leaseXnnpack(OrtThreading.Role.DETECTION);
+        OrtThreading.XnnpackLease depth = OrtThreading.leaseXnnpack(OrtThreading.Role.DEPTH);
+        assertEquals(OrtThreading.budget().detectionThreads, cheap.threads);
+        assertEquals(OrtThreading.budget().detectionThreads, heavy.threads);
+        assertEquals(OrtThreading.budget().depthThreads, depth.threads);
+        cheap.close();
+        heavy.close();
+        depth.close();
+    }
+}
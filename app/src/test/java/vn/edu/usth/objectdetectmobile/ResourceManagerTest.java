@@ -0,0 +1,112 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Release order and trim-level policy of the memory-pressure resource manager, with fake consumers.
+ */
+public class ResourceManagerTest {
+
+    private final List<String> released = new ArrayList<>();
+    private final ResourceManager manager = new ResourceManager();
+
+    private class FakeConsumer implements ResourceManager.Releasable {
+        final String name;
+        long held;
+
+        FakeConsumer(String name, long held) {
+            this.name = name;
+            this.held = held;
+        }
+
+        @Override public long footprintBytes() { return held; }
+
+        @Override public long release() {
+            released.add(name);
+            long freed = held;
+            held = 0;
+            return freed;
+        }
+    }
+
+    private FakeConsumer add(String name, int priority, long bytes) {
+        FakeConsumer c = new FakeConsumer(name, bytes);
+        manager.register(name, priority, c);
+        return c;
+    }
+
+    @Test
+    public void releasesInPriorityOrderRegardlessOfRegistrationOrder() {
+        add("buffers", ResourceManager.PRIORITY_FRAME_BUFFERS, 300);
+        add("session", ResourceManager.PRIORITY_DEPTH_SESSION, 200);
+        add("cache", ResourceManager.PRIORITY_DEPTH_CACHE, 100);
+        assertEquals(600, manager.releaseUpTo(Integer.MAX_VALUE, "test"));
+        assertEquals(List.of("cache", "session", "buffers"), released);
+        assertEquals(0, manager.footprintBytes());
+    }
+
+    @Test
+    public void moderatePressureOnlyDropsTheDepthCache() {
+        add("cache", ResourceManager.PRIORITY_DEPTH_CACHE, 100);
+        FakeConsumer session = add("session", ResourceManager.PRIORITY_DEPTH_SESSION, 200);
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(List.of("cache"), released);
+        assertEquals(200, session.held);
+    }
+
+    @Test
+    public void lowPressureKeepsFrameBuffers() {
+        add("cache", ResourceManager.PRIORITY_DEPTH_CACHE, 100);
+        add("spare", ResourceManager.PRIORITY_PRELOADED_DEPTH, 150);
+        add("session", ResourceManager.PRIORITY_DEPTH_SESSION, 200);
+        FakeConsumer buffers = add("buffers", ResourceManager.PRIORITY_FRAME_BUFFERS, 300);
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(List.of("cache", "spare", "session"), released);
+        assertEquals(300, buffers.held);
+    }
+
+    @Test
+    public void criticalAndLowMemoryReleaseEverything() {
+        add("cache", ResourceManager.PRIORITY_DEPTH_CACHE, 100);
+        FakeConsumer buffers = add("buffers", ResourceManager.PRIORITY_FRAME_BUFFERS, 300);
+        manager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(0, buffers.held);
+
+        buffers.held = 300;
+        manager.onLowMemory();
+        assertEquals(0, buffers.held);
+    }
+
+    @Test
+    public void emptyConsumersAreSkipped() {
+        add("cache", ResourceManager.PRIORITY_DEPTH_CACHE, 0);
+        add("session", ResourceManager.PRIORITY_DEPTH_SESSION, 200);
+        manager.releaseUpTo(Integer.MAX_VALUE, "test");
+        assertEquals(List.of("session"), released);
+    }
+
+    @Test
+    public void unregisteredConsumerIsNotReleased() {
+        add("cache", ResourceManager.PRIORITY_DEPTH_CACHE, 100);
+        manager.unregister("cache");
+        assertEquals(0, manager.releaseUpTo(Integer.MAX_VALUE, "test"));
+        assertTrue(released.isEmpty());
+    }
+
+    @Test
+    public void trimLevelsMapToIncreasingCeilings() {
+        assertEquals(Integer.MIN_VALUE, ResourceManager.priorityCeiling(0));
+        assertTrue(ResourceManager.priorityCeiling(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE)
+                < ResourceManager.priorityCeiling(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertTrue(ResourceManager.priorityCeiling(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+                < ResourceManager.priorityCeiling(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(Integer.MAX_VALUE, ResourceManager.priorityCeiling(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+}
@@ -0,0 +1,92 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Band splitting of the row-band executor, and banded kernels matching their serial output.
+ */
+public class RowBandsTest {
+
+    private final RowBands bands = new RowBands(4, 1000);
+
+    @After
+    public void tearDown() {
+        bands.shutdown();
+    }
+
+    private static int[] frame(int w, int h) {
+        Random rnd = new Random(7);
+        int[] argb = new int[w * h];
+        for (int i = 0; i < argb.length; i++) argb[i] = 0xFF000000 | rnd.nextInt(0x1000000);
+        return argb;
+    }
+
+    @Test
+    public void everyRowIsProcessedExactlyOnce() {
+        int rows = 103;
+        int[] hits = new int[rows];
+        bands.forRows(rows, 100, (from, to) -> {
+            for (int y = from; y < to; y++) hits[y]++;
+        });
+        for (int y = 0; y < rows; y++) assertEquals("row " + y, 1, hits[y]);
+    }
+
+    @Test
+    public void smallImagesStayOnTheCaller() {
+        Thread caller = Thread.currentThread();
+        AtomicInteger calls = new AtomicInteger();
+        bands.forRows(10, 10, (from, to) -> {
+            assertSame(caller, Thread.currentThread());
+            assertEquals(0, from);
+            assertEquals(10, to);
+            calls.incrementAndGet();
+        });
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void nestedKernelsRunSerially() {
+        AtomicInteger innerCalls = new AtomicInteger();
+        bands.forRows(8, 1000, (from, to) ->
+                bands.forRows(8, 1000, (f, t) -> innerCalls.incrementAndGet()));
+        // One outer band on the caller splits again; the three on workers do not
+        assertEquals(4 + 3, innerCalls.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void bandFailureReachesTheCaller() {
+        bands.forRows(100, 100, (from, to) -> {
+            if (from > 0) throw new IllegalStateException("band failed");
+        });
+    }
+
+    @Test
+    public void bandedKernelsMatchSerial() {
+        int w = 96, h = 64;
+        int[] argb = frame(w, h);
+        FrameArena arena = FrameArena.unpooled();
+        for (int rotation : new int[]{90, 180, 270}) {
+            assertArrayEquals(Yuv.rotate(argb, w, h, rotation),
+                    Yuv.rotate(argb, w, h, rotation, arena, bands));
+        }
+        assertArrayEquals(ImageUtils.boxBlur(argb, w, h, 2),
+                ImageUtils.boxBlur(argb, w, h, 2, arena, bands));
+    }
+
+    @Test
+    public void threadCountIsBounded() {
+        RowBands wide = new RowBands(64, 1000);
+        try {
+            assertEquals(RowBands.MAX_THREADS, wide.threads());
+        } finally {
+            wide.shutdown();
+        }
+        assertEquals(1, RowBands.serial().threads());
+    }
+}
@@ -0,0 +1,100 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Thermal shedding policy, driven by a fake thermal source (no device needed).
+ */
+public class ThermalGovernorTest {
+
+    private static class FakeThermalSource implements ThermalGovernor.ThermalSource {
+        float headroom = Float.NaN;
+        int status = ThermalGovernor.STATUS_NONE;
+
+        @Override public float getHeadroom() { return headroom; }
+        @Override public int getStatus() { return status; }
+    }
+
+    private final FakeThermalSource source = new FakeThermalSource();
+    private final ThermalGovernor governor = new ThermalGovernor(source);
+    private long now = 0L;
+
+    private ThermalGovernor.Level poll() {
+        now += ThermalGovernor.POLL_INTERVAL_MS;
+        return governor.update(now);
+    }
+
+    @Test
+    public void coolDevice_staysNormal() {
+        source.headroom = 0.3f;
+        assertEquals(ThermalGovernor.Level.NORMAL, poll());
+        assertEquals(1f, governor.constraints().depthIntervalScale, 0f);
+        assertTrue(Float.isInfinite(governor.constraints().maxFps));
+    }
+
+    @Test
+    public void shedsDepthThenResolutionThenFrameRate() {
+        source.headroom = 0.78f;
+        assertEquals(ThermalGovernor.Level.SHED_DEPTH, poll());
+        assertTrue(governor.constraints().depthIntervalScale > 1f);
+        assertEquals(Integer.MAX_VALUE, governor.constraints().maxDetectorInputSize);
+
+        source.headroom = 0.88f;
+        assertEquals(ThermalGovernor.Level.SHED_RESOLUTION, poll());
+        assertTrue(governor.constraints().maxDetectorInputSize < ObjectDetector.DEFAULT_INPUT_SIZE);
+        assertTrue(Float.isInfinite(governor.constraints().maxFps));
+
+        source.headroom = 0.97f;
+        assertEquals(ThermalGovernor.Level.SHED_FRAME_RATE, poll());
+        assertFalse(Float.isInfinite(governor.constraints().maxFps));
+    }
+
+    @Test
+    public void statusAloneDrivesPolicyWhenHeadroomUnsupported() {
+        source.headroom = Float.NaN;
+        source.status = ThermalGovernor.STATUS_SEVERE;
+        assertEquals(ThermalGovernor.Level.SHED_FRAME_RATE, poll());
+    }
+
+    @Test
+    public void pollsAreRateLimited() {
+        source.headroom = 0.9f;
+        assertEquals(ThermalGovernor.Level.SHED_RESOLUTION, governor.update(now));
+        source.headroom = 0.1f;
+        assertEquals(ThermalGovernor.Level.SHED_RESOLUTION,
+                governor.update(now + ThermalGovernor.POLL_INTERVAL_MS / 2));
+    }
+
+    @Test
+    public void statusListenerBypassesPollInterval() {
+        poll();
+        source.status = ThermalGovernor.STATUS_MODERATE;
+        assertEquals(ThermalGovernor.Level.SHED_RESOLUTION, governor.onStatusChanged(now + 1));
+    }
+
+    @Test
+    public void restoresOneLevelAtATimeAfterHold() {
+        source.headroom = 0.97f;
+        assertEquals(ThermalGovernor.Level.SHED_FRAME_RATE, poll());
+
+        source.headroom = 0.2f;
+        long start = now;
+        while (now - start < ThermalGovernor.RESTORE_HOLD_MS) {
+            assertEquals(ThermalGovernor.Level.SHED_FRAME_RATE, poll());
+        }
+        assertEquals(ThermalGovernor.Level.SHED_RESOLUTION, poll());
+    }
+
+    @Test
+    public void hysteresisBandDoesNotFlap() {
+        source.headroom = 0.86f;
+        assertEquals(ThermalGovernor.Level.SHED_RESOLUTION, poll());
+        // Just below the entry threshold but inside the hysteresis band: hold the level
+        source.headroom = 0.82f;
+        for (int i = 0; i < 20; i++) {
+            assertEquals(ThermalGovernor.Level.SHED_RESOLUTION, poll());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The lazily converted frame against converting and rotating up front.
+ */
+public class YuvTest {
+
+    private static final int W = 10, H = 6;
+
+    private static Yuv.Planes planes(FrameArena arena) {
+        Random rnd = new Random(5);
+        ByteBuffer y = arena.directBytes(W * H), u = arena.directBytes(W * H / 4), v = arena.directBytes(W * H / 4);
+        for (ByteBuffer b : new ByteBuffer[]{y, u, v}) {
+            while (b.hasRemaining()) b.put((byte) rnd.nextInt(256));
+            b.rewind();
+        }
+        return new Yuv.Planes(W, H, y, u, v);
+    }
+
+    @Test
+    public void convertsOnFirstUseOnly() {
+        FrameArena arena = new FrameArena();
+        Yuv.LazyArgb frame = new Yuv.LazyArgb(planes(arena), 90, arena, RowBands.serial());
+        assertFalse(frame.converted());
+        assertEquals(H, frame.width());
+        assertEquals(W, frame.height());
+
+        int[] expected = Yuv.rotate(Yuv.toArgb(frame.planes, FrameArena.unpooled(), RowBands.serial()),
+                W, H, 90);
+        int[] argb = frame.argb();
+        assertTrue(frame.converted());
+        assertArrayEquals(expected, argb);
+        assertSame(argb, frame.argb());
+        frame.release();
+    }
+
+    @Test
+    public void uprightFramesAreNotCopied() {
+        FrameArena arena = new FrameArena();
+        Yuv.LazyArgb frame = new Yuv.LazyArgb(planes(arena), 0, arena, RowBands.serial());
+        assertEquals(W, frame.width());
+        assertArrayEquals(Yuv.toArgb(frame.planes, FrameArena.unpooled(), RowBands.serial()), frame.argb());
+        frame.release();
+        assertFalse(frame.converted());
+    }
+}
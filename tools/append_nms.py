@@ -0,0 +1,130 @@
+#!/usr/bin/env python3
+"""
+Append score filtering and NonMaxSuppression to a YOLOv8 detector export.
+
+The model then returns the final detections only, instead of the raw [1,4+C,N] head that
+ObjectDetector otherwise decodes and suppresses in Java:
+
+    det_boxes   float [K,4]  centre x, centre y, width, height in model input pixels
+    det_scores  float [K]
+    det_classes int64 [K]
+
+Decoding follows the Java path: each anchor keeps its best class among the active ones
+(the "class_mask" input, 1 = decode), then per-class NMS. Thresholds are inputs too
+("score_threshold", "iou_threshold", "max_detections" per class), so the detection
+cascade can ask the cheap model for low-confidence candidates.
+
+Name the result like the model it came from with _nms added before the size suffix
+(yolov8n_compatible_nms.onnx, yolov8n_compatible_u8_nms_320.onnx): ObjectDetector
+loads it when in-graph NMS is on and recognizes it by its outputs.
+"""
+
+from __future__ import annotations
+
+import argparse
+from pathlib import Path
+
+import onnx
+from onnx import TensorProto, helper
+
+INT64_MAX = 2 ** 63 - 1
+
+
+def parse_args() -> argparse.Namespace:
+    parser = argparse.ArgumentParser(description="Append NMS to a YOLOv8 ONNX export")
+    parser.add_argument("--model", required=True, type=Path, help="Detector export with a [1,4+C,N] output")
+    parser.add_argument("--out", required=True, type=Path, help="Output .onnx")
+    return parser.parse_args()
+
+
+def const(name: str, data_type: int, values) -> onnx.TensorProto:
+    values = list(values)
+    return helper.make_tensor(name, data_type, [len(values)], values)
+
+
+def append_nms(model: onnx.ModelProto) -> onnx.ModelProto:
+    graph = model.graph
+    opset = next(o.version for o in model.opset_import if o.domain in ("", "ai.onnx"))
+    if opset < 11:
+        raise SystemExit(f"opset {opset}: NonMaxSuppression with these inputs needs 11+")
+    if len(graph.output) != 1:
+        raise SystemExit("expected the single raw YOLOv8 output")
+    head = graph.output[0]
+    dims = head.type.tensor_type.shape.dim
+    props = dims[1].dim_value
+    if props <= 4:
+        raise SystemExit(f"expected [1,4+C,N], got {head.type.tensor_type.shape}")
+    classes = props - 4
+
+    inits = [
+        const("nms_0", TensorProto.INT64, (0,)),
+        const("nms_1", TensorProto.INT64, (1,)),
+        const("nms_2", TensorProto.INT64, (2,)),
+        const("nms_4", TensorProto.INT64, (4,)),
+        const("nms_end", TensorProto.INT64, (INT64_MAX,)),
+        const("nms_mask_shape", TensorProto.INT64, (1, -1, 1)),
+        helper.make_tensor("nms_zero", TensorProto.FLOAT, [], [0.0]),
+        helper.make_tensor("nms_box_col", TensorProto.INT64, [], [2]),
+        helper.make_tensor("nms_cls_col", TensorProto.INT64, [], [1]),
+    ]
+    if opset >= 18:
+        reduce_max = helper.make_node("ReduceMax", ["nms_masked", "nms_1"], ["nms_best"], keepdims=1)
+    else:
+        reduce_max = helper.make_node("ReduceMax", ["nms_masked"], ["nms_best"], axes=[1], keepdims=1)
+    if opset >= 13:
+        squeeze = helper.make_node("Squeeze", ["nms_boxes", "nms_0"], ["nms_boxes2d"])
+    else:
+        squeeze = helper.make_node("Squeeze", ["nms_boxes"], ["nms_boxes2d"], axes=[0])
+    nodes = [
+        # [1,4+C,N] -> boxes [1,N,4] (centre format) and scores [1,C,N]
+        helper.make_node("Slice", [head.name, "nms_0", "nms_4", "nms_1"], ["nms_xywh"]),
+        helper.make_node("Transpose", ["nms_xywh"], ["nms_boxes"], perm=[0, 2, 1]),
+        helper.make_node("Slice", [head.name, "nms_4", "nms_end", "nms_1"], ["nms_scores"]),
+        # Inactive classes never win; every class but an anchor's best is zeroed, as the Java argmax
+        helper.make_node("Reshape", ["class_mask", "nms_mask_shape"], ["nms_mask"]),
+        helper.make_node("Mul", ["nms_scores", "nms_mask"], ["nms_masked"]),
+        reduce_max,
+        helper.make_node("Equal", ["nms_masked", "nms_best"], ["nms_is_best"]),
+        helper.make_node("Where", ["nms_is_best", "nms_masked", "nms_zero"], ["nms_best_only"]),
+        helper.make_node(
+            "NonMaxSuppression",
+            ["nms_boxes", "nms_best_only", "max_detections", "iou_threshold", "score_threshold"],
+            ["nms_selected"],
+            center_point_box=1,
+        ),
+        # selected rows are (batch, class, anchor)
+        helper.make_node("Gather", ["nms_selected", "nms_cls_col"], ["det_classes"], axis=1),
+        helper.make_node("Gather", ["nms_selected", "nms_box_col"], ["nms_anchor"], axis=1),
+        squeeze,
+        helper.make_node("Gather", ["nms_boxes2d", "nms_anchor"], ["det_boxes"], axis=0),
+        helper.make_node("GatherND", ["nms_best_only", "nms_selected"], ["det_scores"]),
+    ]
+
+    graph.node.extend(nodes)
+    graph.initializer.extend(inits)
+    graph.input.extend([
+        helper.make_tensor_value_info("score_threshold", TensorProto.FLOAT, [1]),
+        helper.make_tensor_value_info("iou_threshold", TensorProto.FLOAT, [1]),
+        helper.make_tensor_value_info("max_detections", TensorProto.INT64, [1]),
+        helper.make_tensor_value_info("class_mask", TensorProto.FLOAT, [classes]),
+    ])
+    del graph.output[:]
+    graph.output.extend([
+        helper.make_tensor_value_info("det_boxes", TensorProto.FLOAT, ["detections", 4]),
+        helper.make_tensor_value_info("det_scores", TensorProto.FLOAT, ["detections"]),
+        helper.make_tensor_value_info("det_classes", TensorProto.INT64, ["detections"]),
+    ])
+    return model
+
+
+def main() -> None:
+    args = parse_args()
+    model = append_nms(onnx.load(str(args.model)))
+    onnx.checker.check_model(model)
+    args.out.parent.mkdir(parents=True, exist_ok=True)
+    onnx.save(model, str(args.out))
+    print(f"Wrote {args.out} (in-graph NMS)")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,231 @@
+#!/usr/bin/env python3
+"""
+Build the in-graph YUV preprocessing for the detector and depth models.
+
+The graph takes the camera planes as uint8 tensors (Y [H,W], U and V [H/2,W/2], row and
+pixel strides removed) and produces the model input, with the same arithmetic as the Java
+path (Yuv.toArgb, Yuv.rotate, FramePreprocessor) so the results are identical:
+
+    BT.601 integer YUV->RGB -> rotate -> [box blur] -> nearest resize -> normalize -> zero pad
+
+Frame size, content size and padding are runtime inputs, so one graph serves every input
+size the latency controller picks; only the sensor rotation is baked in. The geometry
+inputs follow FramePreprocessor.Target: the detector letterboxes with one scale for both
+axes ("scales", float [4]), the depth model scales each axis to a multiple of 14 ("sizes",
+int64 [4]); "pads" (int64 [8]) is the ONNX Pad layout of the border.
+
+Written standalone (app/src/main/assets/yuv_preprocess_<kind>.onnx, run by YuvGraph) or,
+with --model, prepended to a model so a single session goes from planes to predictions.
+"""
+
+from __future__ import annotations
+
+import argparse
+from pathlib import Path
+
+import onnx
+from onnx import TensorProto, compose, helper
+
+ROTATIONS = (0, 90, 180, 270)
+MIN_OPSET = 13  # Resize with sizes, int32 Clip, Slice with steps
+IMAGENET_MEAN = (0.485, 0.456, 0.406)
+IMAGENET_STD = (0.229, 0.224, 0.225)
+OUTPUT = "yuv_input"
+
+
+def parse_args() -> argparse.Namespace:
+    parser = argparse.ArgumentParser(description="Build the in-graph YUV preprocessing")
+    parser.add_argument("--kind", required=True, choices=("detector", "depth"))
+    parser.add_argument("--out", required=True, type=Path, help="Output .onnx")
+    parser.add_argument(
+        "--rotation",
+        type=int,
+        default=90,
+        choices=ROTATIONS,
+        help="Sensor rotation baked into the graph (90 on almost every back camera)",
+    )
+    parser.add_argument(
+        "--blur-radius",
+        type=int,
+        default=0,
+        help="Box blur radius applied when the 'blur' input is true (detector only)",
+    )
+    parser.add_argument("--model", type=Path, help="Prepend the preprocessing to this model")
+    parser.add_argument("--opset", type=int, default=17, help="Opset of a standalone graph")
+    return parser.parse_args()
+
+
+def const(name: str, data_type: int, values, dims=None) -> onnx.TensorProto:
+    values = list(values)
+    return helper.make_tensor(name, data_type, [len(values)] if dims is None else dims, values)
+
+
+def yuv_to_rgb(nodes: list, inits: list) -> str:
+    """Y/U/V uint8 -> int32 [1,3,H,W], as Yuv.toArgb: clamp((298C + 409E + 128) >> 8) etc."""
+    for name, value in (("16", 16), ("128", 128), ("256", 256), ("0", 0), ("255", 255),
+                        ("298", 298), ("409", 409), ("100", 100), ("208", 208), ("516", 516)):
+        inits.append(helper.make_tensor(f"yuv_i{name}", TensorProto.INT32, [], [value]))
+    inits.append(const("yuv_up_shape", TensorProto.INT64, (1, 2, 1, 2)))
+    inits.append(const("yuv_ax13", TensorProto.INT64, (1, 3)))
+    inits.append(const("yuv_ax0", TensorProto.INT64, (0,)))
+
+    nodes.append(helper.make_node("Shape", ["y"], ["yuv_hw"]))
+    for p in ("y", "u", "v"):
+        nodes.append(helper.make_node("Cast", [p], [f"yuv_{p}32"], to=TensorProto.INT32))
+    # Chroma: each sample covers a 2x2 block (U index = i/2), as in the Java loop
+    for p in ("u", "v"):
+        nodes += [
+            helper.make_node("Unsqueeze", [f"yuv_{p}32", "yuv_ax13"], [f"yuv_{p}4"]),
+            helper.make_node("Expand", [f"yuv_{p}4", "yuv_up_shape"], [f"yuv_{p}x"]),
+            helper.make_node("Reshape", [f"yuv_{p}x", "yuv_hw"], [f"yuv_{p}full"]),
+        ]
+    nodes += [
+        helper.make_node("Sub", ["yuv_y32", "yuv_i16"], ["yuv_c"]),
+        helper.make_node("Sub", ["yuv_ufull", "yuv_i128"], ["yuv_d"]),
+        helper.make_node("Sub", ["yuv_vfull", "yuv_i128"], ["yuv_e"]),
+        helper.make_node("Mul", ["yuv_c", "yuv_i298"], ["yuv_c298"]),
+        helper.make_node("Add", ["yuv_c298", "yuv_i128"], ["yuv_base"]),
+        helper.make_node("Mul", ["yuv_e", "yuv_i409"], ["yuv_e409"]),
+        helper.make_node("Mul", ["yuv_d", "yuv_i100"], ["yuv_d100"]),
+        helper.make_node("Mul", ["yuv_e", "yuv_i208"], ["yuv_e208"]),
+        helper.make_node("Mul", ["yuv_d", "yuv_i516"], ["yuv_d516"]),
+        helper.make_node("Add", ["yuv_base", "yuv_e409"], ["yuv_r0"]),
+        helper.make_node("Sub", ["yuv_base", "yuv_d100"], ["yuv_g00"]),
+        helper.make_node("Sub", ["yuv_g00", "yuv_e208"], ["yuv_g0"]),
+        helper.make_node("Add", ["yuv_base", "yuv_d516"], ["yuv_b0"]),
+    ]
+    for ch in ("r", "g", "b"):
+        # Integer Div truncates where >> 8 floors, but only for negatives, which clamp to 0 anyway
+        nodes += [
+            helper.make_node("Div", [f"yuv_{ch}0", "yuv_i256"], [f"yuv_{ch}1"]),
+            helper.make_node("Clip", [f"yuv_{ch}1", "yuv_i0", "yuv_i255"], [f"yuv_{ch}2"]),
+            helper.make_node("Unsqueeze", [f"yuv_{ch}2", "yuv_ax0"], [f"yuv_{ch}"]),
+        ]
+    nodes += [
+        helper.make_node("Concat", ["yuv_r", "yuv_g", "yuv_b"], ["yuv_rgb3"], axis=0),
+        helper.make_node("Unsqueeze", ["yuv_rgb3", "yuv_ax0"], ["yuv_rgb"]),
+    ]
+    return "yuv_rgb"
+
+
+def rotate(src: str, rotation: int, nodes: list, inits: list) -> str:
+    """As Yuv.rotate: 90 = transpose + mirror columns, 270 = transpose + mirror rows."""
+    if rotation == 0:
+        return src
+
+    def flip(x: str, axis: int, out: str) -> str:
+        inits.append(const(f"{out}_starts", TensorProto.INT64, (-1,)))
+        inits.append(const(f"{out}_ends", TensorProto.INT64, (-(2 ** 63),)))
+        inits.append(const(f"{out}_axes", TensorProto.INT64, (axis,)))
+        inits.append(const(f"{out}_steps", TensorProto.INT64, (-1,)))
+        nodes.append(helper.make_node(
+            "Slice", [x, f"{out}_starts", f"{out}_ends", f"{out}_axes", f"{out}_steps"], [out]))
+        return out
+
+    if rotation == 180:
+        return flip(flip(src, 2, "yuv_rot_a"), 3, "yuv_rot")
+    nodes.append(helper.make_node("Transpose", [src], ["yuv_t"], perm=[0, 1, 3, 2]))
+    return flip("yuv_t", 3 if rotation == 90 else 2, "yuv_rot")
+
+
+def blur(src: str, radius: int, nodes: list) -> tuple[str, onnx.ValueInfoProto | None]:
+    """Float [1,3,H,W]; with radius > 0 an If on the 'blur' input runs ImageUtils.boxBlur."""
+    nodes.append(helper.make_node("Cast", [src], ["yuv_f"], to=TensorProto.FLOAT))
+    if radius <= 0:
+        return "yuv_f", None
+    k = 2 * radius + 1
+    # Edge windows average what is inside the frame; Floor matches the integer sum / count
+    then_nodes = [
+        helper.make_node("AveragePool", ["yuv_f"], ["yuv_avg"], kernel_shape=[k, k],
+                         pads=[radius] * 4, count_include_pad=0),
+        helper.make_node("Floor", ["yuv_avg"], ["yuv_blurred"]),
+    ]
+    else_nodes = [helper.make_node("Identity", ["yuv_f"], ["yuv_unblurred"])]
+    out_info = lambda n: helper.make_tensor_value_info(n, TensorProto.FLOAT, None)
+    then_graph = helper.make_graph(then_nodes, "yuv_blur_on", [], [out_info("yuv_blurred")])
+    else_graph = helper.make_graph(else_nodes, "yuv_blur_off", [], [out_info("yuv_unblurred")])
+    nodes.append(helper.make_node("If", ["blur"], ["yuv_fb"], then_branch=then_graph,
+                                  else_branch=else_graph))
+    return "yuv_fb", helper.make_tensor_value_info("blur", TensorProto.BOOL, [1])
+
+
+def build(kind: str, rotation: int, blur_radius: int, opset: int) -> onnx.ModelProto:
+    nodes: list = []
+    inits: list = []
+    inputs = [
+        helper.make_tensor_value_info("y", TensorProto.UINT8, ["height", "width"]),
+        helper.make_tensor_value_info("u", TensorProto.UINT8, ["half_height", "half_width"]),
+        helper.make_tensor_value_info("v", TensorProto.UINT8, ["half_height", "half_width"]),
+    ]
+    x = rotate(yuv_to_rgb(nodes, inits), rotation, nodes, inits)
+    x, blur_input = blur(x, blur_radius if kind == "detector" else 0, nodes)
+
+    # Nearest, destination d samples floor(d / scale), clamped: FramePreprocessor.Target.sourceRow
+    inits.append(helper.make_tensor("yuv_roi", TensorProto.FLOAT, [0], []))
+    resize_attrs = dict(mode="nearest", coordinate_transformation_mode="asymmetric", nearest_mode="floor")
+    if kind == "detector":
+        inputs.append(helper.make_tensor_value_info("scales", TensorProto.FLOAT, [4]))
+        nodes.append(helper.make_node("Resize", [x, "yuv_roi", "scales"], ["yuv_resized"], **resize_attrs))
+    else:
+        inputs.append(helper.make_tensor_value_info("sizes", TensorProto.INT64, [4]))
+        nodes.append(helper.make_node("Resize", [x, "yuv_roi", "", "sizes"], ["yuv_resized"], **resize_attrs))
+
+    # Same float ops as the lookup tables: (v / 255 - mean) / std, then a zero border
+    inits.append(helper.make_tensor("yuv_255", TensorProto.FLOAT, [], [255.0]))
+    nodes.append(helper.make_node("Div", ["yuv_resized", "yuv_255"], ["yuv_unit"]))
+    normalized = "yuv_unit"
+    if kind == "depth":
+        inits.append(helper.make_tensor("yuv_mean", TensorProto.FLOAT, [1, 3, 1, 1], IMAGENET_MEAN))
+        inits.append(helper.make_tensor("yuv_std", TensorProto.FLOAT, [1, 3, 1, 1], IMAGENET_STD))
+        nodes += [
+            helper.make_node("Sub", ["yuv_unit", "yuv_mean"], ["yuv_centered"]),
+            helper.make_node("Div", ["yuv_centered", "yuv_std"], ["yuv_normalized"]),
+        ]
+        normalized = "yuv_normalized"
+    inputs.append(helper.make_tensor_value_info("pads", TensorProto.INT64, [8]))
+    nodes.append(helper.make_node("Pad", [normalized, "pads"], [OUTPUT], mode="constant"))
+    if blur_input is not None:
+        inputs.append(blur_input)
+
+    output = helper.make_tensor_value_info(OUTPUT, TensorProto.FLOAT, [1, 3, "model_height", "model_width"])
+    graph = helper.make_graph(nodes, f"yuv_preprocess_{kind}", inputs, [output], initializer=inits)
+    model = helper.make_model(graph, opset_imports=[helper.make_opsetid("", opset)])
+    helper.set_model_props(model, {
+        "yuv_kind": kind,
+        "yuv_rotation": str(rotation),
+        "yuv_blur_radius": str(blur_radius if kind == "detector" else 0),
+    })
+    return model
+
+
+def prepend(pre: onnx.ModelProto, model: onnx.ModelProto) -> onnx.ModelProto:
+    model_input = model.graph.input[0].name
+    pre.ir_version = model.ir_version
+    merged = compose.merge_models(pre, model, io_map=[(OUTPUT, model_input)])
+    present = {p.key for p in merged.metadata_props}
+    merged.metadata_props.extend(p for p in pre.metadata_props if p.key not in present)
+    return merged
+
+
+def main() -> None:
+    args = parse_args()
+    opset = args.opset
+    model = None
+    if args.model is not None:
+        model = onnx.load(str(args.model))
+        opset = next(o.version for o in model.opset_import if o.domain in ("", "ai.onnx"))
+    if opset < MIN_OPSET:
+        raise SystemExit(f"opset {opset} < {MIN_OPSET}: re-export the model with a newer opset")
+
+    out = build(args.kind, args.rotation, args.blur_radius, opset)
+    if model is not None:
+        out = prepend(out, model)
+    onnx.checker.check_model(out)
+    args.out.parent.mkdir(parents=True, exist_ok=True)
+    onnx.save(out, str(args.out))
+    print(f"Wrote {args.out} ({args.kind}, rotation {args.rotation}, "
+          f"{'prepended to ' + str(args.model) if model is not None else 'standalone'})")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,105 @@
+#!/usr/bin/env python3
+"""
+Export the YOLOv8 detector to ONNX for the app.
+
+By default a single dynamic-axes model is written (ObjectDetector then serves every
+input size from one session). With --fixed-sizes one static model per size is written
+instead, named yolov8m_compatible_<size>.onnx, which ObjectDetector loads per size.
+
+With --uint8-input each model gets a twin (yolov8m_compatible_u8[_<size>].onnx) whose
+input is packed RGB bytes [1,H,W,3]: the cast, the 1/255 scaling and the NHWC->NCHW
+transpose run in the graph, so the app skips its per-pixel float conversion.
+"""
+
+from __future__ import annotations
+
+import argparse
+import shutil
+from pathlib import Path
+
+import onnx
+from onnx import TensorProto, helper
+from ultralytics import YOLO
+
+SIZES = (320, 416, 512, 640)
+
+
+def parse_args() -> argparse.Namespace:
+    parser = argparse.ArgumentParser(description="Export YOLOv8 detector to ONNX")
+    parser.add_argument("--weights", default="yolov8m.pt", help="Ultralytics weights to export")
+    parser.add_argument("--out-dir", required=True, type=Path, help="Usually app/src/main/assets")
+    parser.add_argument("--name", default="yolov8m_compatible", help="Base asset name")
+    parser.add_argument("--opset", type=int, default=17)
+    parser.add_argument(
+        "--fixed-sizes",
+        action="store_true",
+        help="Write one static-shape model per size instead of a dynamic-axes model",
+    )
+    parser.add_argument(
+        "--uint8-input",
+        action="store_true",
+        help="Also write a _u8 variant of each model taking uint8 NHWC input",
+    )
+    return parser.parse_args()
+
+
+def export(weights: str, imgsz: int, dynamic: bool, opset: int, dst: Path) -> None:
+    model = YOLO(weights)
+    exported = model.export(format="onnx", imgsz=imgsz, dynamic=dynamic, opset=opset, simplify=True)
+    shutil.move(exported, dst)
+    print(f"Wrote {dst} (imgsz={imgsz}, dynamic={dynamic})")
+
+
+def with_uint8_input(src: Path, dst: Path) -> None:
+    """Prepend Cast -> Div(255) -> Transpose so the model takes uint8 [1,H,W,3]."""
+    model = onnx.load(str(src))
+    graph = model.graph
+    old = graph.input[0]
+    n, c, h, w = old.type.tensor_type.shape.dim
+    assert c.dim_value == 3, f"expected NCHW RGB input, got {old.type.tensor_type.shape}"
+
+    def dim(d):
+        return d.dim_param if d.HasField("dim_param") else d.dim_value
+
+    new_input = helper.make_tensor_value_info(
+        old.name + "_u8", TensorProto.UINT8, [dim(n), dim(h), dim(w), 3]
+    )
+    scale = helper.make_tensor("u8_scale", TensorProto.FLOAT, [], [255.0])
+    nodes = [
+        helper.make_node("Cast", [new_input.name], ["u8_float"], to=TensorProto.FLOAT),
+        helper.make_node("Div", ["u8_float", "u8_scale"], ["u8_unit"]),
+        helper.make_node("Transpose", ["u8_unit"], [old.name], perm=[0, 3, 1, 2]),
+    ]
+    graph.initializer.append(scale)
+    for i, node in enumerate(nodes):
+        graph.node.insert(i, node)
+    graph.input.remove(old)
+    graph.input.insert(0, new_input)
+    onnx.checker.check_model(model)
+    onnx.save(model, str(dst))
+    print(f"Wrote {dst} (uint8 NHWC input)")
+
+
+def u8_name(path: Path, base: str) -> Path:
+    return path.with_name(path.name.replace(base, f"{base}_u8", 1))
+
+
+def main() -> None:
+    args = parse_args()
+    args.out_dir.mkdir(parents=True, exist_ok=True)
+    written = []
+    if args.fixed_sizes:
+        for size in SIZES:
+            name = f"{args.name}.onnx" if size == max(SIZES) else f"{args.name}_{size}.onnx"
+            export(args.weights, size, False, args.opset, args.out_dir / name)
+            written.append(args.out_dir / name)
+    else:
+        export(args.weights, max(SIZES), True, args.opset, args.out_dir / f"{args.name}.onnx")
+        written.append(args.out_dir / f"{args.name}.onnx")
+    if args.uint8_input:
+        for path in written:
+            with_uint8_input(path, u8_name(path, args.name))
+
+
+if __name__ == "__main__":
+    main()